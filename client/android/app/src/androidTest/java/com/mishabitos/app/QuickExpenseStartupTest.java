@@ -0,0 +1,54 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tiempo hasta interactivo de QuickExpenseActivity (el toque en el widget de gastos): desde
+ * onCreate hasta que el selector está cargado y "Agregar" habilitado, el mismo punto en que
+ * la activity llama a reportFullyDrawn. La primera apertura lee el snapshot y el índice de
+ * disco; la segunda los encuentra en memoria (WidgetAuthPlugin y QuickExpenseActivity los
+ * guardan por proceso).
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuickExpenseStartupTest {
+
+    // El objetivo es 100 ms en un teléfono. El margen es para emuladores de CI sin aceleración,
+    // que corren la misma apertura varias veces más lento; una regresión (volver a leer JSON o
+    // esperar detrás de la red) igual lo pasa de largo
+    private static final long MAX_INTERACTIVE_MS = 250;
+    private static final long TIMEOUT_MS = 5_000;
+
+    @Test
+    public void becomesInteractiveWithinBudget() throws Exception {
+        for (int run = 0; run < 2; run++) {
+            long ms = launchAndWaitInteractive();
+            assertTrue("apertura " + run + ": interactiva en " + ms + " ms", ms <= MAX_INTERACTIVE_MS);
+        }
+    }
+
+    private static long launchAndWaitInteractive() throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Intent intent = new Intent(context, QuickExpenseActivity.class);
+        try (ActivityScenario<QuickExpenseActivity> scenario = ActivityScenario.launch(intent)) {
+            long[] ms = {-1};
+            long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+            while (ms[0] < 0) {
+                assertTrue("no llegó a interactiva en " + TIMEOUT_MS + " ms", SystemClock.uptimeMillis() < deadline);
+                Thread.sleep(10);
+                scenario.onActivity(activity -> ms[0] = activity.interactiveMs());
+            }
+            return ms[0];
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.mishabitos.app;
+
+/**
+ * Detector de pasos por acelerómetro para dispositivos sin TYPE_STEP_COUNTER.
+ *
+ * Pipeline por muestra, sin asignaciones:
+ * <ol>
+ *   <li>Módulo de la aceleración (independiente de cómo esté orientado el teléfono).</li>
+ *   <li>Pasabanda biquad centrado en {@link #CENTER_HZ}: saca la gravedad (continua) y el
+ *       temblor de alta frecuencia; queda la oscilación del paso (~1–3.5 Hz).</li>
+ *   <li>Umbral adaptativo: {@link #THRESHOLD_K} × RMS de la señal filtrada en un anillo de
+ *       {@link #WINDOW} muestras, con un piso de {@link #MIN_PEAK} m/s² (teléfono quieto).</li>
+ *   <li>Pico = máximo local sobre el umbral y a más de {@link #MIN_STEP_INTERVAL_NS} del anterior.</li>
+ *   <li>Los picos sólo cuentan después de {@link #CONFIRM_STEPS} seguidos con pausas menores a
+ *       {@link #MAX_STEP_INTERVAL_NS} (una sacudida suelta no son pasos); al confirmarse se
+ *       cuentan también los pendientes.</li>
+ * </ol>
+ * Los coeficientes asumen la frecuencia de muestreo nominal pedida al sensor.
+ *
+ * Se usa desde un único hilo.
+ */
+final class AccelStepDetector {
+
+    static final float DEFAULT_RATE_HZ = 50f;
+    static final double CENTER_HZ = 2.0;
+    private static final double Q = 0.8;
+
+    static final int WINDOW = 128; // ~2.5 s a 50 Hz; potencia de 2
+    private static final int MASK = WINDOW - 1;
+    static final double THRESHOLD_K = 0.6;
+    static final double MIN_PEAK = 0.6; // m/s²
+
+    static final long MIN_STEP_INTERVAL_NS = 250_000_000L;  // 240 pasos/min
+    static final long MAX_STEP_INTERVAL_NS = 2_000_000_000L; // más de 2 s: se cortó la caminata
+    static final int CONFIRM_STEPS = 4;
+
+    // Biquad pasabanda (RBJ, ganancia 0 dB en el pico): b1 = 0, b2 = -b0
+    private final double b0;
+    private final double a1;
+    private final double a2;
+    private double x1;
+    private double x2;
+    private double y1;
+    private double y2;
+    private boolean primed;
+
+    // Anillo de la señal filtrada para el RMS
+    private final float[] window = new float[WINDOW];
+    private int pos;
+    private int filled;
+    private double sumSquares;
+
+    // Detección de picos
+    private double prev;
+    private double prevPrev;
+    private long prevTimestampNs;
+    private long lastPeakNs = Long.MIN_VALUE;
+    private int streak; // picos seguidos en la caminata actual
+    private long totalSteps;
+
+    AccelStepDetector() {
+        this(DEFAULT_RATE_HZ);
+    }
+
+    AccelStepDetector(float sampleRateHz) {
+        double w0 = 2 * Math.PI * CENTER_HZ / sampleRateHz;
+        double alpha = Math.sin(w0) / (2 * Q);
+        double a0 = 1 + alpha;
+        b0 = alpha / a0;
+        a1 = -2 * Math.cos(w0) / a0;
+        a2 = (1 - alpha) / a0;
+    }
+
+    /**
+     * Procesa una muestra (m/s², timestamp del evento en ns). Devuelve los pasos que se
+     * confirmaron con ella: 0, 1, o {@link #CONFIRM_STEPS} al confirmar una caminata.
+     */
+    int onSample(long timestampNs, float x, float y, float z) {
+        double magnitude = Math.sqrt(x * x + y * y + z * z);
+        if (!primed) {
+            // Arrancar el filtro en régimen con la gravedad: sin transitorio inicial
+            x1 = x2 = magnitude;
+            primed = true;
+        }
+        double out = b0 * magnitude - b0 * x2 - a1 * y1 - a2 * y2;
+        x2 = x1;
+        x1 = magnitude;
+        y2 = y1;
+        y1 = out;
+
+        // RMS deslizante; la suma se recalcula en cada vuelta para no acumular error
+        float old = window[pos];
+        window[pos] = (float) out;
+        sumSquares += out * out - (double) old * old;
+        pos = (pos + 1) & MASK;
+        if (pos == 0) {
+            double s = 0;
+            for (float v : window) s += (double) v * v;
+            sumSquares = s;
+        }
+        if (filled < WINDOW) filled++;
+
+        int steps = 0;
+        // ¿La muestra anterior fue un máximo local?
+        if (filled >= WINDOW / 4 && prev > prevPrev && prev >= out) {
+            double rms = Math.sqrt(Math.max(0, sumSquares) / filled);
+            if (prev > Math.max(MIN_PEAK, THRESHOLD_K * rms)) steps = onPeak(prevTimestampNs);
+        }
+        prevPrev = prev;
+        prev = out;
+        prevTimestampNs = timestampNs;
+        return steps;
+    }
+
+    private int onPeak(long peakNs) {
+        if (lastPeakNs != Long.MIN_VALUE) {
+            long gap = peakNs - lastPeakNs;
+            if (gap < MIN_STEP_INTERVAL_NS) return 0; // rebote del mismo paso
+            if (gap > MAX_STEP_INTERVAL_NS) streak = 0;
+        }
+        lastPeakNs = peakNs;
+        streak++;
+        int steps;
+        if (streak < CONFIRM_STEPS) {
+            steps = 0;
+        } else if (streak == CONFIRM_STEPS) {
+            steps = CONFIRM_STEPS; // los pendientes de la racha
+        } else {
+            steps = 1;
+        }
+        totalSteps += steps;
+        return steps;
+    }
+
+    /** Pasos confirmados desde que se creó el detector. */
+    long totalSteps() { return totalSteps; }
+}
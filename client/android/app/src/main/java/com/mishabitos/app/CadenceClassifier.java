@@ -0,0 +1,123 @@
+package com.mishabitos.app;
+
+/**
+ * Cadencia (pasos por minuto) y tipo de actividad a partir de los eventos del contador de
+ * pasos, usando la hora de cada evento (los lotes del FIFO llegan tarde pero con su timestamp).
+ *
+ * Guarda los pasos por segundo en un anillo de {@link #SLOTS} segundos, así que la memoria es
+ * fija y {@link #onSteps} no asigna objetos. La actividad se decide con la cadencia de los
+ * últimos {@link #CLASSIFY_WINDOW_S} segundos y umbrales con histéresis (para subir de nivel
+ * hace falta el umbral; para bajar, quedar {@link #HYSTERESIS_SPM} por debajo) para que no
+ * oscile en el borde.
+ *
+ * Se usa desde un único hilo.
+ */
+final class CadenceClassifier {
+
+    enum Activity {
+        IDLE(0), WALKING(30), BRISK(100), RUNNING(145);
+
+        /** Cadencia mínima (pasos/min) para entrar en este nivel. */
+        final int minCadence;
+
+        Activity(int minCadence) {
+            this.minCadence = minCadence;
+        }
+    }
+
+    // values() clona el arreglo en cada llamada
+    private static final Activity[] LEVELS = Activity.values();
+
+    static final int SLOTS = 64; // potencia de 2, >= la ventana más larga
+    private static final int MASK = SLOTS - 1;
+    static final int SHORT_WINDOW_S = 10;
+    static final int LONG_WINDOW_S = 60;
+    static final int CLASSIFY_WINDOW_S = 20;
+    static final int HYSTERESIS_SPM = 10;
+
+    private final int[] stepsPerSecond = new int[SLOTS];
+    private long newestSecond = Long.MIN_VALUE;
+    private long lastStepMs = -1;
+
+    private Activity activity = Activity.IDLE;
+    private long activitySinceMs = -1;
+
+    /**
+     * Suma {@code steps} al segundo de {@code eventMs} y reclasifica. Devuelve true si cambió
+     * la actividad. Los eventos más viejos que el anillo se ignoran.
+     */
+    boolean onSteps(long eventMs, int steps) {
+        if (steps <= 0) return false;
+        long second = Math.floorDiv(eventMs, 1000L);
+        advanceTo(second);
+        if (second <= newestSecond - SLOTS) return false;
+        stepsPerSecond[(int) (second & MASK)] += steps;
+        if (eventMs > lastStepMs) lastStepMs = eventMs;
+        return classify(Math.max(eventMs, newestSecond * 1000L));
+    }
+
+    /**
+     * Reclasifica sin pasos nuevos (p. ej. para pasar a IDLE cuando se deja de caminar).
+     * Devuelve true si cambió la actividad.
+     */
+    boolean evaluate(long nowMs) {
+        if (newestSecond == Long.MIN_VALUE) return false;
+        advanceTo(Math.floorDiv(nowMs, 1000L));
+        return classify(Math.max(nowMs, newestSecond * 1000L));
+    }
+
+    /** Cadencia en pasos/min de los últimos {@code windowSeconds} (hasta {@link #SLOTS}) hasta {@code nowMs}. */
+    int cadence(long nowMs, int windowSeconds) {
+        if (newestSecond == Long.MIN_VALUE || windowSeconds <= 0) return 0;
+        int window = Math.min(windowSeconds, SLOTS);
+        long now = Math.floorDiv(nowMs, 1000L);
+        long start = Math.max(now - window + 1, newestSecond - SLOTS + 1);
+        // Los segundos posteriores al último registrado no tuvieron pasos
+        long end = Math.min(now, newestSecond);
+        int sum = 0;
+        for (long s = start; s <= end; s++) sum += stepsPerSecond[(int) (s & MASK)];
+        return (int) Math.round(sum * 60.0 / window);
+    }
+
+    private void advanceTo(long second) {
+        if (newestSecond == Long.MIN_VALUE) {
+            newestSecond = second;
+            return;
+        }
+        if (second <= newestSecond) return;
+        // Los slots que se reutilizan tienen pasos de hace una vuelta del anillo
+        long from = Math.max(newestSecond + 1, second - SLOTS + 1);
+        for (long s = from; s <= second; s++) stepsPerSecond[(int) (s & MASK)] = 0;
+        newestSecond = second;
+    }
+
+    private boolean classify(long nowMs) {
+        int c = cadence(nowMs, CLASSIFY_WINDOW_S);
+        Activity next = activity;
+        // Subir: el nivel más alto cuyo umbral se alcanza
+        for (int i = LEVELS.length - 1; i > activity.ordinal(); i--) {
+            if (c >= LEVELS[i].minCadence) {
+                next = LEVELS[i];
+                break;
+            }
+        }
+        // Bajar: mientras quede por debajo del umbral del nivel actual menos la histéresis
+        if (next == activity) {
+            int level = activity.ordinal();
+            while (level > 0 && c < LEVELS[level].minCadence - HYSTERESIS_SPM) level--;
+            next = LEVELS[level];
+        }
+        if (next == activity) return false;
+        activity = next;
+        activitySinceMs = nowMs;
+        return true;
+    }
+
+    Activity activity() { return activity; }
+
+    /** Desde cuándo (epoch ms) dura la actividad actual; -1 si nunca cambió. */
+    long activitySinceMs() { return activitySinceMs; }
+
+    /** Hora del último evento con pasos; -1 si no hubo. */
+    long lastStepMs() { return lastStepMs; }
+}
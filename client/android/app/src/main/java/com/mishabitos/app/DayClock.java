@@ -0,0 +1,62 @@
+package com.mishabitos.app;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Día local (yyyymmdd) de un instante, con la medianoche siguiente precalculada.
+ *
+ * Mientras el instante cae dentro de [inicio del día, próxima medianoche) la consulta es
+ * una comparación de longs; sólo al cruzar el límite (o si cambia la zona horaria) se
+ * recalcula con un Calendar reutilizado. Los límites salen del calendario, no de sumar
+ * 24 h, así que los días de 23 o 25 horas por cambio de horario quedan bien.
+ *
+ * No es thread-safe.
+ */
+final class DayClock {
+
+    private final Calendar calendar;
+
+    private int day;
+    private long dayStartMs = Long.MAX_VALUE;
+    private long nextMidnightMs = Long.MIN_VALUE;
+
+    DayClock(TimeZone zone) {
+        calendar = new GregorianCalendar(zone);
+    }
+
+    /** Cambia la zona horaria (p. ej. ACTION_TIMEZONE_CHANGED); los límites se recalculan. */
+    void setTimeZone(TimeZone zone) {
+        calendar.setTimeZone(zone);
+        invalidate();
+    }
+
+    /** Olvida los límites calculados (p. ej. si el usuario cambió la hora del sistema). */
+    void invalidate() {
+        dayStartMs = Long.MAX_VALUE;
+        nextMidnightMs = Long.MIN_VALUE;
+    }
+
+    /** Día local yyyymmdd que contiene {@code wallMs}. */
+    int dayKey(long wallMs) {
+        if (wallMs < dayStartMs || wallMs >= nextMidnightMs) recompute(wallMs);
+        return day;
+    }
+
+    /** Primera medianoche posterior al último instante consultado. */
+    long nextMidnightMs() { return nextMidnightMs; }
+
+    private void recompute(long wallMs) {
+        calendar.setTimeInMillis(wallMs);
+        day = StepStore.dayKey(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                calendar.get(Calendar.DAY_OF_MONTH));
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStartMs = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        nextMidnightMs = calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,275 @@
+package com.mishabitos.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bus de eventos en proceso con una política por suscriptor:
+ * <ul>
+ *   <li>{@link Policy#every}: cada evento, en una cola acotada (si se llena se descarta el más viejo).</li>
+ *   <li>{@link Policy#latest}: sólo el último valor, como mucho uno cada {@code minIntervalMs}.</li>
+ *   <li>{@link Policy#batch}: lotes de hasta {@code maxItems} o cada {@code maxDelayMs}, lo que llegue antes.</li>
+ * </ul>
+ * Los eventos descartados (cola llena o pisados por uno más nuevo) se cuentan por suscriptor.
+ * Un suscriptor pausado (p. ej. WebView en segundo plano) acumula según su política y
+ * recibe lo pendiente al reanudarse.
+ *
+ * La entrega corre en el hilo del {@link Dispatcher}, nunca dentro de {@link #publish}.
+ * Publicar, suscribir y cancelar se puede hacer desde cualquier hilo.
+ */
+final class EventBus<E> {
+
+    /** Agenda tareas en el hilo de entrega (un Handler en Android). */
+    interface Dispatcher {
+        long now();
+        void postDelayed(Runnable task, long delayMs);
+        void cancel(Runnable task);
+    }
+
+    interface Receiver<E> {
+        void onEvent(E event);
+
+        /** Sólo con {@link Policy#batch}. La lista se reutiliza: copiarla si se guarda. */
+        default void onBatch(List<E> events) {
+            for (int i = 0; i < events.size(); i++) onEvent(events.get(i));
+        }
+    }
+
+    static final class Policy {
+        static final int EVERY = 0;
+        static final int LATEST = 1;
+        static final int BATCH = 2;
+
+        final int mode;
+        final int capacity;
+        final int maxItems;
+        final long intervalMs;
+
+        private Policy(int mode, int capacity, int maxItems, long intervalMs) {
+            if (capacity <= 0 || maxItems <= 0 || intervalMs < 0) throw new IllegalArgumentException();
+            this.mode = mode;
+            this.capacity = capacity;
+            this.maxItems = maxItems;
+            this.intervalMs = intervalMs;
+        }
+
+        static Policy every(int capacity) {
+            return new Policy(EVERY, capacity, 1, 0);
+        }
+
+        static Policy latest(long minIntervalMs) {
+            return new Policy(LATEST, 1, 1, minIntervalMs);
+        }
+
+        static Policy batch(int maxItems, long maxDelayMs, int capacity) {
+            return new Policy(BATCH, Math.max(capacity, maxItems), maxItems, maxDelayMs);
+        }
+    }
+
+    private final Dispatcher dispatcher;
+    // Copia al escribir: publish recorre el arreglo sin tomar el lock del bus.
+    // Object[] porque Subscription es genérica (no se pueden crear arreglos de ella)
+    private volatile Object[] subscriptions = new Object[0];
+
+    EventBus(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    Subscription subscribe(Receiver<E> receiver, Policy policy) {
+        Subscription s = new Subscription(receiver, policy);
+        synchronized (this) {
+            Object[] old = subscriptions;
+            Object[] next = new Object[old.length + 1];
+            System.arraycopy(old, 0, next, 0, old.length);
+            next[old.length] = s;
+            subscriptions = next;
+        }
+        return s;
+    }
+
+    private synchronized void remove(Subscription s) {
+        Object[] old = subscriptions;
+        for (int i = 0; i < old.length; i++) {
+            if (old[i] != s) continue;
+            Object[] next = new Object[old.length - 1];
+            System.arraycopy(old, 0, next, 0, i);
+            System.arraycopy(old, i + 1, next, i, old.length - i - 1);
+            subscriptions = next;
+            return;
+        }
+    }
+
+    boolean hasSubscribers() {
+        return subscriptions.length > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void publish(E event) {
+        Object[] subs = subscriptions;
+        if (subs.length == 0) return;
+        long now = dispatcher.now();
+        for (Object s : subs) ((Subscription) s).offer(event, now);
+    }
+
+    /** Cancela todas las suscripciones (el dueño del bus se detiene). */
+    @SuppressWarnings("unchecked")
+    void clear() {
+        for (Object s : subscriptions) ((Subscription) s).unsubscribe();
+    }
+
+    // ─── Suscripción ──────────────────────────────────────────────────────────
+
+    final class Subscription implements Runnable {
+        private final Receiver<E> receiver;
+        private final Policy policy;
+        private long intervalMs; // el de la política, cambiable con setIntervalMs
+
+        // Cola circular acotada; con LATEST tiene un solo lugar que se pisa
+        private final Object[] queue;
+        private int head;
+        private int size;
+
+        private boolean scheduled;
+        private boolean paused;
+        private boolean cancelled;
+        private long lastDeliveryMs = Long.MIN_VALUE;
+        private long delivered;
+        private long dropped;
+
+        // Sólo en el hilo de entrega
+        private final ArrayList<E> batch = new ArrayList<>();
+
+        private Subscription(Receiver<E> receiver, Policy policy) {
+            this.receiver = receiver;
+            this.policy = policy;
+            this.intervalMs = policy.intervalMs;
+            this.queue = new Object[policy.capacity];
+        }
+
+        private synchronized void offer(E event, long now) {
+            if (cancelled) return;
+            if (size == queue.length) {
+                // Cola llena (o LATEST con un pendiente): se pierde el más viejo
+                queue[head] = null;
+                head = (head + 1) % queue.length;
+                size--;
+                dropped++;
+            }
+            queue[(head + size) % queue.length] = event;
+            size++;
+            if (!paused) schedule(now);
+        }
+
+        /** Agenda la entrega según la política, si no hay una agendada ya. */
+        private void schedule(long now) {
+            if (policy.mode == Policy.BATCH && size >= policy.maxItems) {
+                // Lote completo: adelantar la entrega agendada por tiempo
+                if (scheduled) dispatcher.cancel(this);
+                scheduled = true;
+                dispatcher.postDelayed(this, 0);
+                return;
+            }
+            if (scheduled || size == 0) return;
+            scheduled = true;
+            long delay;
+            if (policy.mode == Policy.EVERY) {
+                delay = 0;
+            } else if (policy.mode == Policy.LATEST) {
+                delay = (lastDeliveryMs == Long.MIN_VALUE) ? 0
+                    : Math.max(0, lastDeliveryMs + intervalMs - now);
+            } else {
+                delay = intervalMs;
+            }
+            dispatcher.postDelayed(this, delay);
+        }
+
+        /** Entrega agendada: corre en el hilo del dispatcher. */
+        @Override
+        public void run() {
+            synchronized (this) {
+                scheduled = false;
+                if (cancelled || paused || size == 0) return;
+                int n = (policy.mode == Policy.BATCH) ? Math.min(size, policy.maxItems) : size;
+                for (int i = 0; i < n; i++) batch.add(poll());
+                delivered += n;
+                lastDeliveryMs = dispatcher.now();
+                if (size > 0) schedule(lastDeliveryMs); // quedó más de un lote
+            }
+            // Fuera del lock: el receptor puede tardar o volver a publicar
+            try {
+                if (policy.mode == Policy.BATCH) {
+                    receiver.onBatch(batch);
+                } else {
+                    for (int i = 0; i < batch.size(); i++) receiver.onEvent(batch.get(i));
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private E poll() {
+            E e = (E) queue[head];
+            queue[head] = null;
+            head = (head + 1) % queue.length;
+            size--;
+            return e;
+        }
+
+        /** Entrega {@code event} sólo a esta suscripción (p. ej. el valor actual al suscribirse). */
+        void send(E event) {
+            offer(event, dispatcher.now());
+        }
+
+        /**
+         * Cambia el intervalo de la política (LATEST: mínimo entre entregas; BATCH: demora
+         * máxima) sin perder lo pendiente; la entrega agendada se re-agenda con el nuevo.
+         */
+        synchronized void setIntervalMs(long intervalMs) {
+            if (intervalMs < 0) throw new IllegalArgumentException();
+            if (cancelled || this.intervalMs == intervalMs) return;
+            this.intervalMs = intervalMs;
+            if (scheduled) {
+                dispatcher.cancel(this);
+                scheduled = false;
+                if (!paused) schedule(dispatcher.now());
+            }
+        }
+
+        /** Pausado acumula según la política; al reanudar se entrega lo pendiente. */
+        synchronized void setPaused(boolean paused) {
+            if (cancelled || this.paused == paused) return;
+            this.paused = paused;
+            if (paused) {
+                if (scheduled) dispatcher.cancel(this);
+                scheduled = false;
+            } else {
+                schedule(dispatcher.now());
+            }
+        }
+
+        /**
+         * Después de esto no se entrega nada más (salvo una entrega que ya esté corriendo
+         * en otro hilo; desde el hilo del dispatcher es inmediato).
+         */
+        void unsubscribe() {
+            synchronized (this) {
+                if (cancelled) return;
+                cancelled = true;
+                if (scheduled) dispatcher.cancel(this);
+                scheduled = false;
+                while (size > 0) poll();
+            }
+            remove(this);
+        }
+
+        synchronized boolean isCancelled() { return cancelled; }
+
+        synchronized int pending() { return size; }
+
+        synchronized long deliveredCount() { return delivered; }
+
+        /** Eventos perdidos por cola llena o pisados por uno más nuevo (LATEST). */
+        synchronized long droppedCount() { return dropped; }
+    }
+}
@@ -0,0 +1,457 @@
+package com.mishabitos.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Índice local de los gastos rápidos: orden de categorías y autocompletado de descripciones.
+ *
+ * <ul>
+ *   <li>Categorías: frecuencia con envejecimiento (LFU con aging). Usa "forward decay": cada
+ *       uso suma {@code 2^((t - base) / HALF_LIFE)}, así un uso de hace {@link #HALF_LIFE_MS}
+ *       vale la mitad que uno de ahora y los puntajes se comparan sin recalcular nada.</li>
+ *   <li>Descripciones: trie por prefijo (normalizado: minúsculas, sin tildes, espacios
+ *       simples). Cada descripción guarda el peso de cada categoría con la que se usó, y cada
+ *       nodo guarda sus {@link #TOP_K} descripciones de más peso: sugerir es bajar por el
+ *       prefijo y leer esa lista. Como los pesos sólo crecen, la lista se mantiene al
+ *       insertar sin recorrer el subárbol.</li>
+ *   <li>A lo sumo {@link #MAX_ENTRIES} descripciones: al pasarse se saca la de menor peso
+ *       (la menos usada teniendo en cuenta el envejecimiento). Así el archivo, que se
+ *       reescribe entero en cada gasto, queda acotado.</li>
+ * </ul>
+ * Se actualiza con {@link #record} en cada gasto y se persiste en un archivo binario chico
+ * (temporal + fsync + rename). Layout (little endian), textos como (largo short, UTF-8):
+ * <pre>
+ *   magic (int), version (int), base (long), categorías (int), descripciones (int),
+ *   categorías: nombre, peso (double)
+ *   descripciones: texto, peso (double), n (short), n × (categoría, peso (double))
+ *   crc32 de lo anterior (int)
+ * </pre>
+ *
+ * Thread-safe.
+ */
+final class ExpenseIndex {
+
+    static final long HALF_LIFE_MS = 30L * 24 * 60 * 60 * 1000;
+    static final int TOP_K = 5;
+    static final int MAX_DESCRIPTION_LENGTH = 80;
+    static final int MAX_ENTRIES = 500;
+
+    private static final int MAGIC = 0x48425849; // "HBXI"
+    private static final int VERSION = 1;
+    // Reescalar los pesos antes de que 2^x se acerque al máximo de un double
+    private static final double REBASE_EXPONENT = 512;
+
+    /** Una descripción sugerida y la categoría que más se usó con ella. */
+    static final class Suggestion {
+        final String description;
+        final String category;
+
+        Suggestion(String description, String category) {
+            this.description = description;
+            this.category = category;
+        }
+
+        @Override
+        public String toString() {
+            return description; // lo que muestra el desplegable
+        }
+    }
+
+    /** Descripción guardada: nodo terminal del trie. */
+    private static final class Entry {
+        String text; // tal como se escribió la última vez
+        double weight;
+        final Map<String, Double> categories = new HashMap<>(4);
+
+        String topCategory() {
+            String best = null;
+            double bestWeight = -1;
+            for (Map.Entry<String, Double> e : categories.entrySet()) {
+                if (e.getValue() > bestWeight) {
+                    best = e.getKey();
+                    bestWeight = e.getValue();
+                }
+            }
+            return best;
+        }
+    }
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        Entry entry;
+        // Mejores descripciones del subárbol, de mayor a menor peso
+        Entry[] top = new Entry[0];
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) if (keys[i] == c) return children[i];
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node n = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = n;
+            return n;
+        }
+
+        void removeChild(Node child) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != child) continue;
+                int last = children.length - 1;
+                keys[i] = keys[last];
+                children[i] = children[last];
+                keys = Arrays.copyOf(keys, last);
+                children = Arrays.copyOf(children, last);
+                return;
+            }
+        }
+
+        boolean isEmpty() {
+            return entry == null && children.length == 0;
+        }
+
+        /** Recalcula {@link #top} desde la entrada propia y los top de los hijos. */
+        void rebuildTop() {
+            top = new Entry[0];
+            if (entry != null) offer(entry);
+            for (Node child : children) {
+                for (Entry e : child.top) offer(e);
+            }
+        }
+
+        /** El peso de {@code e} sólo subió: reubicarlo o hacerle lugar. */
+        void offer(Entry e) {
+            int pos = -1;
+            for (int i = 0; i < top.length; i++) if (top[i] == e) pos = i;
+            if (pos < 0) {
+                if (top.length < TOP_K) {
+                    top = Arrays.copyOf(top, top.length + 1);
+                } else if (top[top.length - 1].weight >= e.weight) {
+                    return;
+                }
+                pos = top.length - 1;
+                top[pos] = e;
+            }
+            while (pos > 0 && top[pos - 1].weight < e.weight) {
+                top[pos] = top[pos - 1];
+                pos--;
+            }
+            top[pos] = e;
+        }
+    }
+
+    private long baseMs = Long.MIN_VALUE;
+    private final Map<String, Double> categoryWeights = new HashMap<>();
+    private final Node root = new Node();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Object fileLock = new Object();
+
+    // ─── Actualización ────────────────────────────────────────────────────────
+
+    /** Registra un gasto. {@code description} puede ser null (sólo cuenta la categoría). */
+    synchronized void record(String description, String category, long nowMs) {
+        if (category == null) return;
+        if (baseMs == Long.MIN_VALUE) baseMs = nowMs;
+        double exponent = (nowMs - baseMs) / (double) HALF_LIFE_MS;
+        if (exponent > REBASE_EXPONENT) {
+            rebase(nowMs);
+            exponent = 0;
+        }
+        double w = Math.pow(2, exponent);
+        categoryWeights.merge(category, w, Double::sum);
+
+        // La clave sale del texto ya cortado: es la misma que se recalcula al leer el archivo
+        String text = (description == null) ? "" : truncate(description.trim());
+        String key = normalize(text);
+        if (key.isEmpty()) return;
+        Node node = root;
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            Node next = node.child(c);
+            node = (next != null) ? next : node.addChild(c);
+            path.add(node);
+        }
+        Entry e = node.entry;
+        if (e == null) {
+            e = new Entry();
+            node.entry = e;
+            entries.add(e);
+        }
+        e.text = text;
+        e.weight += w;
+        e.categories.merge(category, w, Double::sum);
+        for (int i = 0; i < path.size(); i++) path.get(i).offer(e);
+        if (entries.size() > MAX_ENTRIES) evict(lightest(e));
+    }
+
+    /** La entrada de menor peso, sin contar {@code keep} (la recién usada no se va). */
+    private Entry lightest(Entry keep) {
+        Entry min = null;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            if (e != keep && (min == null || e.weight < min.weight)) min = e;
+        }
+        return min;
+    }
+
+    /** Saca la entrada del trie: poda los nodos que quedan vacíos y rehace los top del camino. */
+    private void evict(Entry victim) {
+        entries.remove(victim);
+        String key = normalize(victim.text);
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) path[i + 1] = path[i].child(key.charAt(i));
+        path[key.length()].entry = null;
+        // De abajo hacia arriba: los hijos fuera del camino ya tienen su top correcto
+        for (int i = key.length(); i >= 0; i--) {
+            Node node = path[i];
+            if (i > 0 && node.isEmpty()) {
+                path[i - 1].removeChild(node);
+            } else {
+                node.rebuildTop();
+            }
+        }
+    }
+
+    /** Corta en {@link #MAX_DESCRIPTION_LENGTH} caracteres sin partir un par surrogate. */
+    private static String truncate(String text) {
+        if (text.length() <= MAX_DESCRIPTION_LENGTH) return text;
+        int end = MAX_DESCRIPTION_LENGTH;
+        if (Character.isHighSurrogate(text.charAt(end - 1))) end--;
+        return text.substring(0, end);
+    }
+
+    /** Lleva la base a {@code nowMs}: todos los pesos se escalan igual, el orden no cambia. */
+    private void rebase(long nowMs) {
+        double scale = Math.pow(2, -(nowMs - baseMs) / (double) HALF_LIFE_MS);
+        baseMs = nowMs;
+        categoryWeights.replaceAll((k, v) -> v * scale);
+        for (Entry e : entries) {
+            e.weight *= scale;
+            e.categories.replaceAll((k, v) -> v * scale);
+        }
+    }
+
+    // ─── Consultas ────────────────────────────────────────────────────────────
+
+    /** {@code available} ordenadas de más a menos usada; las nunca usadas quedan en su orden. */
+    synchronized List<String> rankCategories(List<String> available) {
+        List<String> out = new ArrayList<>(available);
+        // sort es estable: a igual peso se respeta el orden original
+        out.sort((a, b) -> Double.compare(weight(b), weight(a)));
+        return out;
+    }
+
+    private double weight(String category) {
+        Double w = categoryWeights.get(category);
+        return (w != null) ? w : 0;
+    }
+
+    /** Hasta {@code limit} (≤ {@link #TOP_K}) descripciones que empiezan con {@code prefix}, la más usada primero. */
+    synchronized List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) return new ArrayList<>(0);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) node = node.child(key.charAt(i));
+        if (node == null) return new ArrayList<>(0);
+        int n = Math.min(limit, node.top.length);
+        List<Suggestion> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(new Suggestion(node.top[i].text, node.top[i].topCategory()));
+        return out;
+    }
+
+    /** La categoría más usada con esta descripción exacta (normalizada); null si nunca se usó. */
+    synchronized String categoryFor(String description) {
+        String key = normalize(description);
+        if (key.isEmpty()) return null;
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) node = node.child(key.charAt(i));
+        return (node != null && node.entry != null) ? node.entry.topCategory() : null;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** Minúsculas, sin tildes, espacios simples y largo acotado. "" si no queda nada. */
+    static String normalize(String s) {
+        if (s == null) return "";
+        String n = Normalizer.normalize(s.trim().toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(n.length());
+        boolean space = false;
+        for (int i = 0; i < n.length() && sb.length() < MAX_DESCRIPTION_LENGTH; i++) {
+            char c = n.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) sb.append(' ');
+            space = false;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // ─── Archivo ──────────────────────────────────────────────────────────────
+
+    synchronized byte[] encode() {
+        List<byte[]> strings = new ArrayList<>();
+        int size = 4 + 4 + 8 + 4 + 4 + 4;
+        for (String name : categoryWeights.keySet()) size += addString(strings, name) + 8;
+        for (Entry e : entries) {
+            size += addString(strings, e.text) + 8 + 2;
+            for (String name : e.categories.keySet()) size += addString(strings, name) + 8;
+        }
+        ByteBuffer b = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(MAGIC).putInt(VERSION).putLong(baseMs).putInt(categoryWeights.size()).putInt(entries.size());
+        int s = 0;
+        // Mismo orden de iteración que arriba: los mapas no cambian en el medio (synchronized)
+        for (Map.Entry<String, Double> c : categoryWeights.entrySet()) {
+            putString(b, strings.get(s++));
+            b.putDouble(c.getValue());
+        }
+        for (Entry e : entries) {
+            putString(b, strings.get(s++));
+            b.putDouble(e.weight);
+            b.putShort((short) e.categories.size());
+            for (Map.Entry<String, Double> c : e.categories.entrySet()) {
+                putString(b, strings.get(s++));
+                b.putDouble(c.getValue());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, size - 4);
+        b.putInt((int) crc.getValue());
+        return b.array();
+    }
+
+    private static int addString(List<byte[]> out, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) b = Arrays.copyOf(b, 0xFFFF);
+        out.add(b);
+        return 2 + b.length;
+    }
+
+    private static void putString(ByteBuffer b, byte[] s) {
+        b.putShort((short) s.length).put(s);
+    }
+
+    /** Null si los bytes no son un índice válido. */
+    static ExpenseIndex decode(byte[] data) {
+        if (data.length < 28) return null;
+        ByteBuffer b = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION
+                || b.getInt(data.length - 4) != (int) crc.getValue()) {
+            return null;
+        }
+        b.position(8);
+        b.limit(data.length - 4);
+        ExpenseIndex index = new ExpenseIndex();
+        try {
+            index.baseMs = b.getLong();
+            int nCategories = b.getInt();
+            int nEntries = b.getInt();
+            if (nCategories < 0 || nEntries < 0) return null;
+            for (int i = 0; i < nCategories; i++) index.categoryWeights.put(readString(b), b.getDouble());
+            for (int i = 0; i < nEntries; i++) {
+                String text = readString(b);
+                double weight = b.getDouble();
+                int n = b.getShort() & 0xFFFF;
+                Map<String, Double> categories = new HashMap<>(n * 2);
+                for (int j = 0; j < n; j++) categories.put(readString(b), b.getDouble());
+                index.restore(text, weight, categories);
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        // Archivo de antes del límite: se queda con las más pesadas
+        while (index.entries.size() > MAX_ENTRIES) index.evict(index.lightest(null));
+        return index;
+    }
+
+    private void restore(String text, double weight, Map<String, Double> categories) {
+        text = truncate(text);
+        String key = normalize(text);
+        if (key.isEmpty()) return;
+        Node node = root;
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            Node next = node.child(c);
+            node = (next != null) ? next : node.addChild(c);
+            path.add(node);
+        }
+        if (node.entry != null) return; // duplicado en el archivo
+        Entry e = new Entry();
+        e.text = text;
+        e.weight = weight;
+        e.categories.putAll(categories);
+        node.entry = e;
+        entries.add(e);
+        for (int i = 0; i < path.size(); i++) path.get(i).offer(e);
+    }
+
+    private static String readString(ByteBuffer b) {
+        int len = b.getShort() & 0xFFFF;
+        if (len > b.remaining()) throw new BufferUnderflowException();
+        String s = new String(b.array(), b.position(), len, StandardCharsets.UTF_8);
+        b.position(b.position() + len);
+        return s;
+    }
+
+    /** Lee el índice; uno vacío si no existe o está corrupto. */
+    static ExpenseIndex read(File file) {
+        if (file.exists()) {
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                if (in.length() <= Integer.MAX_VALUE) {
+                    byte[] data = new byte[(int) in.length()];
+                    in.readFully(data);
+                    ExpenseIndex index = decode(data);
+                    if (index != null) return index;
+                }
+            } catch (IOException e) {
+                // Se empieza de cero: el índice se reconstruye con los próximos gastos
+            }
+        }
+        return new ExpenseIndex();
+    }
+
+    /** Escritura atómica: temporal + fsync + rename. Las consultas no esperan al fsync. */
+    void write(File file) throws IOException {
+        synchronized (fileLock) {
+            byte[] data = encode();
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(data);
+                out.getFD().sync();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("No se pudo reemplazar " + file);
+            }
+        }
+    }
+}
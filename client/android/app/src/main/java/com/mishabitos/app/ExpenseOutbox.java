@@ -0,0 +1,426 @@
+package com.mishabitos.app;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Cola persistente de gastos pendientes de subir (outbox), como log append-only.
+ *
+ * Cada gasto se agrega con una clave de idempotencia (el id del registro) y su JSON; cuando
+ * el servidor lo confirma se agrega un registro DONE con la clave. Si el servidor lo rechaza
+ * se agrega un registro REJECTED: el gasto deja de enviarse pero se conserva hasta que el
+ * usuario lo reintente ({@link #retryRejected}) o lo descarte ({@link #discardRejected}).
+ * Al abrir se reproduce el log: quedan pendientes los ADD sin DONE ni REJECTED, en orden de
+ * llegada. Un registro cortado a la mitad (el proceso murió escribiendo) falla el CRC y se
+ * descarta junto con lo que sigue.
+ *
+ * Layout (little endian):
+ * <pre>
+ *   header (8 B):  magic, version
+ *   registros:     type (byte), length (int), payload, crc32 de type+length+payload (int)
+ *   payload ADD:   largo de la clave (short), clave UTF-8, JSON UTF-8
+ *   payload DONE:  clave UTF-8
+ *   payload REJECTED: largo de la clave (short), clave UTF-8, motivo UTF-8
+ * </pre>
+ *
+ * Si una escritura falla a la mitad (disco lleno) el log se corta donde estaba antes del
+ * registro: un registro roto en el medio haría que al reabrir se descarte todo lo que sigue.
+ *
+ * Los ADD se sincronizan a disco antes de volver; los DONE y REJECTED no: si se pierde uno,
+ * el gasto se reenvía y el servidor lo ignora por la clave (o lo vuelve a rechazar). Cuando
+ * no queda nada pendiente ni rechazado el log se trunca; si crece con muchos DONE se
+ * reescribe sólo con lo que sigue vivo.
+ *
+ * Thread-safe.
+ */
+final class ExpenseOutbox implements Closeable {
+
+    static final int HEADER_SIZE = 8;
+
+    private static final int MAGIC = 0x4842584F; // "HBXO"
+    private static final int VERSION = 1;
+    private static final byte TYPE_ADD = 1;
+    private static final byte TYPE_DONE = 2;
+    private static final byte TYPE_REJECTED = 3;
+    private static final int RECORD_OVERHEAD = 1 + 4 + 4;
+    private static final int MAX_PAYLOAD = 1 << 20;
+    // Reescribir el log cuando pasa este tamaño y los pendientes ocupan menos de la mitad
+    private static final long COMPACT_THRESHOLD = 64 * 1024;
+
+    /** Escritura y fsync del log; los tests la reemplazan para simular fallas de disco. */
+    interface Disk {
+        void write(RandomAccessFile file, byte[] data) throws IOException;
+
+        void sync(RandomAccessFile file) throws IOException;
+    }
+
+    static final Disk DEFAULT_DISK = new Disk() {
+        @Override
+        public void write(RandomAccessFile file, byte[] data) throws IOException {
+            file.write(data);
+        }
+
+        @Override
+        public void sync(RandomAccessFile file) throws IOException {
+            file.getFD().sync();
+        }
+    };
+
+    /** Un gasto pendiente o rechazado. Inmutable. */
+    static final class Entry {
+        final String key;
+        final String json;
+        /** Motivo del rechazo del servidor; null si está pendiente. */
+        final String reason;
+
+        Entry(String key, String json) {
+            this(key, json, null);
+        }
+
+        Entry(String key, String json, String reason) {
+            this.key = key;
+            this.json = json;
+            this.reason = reason;
+        }
+    }
+
+    private final File path;
+    private final Disk disk;
+    private RandomAccessFile file;
+    private final CRC32 crc = new CRC32();
+    // Pendientes en orden de llegada
+    private final LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+    // Rechazados por el servidor, en orden de rechazo
+    private final LinkedHashMap<String, Entry> rejected = new LinkedHashMap<>();
+    private long liveBytes;
+
+    private ExpenseOutbox(File path, Disk disk) {
+        this.path = path;
+        this.disk = disk;
+    }
+
+    /** Abre (o crea) el outbox y recupera los pendientes. */
+    static ExpenseOutbox open(File path) throws IOException {
+        return open(path, DEFAULT_DISK);
+    }
+
+    static ExpenseOutbox open(File path, Disk disk) throws IOException {
+        ExpenseOutbox o = new ExpenseOutbox(path, disk);
+        try {
+            o.file = new RandomAccessFile(path, "rw");
+            o.load();
+        } catch (IOException | RuntimeException e) {
+            o.close();
+            throw e;
+        }
+        return o;
+    }
+
+    private void load() throws IOException {
+        long length = file.length();
+        if (length < HEADER_SIZE || readHeaderMagic() != MAGIC) {
+            writeEmptyHeader();
+            return;
+        }
+        long pos = HEADER_SIZE;
+        byte[] head = new byte[5];
+        while (pos + RECORD_OVERHEAD <= length) {
+            file.seek(pos);
+            file.readFully(head);
+            byte type = head[0];
+            int len = ByteBuffer.wrap(head, 1, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            if (len < 0 || len > MAX_PAYLOAD || pos + RECORD_OVERHEAD + len > length) break;
+            byte[] payload = new byte[len];
+            file.readFully(payload);
+            int stored = Integer.reverseBytes(file.readInt());
+            crc.reset();
+            crc.update(head);
+            crc.update(payload);
+            if ((int) crc.getValue() != stored || !apply(type, payload)) break;
+            pos += RECORD_OVERHEAD + len;
+        }
+        // Cola cortada o corrupta: se descarta para que los próximos registros queden legibles
+        if (pos < length) file.setLength(pos);
+    }
+
+    private int readHeaderMagic() throws IOException {
+        file.seek(0);
+        int magic = Integer.reverseBytes(file.readInt());
+        int version = Integer.reverseBytes(file.readInt());
+        return (version == VERSION) ? magic : 0;
+    }
+
+    private void writeEmptyHeader() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(MAGIC).putInt(VERSION);
+        file.setLength(0);
+        file.seek(0);
+        file.write(b.array());
+    }
+
+    private boolean apply(byte type, byte[] payload) {
+        if (type == TYPE_ADD) {
+            if (payload.length < 2) return false;
+            int keyLen = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN).getShort() & 0xFFFF;
+            if (2 + keyLen > payload.length) return false;
+            String key = new String(payload, 2, keyLen, StandardCharsets.UTF_8);
+            String json = new String(payload, 2 + keyLen, payload.length - 2 - keyLen, StandardCharsets.UTF_8);
+            removeRejected(key);
+            putPending(key, json);
+            return true;
+        }
+        if (type == TYPE_DONE) {
+            String key = new String(payload, StandardCharsets.UTF_8);
+            removePending(key);
+            removeRejected(key);
+            return true;
+        }
+        if (type == TYPE_REJECTED) {
+            if (payload.length < 2) return false;
+            int keyLen = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN).getShort() & 0xFFFF;
+            if (2 + keyLen > payload.length) return false;
+            String key = new String(payload, 2, keyLen, StandardCharsets.UTF_8);
+            String reason = new String(payload, 2 + keyLen, payload.length - 2 - keyLen, StandardCharsets.UTF_8);
+            moveToRejected(key, reason);
+            return true;
+        }
+        return false;
+    }
+
+    // ─── Escritura ────────────────────────────────────────────────────────────
+
+    /**
+     * Guarda un gasto; al volver está en disco. Una clave repetida no se vuelve a encolar. Si
+     * falla, el gasto no queda en el log (tampoco si lo que falló fue el fsync): reintentar el
+     * guardado no lo duplica.
+     */
+    synchronized void add(String key, String json) throws IOException {
+        if (pending.containsKey(key) || rejected.containsKey(key)) return;
+        byte[] payload = addPayload(key, json);
+        long start = file.length();
+        try {
+            append(TYPE_ADD, payload);
+            disk.sync(file);
+        } catch (IOException e) {
+            truncateTo(start, e);
+            throw e;
+        }
+        putPending(key, json);
+    }
+
+    private static byte[] addPayload(String key, String json) {
+        return keyedPayload(key, json);
+    }
+
+    private static byte[] rejectedPayload(String key, String reason) {
+        return keyedPayload(key, reason);
+    }
+
+    private static byte[] keyedPayload(String key, String value) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] v = value.getBytes(StandardCharsets.UTF_8);
+        if (k.length > 0xFFFF || 2 + k.length + v.length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Gasto demasiado grande");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(2 + k.length + v.length).order(ByteOrder.LITTLE_ENDIAN);
+        payload.putShort((short) k.length).put(k).put(v);
+        return payload.array();
+    }
+
+    /** Marca como enviados los gastos con estas claves. */
+    synchronized void remove(List<Entry> sent) throws IOException {
+        for (int i = 0; i < sent.size(); i++) {
+            String key = sent.get(i).key;
+            if (!pending.containsKey(key)) continue;
+            append(TYPE_DONE, key.getBytes(StandardCharsets.UTF_8));
+            removePending(key);
+        }
+        afterRemoval();
+    }
+
+    /**
+     * Saca el gasto de los pendientes sin perderlo: queda en {@link #rejected()} con el
+     * motivo hasta que el usuario lo reintente o lo descarte.
+     */
+    synchronized void reject(Entry entry, String reason) throws IOException {
+        if (!pending.containsKey(entry.key)) return;
+        append(TYPE_REJECTED, rejectedPayload(entry.key, reason));
+        moveToRejected(entry.key, reason);
+    }
+
+    /** Vuelve a encolar todos los rechazados (al final). Devuelve cuántos. */
+    synchronized int retryRejected() throws IOException {
+        int n = rejected.size();
+        if (n == 0) return 0;
+        List<Entry> retry = new ArrayList<>(rejected.values());
+        long start = file.length();
+        try {
+            for (int i = 0; i < n; i++) append(TYPE_ADD, addPayload(retry.get(i).key, retry.get(i).json));
+            disk.sync(file);
+        } catch (IOException e) {
+            truncateTo(start, e);
+            throw e;
+        }
+        for (int i = 0; i < n; i++) {
+            Entry e = retry.get(i);
+            removeRejected(e.key);
+            putPending(e.key, e.json);
+        }
+        return n;
+    }
+
+    /** Borra definitivamente los rechazados. Devuelve cuántos. */
+    synchronized int discardRejected() throws IOException {
+        int n = rejected.size();
+        if (n == 0) return 0;
+        List<String> keys = new ArrayList<>(rejected.keySet());
+        for (int i = 0; i < n; i++) {
+            append(TYPE_DONE, keys.get(i).getBytes(StandardCharsets.UTF_8));
+            removeRejected(keys.get(i));
+        }
+        afterRemoval();
+        return n;
+    }
+
+    private void afterRemoval() throws IOException {
+        if (pending.isEmpty() && rejected.isEmpty()) {
+            writeEmptyHeader();
+        } else if (file.length() > COMPACT_THRESHOLD && liveBytes * 2 < file.length()) {
+            compact();
+        }
+    }
+
+    private void append(byte type, byte[] payload) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(type).putInt(payload.length).put(payload);
+        crc.reset();
+        crc.update(b.array(), 0, 5 + payload.length);
+        b.putInt((int) crc.getValue());
+        long start = file.length();
+        file.seek(start);
+        try {
+            disk.write(file, b.array());
+        } catch (IOException e) {
+            truncateTo(start, e);
+            throw e;
+        }
+    }
+
+    /** Saca del log lo escrito desde {@code length}; si tampoco se puede, lo suma a {@code cause}. */
+    private void truncateTo(long length, IOException cause) {
+        try {
+            if (file.length() > length) file.setLength(length);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Reescribe el log sólo con los pendientes y rechazados (temporal + fsync + rename). El
+     * archivo actual sigue abierto hasta que el nuevo lo reemplazó: si algo falla, el log viejo
+     * sigue siendo válido y el outbox sigue aceptando gastos.
+     */
+    private void compact() throws IOException {
+        File tmp = new File(path.getPath() + ".tmp");
+        try {
+            ExpenseOutbox out = open(tmp, disk);
+            try {
+                out.writeEmptyHeader();
+                for (Map.Entry<String, String> e : pending.entrySet()) {
+                    out.append(TYPE_ADD, addPayload(e.getKey(), e.getValue()));
+                }
+                for (Entry e : rejected.values()) {
+                    out.append(TYPE_ADD, addPayload(e.key, e.json));
+                    out.append(TYPE_REJECTED, rejectedPayload(e.key, e.reason));
+                }
+                disk.sync(out.file);
+            } finally {
+                out.close();
+            }
+            // Reemplazar un archivo abierto es válido: el descriptor viejo sigue apuntando al log anterior
+            if (!tmp.renameTo(path)) throw new IOException("No se pudo reemplazar " + path);
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+        RandomAccessFile old = file;
+        file = new RandomAccessFile(path, "rw");
+        old.close();
+    }
+
+    // liveBytes es aproximado (cuenta caracteres, no bytes UTF-8): sólo decide cuándo compactar
+    private void putPending(String key, String json) {
+        if (pending.put(key, json) == null) liveBytes += addBytes(key, json);
+    }
+
+    private void removePending(String key) {
+        String json = pending.remove(key);
+        if (json != null) liveBytes -= addBytes(key, json);
+    }
+
+    private void moveToRejected(String key, String reason) {
+        String json = pending.get(key);
+        if (json == null) return;
+        removePending(key);
+        rejected.put(key, new Entry(key, json, reason));
+        liveBytes += addBytes(key, json) + addBytes(key, reason);
+    }
+
+    private void removeRejected(String key) {
+        Entry e = rejected.remove(key);
+        if (e != null) liveBytes -= addBytes(key, e.json) + addBytes(key, e.reason);
+    }
+
+    private static long addBytes(String key, String value) {
+        return RECORD_OVERHEAD + 2 + key.length() + value.length();
+    }
+
+    // ─── Lectura ──────────────────────────────────────────────────────────────
+
+    /** Los primeros {@code max} pendientes, en orden de llegada. */
+    synchronized List<Entry> peek(int max) {
+        List<Entry> out = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<Map.Entry<String, String>> it = pending.entrySet().iterator();
+        while (it.hasNext() && out.size() < max) {
+            Map.Entry<String, String> e = it.next();
+            out.add(new Entry(e.getKey(), e.getValue()));
+        }
+        return out;
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /** Los gastos que el servidor rechazó, en orden de rechazo. */
+    synchronized List<Entry> rejected() {
+        return new ArrayList<>(rejected.values());
+    }
+
+    /** Cuerpo de un insert masivo de PostgREST: un arreglo JSON con los gastos. */
+    static String bulkBody(List<Entry> entries) {
+        StringBuilder sb = new StringBuilder(2 + entries.size() * 256);
+        sb.append('[');
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(entries.get(i).json);
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (file != null) file.close();
+    }
+}
@@ -0,0 +1,240 @@
+package com.mishabitos.app;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Sube los gastos del {@link ExpenseOutbox} con inserts masivos de PostgREST.
+ *
+ * Corre como job con red disponible; si el servidor no responde o falla, JobScheduler lo
+ * reprograma con backoff exponencial. Cada gasto lleva su clave de idempotencia como
+ * {@code id}, y el insert usa {@code on_conflict=id} + {@code resolution=ignore-duplicates}:
+ * un reintento de un lote que sí llegó (respuesta perdida) no duplica nada.
+ *
+ * El esquema de {@code expenses} no está en este repo. Si el servidor contesta que el id no
+ * entra en la columna (no es uuid), no hay forma de subir sin perder esa garantía: los gastos
+ * quedan en cola, se avisa con una notificación y el job sigue reintentando con backoff hasta
+ * que la tabla acepte el id. Un gasto que el servidor rechaza por sus datos o por permisos
+ * (403 de RLS) no se borra: queda en {@link ExpenseOutbox#rejected()} y también se avisa. El
+ * armado de lotes y el aislamiento del gasto rechazado están en {@link ExpenseUploader}.
+ */
+public class ExpenseOutboxJob extends JobService {
+
+    private static final String TAG = "ExpenseOutbox";
+    private static final int JOB_ID = 2001;
+    private static final String OUTBOX_FILE = "expense_outbox.log";
+
+    private static final long INITIAL_BACKOFF_MS = 10_000L;
+    // Con missing=default, las columnas que un gasto no trae toman el valor por defecto
+    // de la tabla, igual que en un insert individual
+    private static final String COLUMNS = "id,amount,description,created_at,category,currency,planilla_id,"
+            + "is_shared,payer_name,is_installment,current_installment,total_installments";
+
+    private static final String CHANNEL_ID = "expense_sync";
+    private static final int NOTIF_REJECTED = 2002;
+    private static final int NOTIF_BLOCKED = 2003;
+
+    private static ExpenseOutbox outbox;
+
+    private volatile boolean stopped;
+
+    /** Outbox compartido por el proceso (la activity escribe, el job lee). */
+    static synchronized ExpenseOutbox outbox(Context context) throws IOException {
+        if (outbox == null) {
+            outbox = ExpenseOutbox.open(new File(context.getFilesDir(), OUTBOX_FILE));
+        }
+        return outbox;
+    }
+
+    /** Agenda una subida para cuando haya red. Reemplaza (y reinicia el backoff de) la agendada. */
+    static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) return;
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, ExpenseOutboxJob.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setBackoffCriteria(INITIAL_BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped = false;
+        SupabaseClient.executor().execute(() -> jobFinished(params, !drain()));
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        return true; // lo que quedó se reintenta
+    }
+
+    /** Sube todo lo pendiente. Devuelve false si quedó algo para reintentar. */
+    private boolean drain() {
+        SupabaseClient client = SupabaseClient.get(this);
+        if (!client.hasSession()) return false;
+
+        try {
+            ExpenseOutbox box = outbox(this);
+            ExpenseUploader uploader = new ExpenseUploader(box, new SupabaseSender(client));
+            try {
+                int result = uploader.drain(() -> stopped);
+                if (result == ExpenseUploader.ID_TYPE) {
+                    Log.e(TAG, "La columna id de expenses no acepta uuid: " + box.size()
+                            + " gastos quedan en cola sin subir");
+                    notifyUser(NOTIF_BLOCKED, "El servidor no acepta los gastos rápidos."
+                            + " Quedan guardados en el teléfono y se suben cuando se corrija.");
+                }
+                return result == ExpenseUploader.SENT;
+            } finally {
+                if (uploader.rejectedCount() > 0) notifyRejected(box.rejected().size());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error leyendo el outbox: " + e.getMessage());
+            return false;
+        } finally {
+            Log.d(TAG, "Latencias: " + client.stats());
+        }
+    }
+
+    /** Envía los lotes con PostgREST y guarda la última respuesta para el motivo del rechazo. */
+    private static final class SupabaseSender implements ExpenseUploader.Sender {
+        private final SupabaseClient client;
+        private SupabaseClient.Response last;
+        private List<ExpenseOutbox.Entry> lastBatch;
+
+        SupabaseSender(SupabaseClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public int send(List<ExpenseOutbox.Entry> batch) {
+            last = post(client, batch);
+            lastBatch = batch;
+            return classify(last);
+        }
+
+        @Override
+        public String rejectionReason() {
+            String reason = ExpenseOutboxJob.rejectionReason(last);
+            Log.w(TAG, "Gasto " + lastBatch.get(0).key + " rechazado por el servidor: " + reason);
+            return reason;
+        }
+    }
+
+    /** Devuelve null si no hubo respuesta. */
+    private static SupabaseClient.Response post(SupabaseClient client, List<ExpenseOutbox.Entry> batch) {
+        try {
+            SupabaseClient.Response response = client.request("POST",
+                    "/rest/v1/expenses?columns=" + COLUMNS + "&on_conflict=id",
+                    ExpenseOutbox.bulkBody(batch).getBytes(StandardCharsets.UTF_8),
+                    "return=minimal,resolution=ignore-duplicates,missing=default");
+            Log.d(TAG, batch.size() + " gastos → HTTP " + response.code);
+            return response;
+        } catch (IOException e) {
+            Log.w(TAG, "Sin conexión con el servidor: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int classify(SupabaseClient.Response response) {
+        if (response == null) return ExpenseUploader.RETRY;
+        if (response.code == 400 && isIdTypeMismatch(response)) return ExpenseUploader.ID_TYPE;
+        // 401: token vencido, se renueva cuando se abre la app (saveAuthToken reagenda)
+        return ExpenseUploader.classifyStatus(response.code);
+    }
+
+    /**
+     * 22P02 (invalid_text_representation) sobre un tipo entero: el uuid que mandamos como id
+     * no entra en la columna. Cualquier otro 22P02 es un dato inválido de ese gasto.
+     */
+    private static boolean isIdTypeMismatch(SupabaseClient.Response response) {
+        JSONObject error = errorBody(response);
+        if (error == null || !"22P02".equals(error.optString("code"))) return false;
+        String message = error.optString("message");
+        return message.contains("type bigint") || message.contains("type integer")
+                || message.contains("type smallint");
+    }
+
+    /** Código HTTP y código de error de PostgREST; nunca el contenido del gasto. */
+    private static String rejectionReason(SupabaseClient.Response response) {
+        JSONObject error = errorBody(response);
+        String code = (error != null) ? error.optString("code") : "";
+        return "HTTP " + response.code + (code.isEmpty() ? "" : " " + code);
+    }
+
+    private static JSONObject errorBody(SupabaseClient.Response response) {
+        try {
+            return new JSONObject(response.bodyString());
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    // ─── Notificación ─────────────────────────────────────────────────────────
+
+    private void notifyRejected(int count) {
+        if (count == 0) return;
+        notifyUser(NOTIF_REJECTED, (count == 1)
+                ? "Un gasto rápido no se pudo subir. Abrí la app para reintentarlo."
+                : count + " gastos rápidos no se pudieron subir. Abrí la app para reintentarlos.");
+    }
+
+    /**
+     * Avisa que hay gastos guardados que no se pudieron subir; tocarla abre la app. Se
+     * reemplaza en cada intento y suena sólo la primera vez.
+     */
+    private void notifyUser(int id, String text) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel ch = new NotificationChannel(
+                CHANNEL_ID,
+                "Sincronización de gastos",
+                NotificationManager.IMPORTANCE_DEFAULT
+            );
+            ch.setDescription("Avisos de gastos rápidos que no se pudieron subir");
+            NotificationManager nm = getSystemService(NotificationManager.class);
+            if (nm != null) nm.createNotificationChannel(ch);
+        }
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        PendingIntent open = PendingIntent.getActivity(this, 2, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        try {
+            NotificationManagerCompat.from(this).notify(id, new NotificationCompat.Builder(this, CHANNEL_ID)
+                    .setContentTitle("Gastos sin subir")
+                    .setContentText(text)
+                    .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setContentIntent(open)
+                    .setOnlyAlertOnce(true)
+                    .setAutoCancel(true)
+                    .build());
+        } catch (SecurityException e) {
+            // Sin permiso de notificaciones: la app los muestra al abrirse
+            Log.w(TAG, "No se pudo notificar: " + e.getMessage());
+        }
+    }
+}
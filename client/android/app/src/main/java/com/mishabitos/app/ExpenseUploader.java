@@ -0,0 +1,101 @@
+package com.mishabitos.app;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Bucle de subida del {@link ExpenseOutbox} de ExpenseOutboxJob, sin dependencias de Android.
+ *
+ * Manda lotes de hasta {@link #MAX_BATCH} gastos. Si el servidor rechaza un lote, lo parte:
+ * manda de a uno hasta encontrar el gasto que lo rompía, lo pasa a rechazados y vuelve a
+ * lotes completos. Un rechazo nunca deja frenados los gastos que vienen detrás; sólo un
+ * {@link #RETRY} (red, sesión, servidor) o un {@link #ID_TYPE} cortan la subida.
+ *
+ * Se usa desde un único hilo.
+ */
+final class ExpenseUploader {
+
+    static final int MAX_BATCH = 50;
+
+    // Resultado de un envío
+    static final int SENT = 0;
+    static final int RETRY = 1;    // red, 5xx, 429, sesión vencida: reintentar con backoff
+    static final int REJECTED = 2; // el servidor no lo va a aceptar nunca
+    static final int ID_TYPE = 3;  // la columna id no es uuid: nada se puede subir
+
+    /** Envía un lote al servidor. */
+    interface Sender {
+        /** {@link #SENT}, {@link #RETRY}, {@link #REJECTED} o {@link #ID_TYPE}. */
+        int send(List<ExpenseOutbox.Entry> batch);
+
+        /** Motivo del último {@link #REJECTED}, para guardarlo con el gasto. */
+        String rejectionReason();
+    }
+
+    /** Para cortar la subida desde otro hilo (onStopJob). */
+    interface StopSignal {
+        boolean isStopped();
+    }
+
+    private final ExpenseOutbox box;
+    private final Sender sender;
+    private int rejected;
+
+    ExpenseUploader(ExpenseOutbox box, Sender sender) {
+        this.box = box;
+        this.sender = sender;
+    }
+
+    /**
+     * Resultado de un envío según el código HTTP. 401 es la sesión vencida (se renueva cuando
+     * se abre la app); 403 con una sesión válida es RLS que no deja escribir esa fila (42501,
+     * p. ej. una planilla que ya no es del usuario): reintentarla sólo frenaría la cola.
+     */
+    static int classifyStatus(int code) {
+        if (code >= 200 && code < 300) return SENT;
+        if (code == 401 || code == 408 || code == 429 || code >= 500) return RETRY;
+        return REJECTED;
+    }
+
+    /**
+     * Sube lo pendiente hasta vaciar el outbox ({@link #SENT}), un {@link #RETRY} o un
+     * {@link #ID_TYPE}. Si {@code stop} se activa en el medio devuelve {@link #RETRY}.
+     */
+    int drain(StopSignal stop) throws IOException {
+        int batchSize = MAX_BATCH;
+        // Último gasto del lote rechazado: hasta pasarlo se envía de a uno
+        String singleUntil = null;
+        while (!stop.isStopped()) {
+            List<ExpenseOutbox.Entry> batch = box.peek(batchSize);
+            if (batch.isEmpty()) return SENT;
+            int result = sender.send(batch);
+            if (result == SENT) {
+                box.remove(batch);
+                if (batch.get(batch.size() - 1).key.equals(singleUntil)) {
+                    // Ningún gasto del lote rechazado falló solo: se vuelve a lotes completos
+                    singleUntil = null;
+                    batchSize = MAX_BATCH;
+                }
+            } else if (result == RETRY || result == ID_TYPE) {
+                return result;
+            } else if (batch.size() > 1) {
+                // Algún gasto del lote es inválido: de a uno hasta encontrarlo, para no
+                // frenar los demás ni volver a mandar el lote entero por cada gasto bueno
+                singleUntil = batch.get(batch.size() - 1).key;
+                batchSize = 1;
+            } else {
+                box.reject(batch.get(0), sender.rejectionReason());
+                rejected++;
+                // Encontrado el que rompía el lote: si queda otro, el próximo lote lo vuelve a aislar
+                singleUntil = null;
+                batchSize = MAX_BATCH;
+            }
+        }
+        return RETRY;
+    }
+
+    /** Gastos pasados a rechazados por este uploader. */
+    int rejectedCount() {
+        return rejected;
+    }
+}
@@ -0,0 +1,39 @@
+package com.mishabitos.app;
+
+/**
+ * Distancias sobre la esfera sin asignaciones ni iteraciones (a diferencia de
+ * {@code Location.distanceTo}, que resuelve Vincenty en cada llamada).
+ */
+final class GeoMath {
+
+    static final double EARTH_RADIUS_M = 6_371_000.0;
+    static final double DEG_TO_RAD = Math.PI / 180.0;
+    static final double METERS_PER_DEG_LAT = EARTH_RADIUS_M * DEG_TO_RAD;
+
+    private GeoMath() {}
+
+    /** Haversine, exacta en la esfera a cualquier distancia. */
+    static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = (lat2 - lat1) * DEG_TO_RAD;
+        double dLng = (lng2 - lng1) * DEG_TO_RAD;
+        double sLat = Math.sin(dLat * 0.5);
+        double sLng = Math.sin(dLng * 0.5);
+        double a = sLat * sLat + Math.cos(lat1 * DEG_TO_RAD) * Math.cos(lat2 * DEG_TO_RAD) * sLng * sLng;
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Aproximación equirectangular: un coseno y una raíz. Error &lt; 0.1% para los pocos
+     * metros que separan dos fixes consecutivos.
+     */
+    static double equirectangularMeters(double lat1, double lng1, double lat2, double lng2) {
+        double x = (lng2 - lng1) * Math.cos((lat1 + lat2) * 0.5 * DEG_TO_RAD);
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEG_LAT;
+    }
+
+    /** Metros por grado de longitud a la latitud dada (para proyectar a un plano ENU local). */
+    static double metersPerDegLng(double lat) {
+        return METERS_PER_DEG_LAT * Math.cos(lat * DEG_TO_RAD);
+    }
+}
@@ -0,0 +1,119 @@
+package com.mishabitos.app;
+
+/**
+ * Máquina de estados que decide cada cuánto pedir fixes GPS según el movimiento.
+ *
+ * <pre>
+ *   MOVING ──(sin pasos y velocidad ~0 durante stillAfterMs)──▶ SLOWING
+ *   SLOWING ──(sigue quieto hasta suspendAfterMs)──▶ SUSPENDED (GPS apagado)
+ *   SLOWING / SUSPENDED ──(vuelven los pasos o la velocidad)──▶ MOVING
+ * </pre>
+ * Sólo se suspende si hay contador de pasos: sin él no habría forma de saber cuándo
+ * reanudar. Java puro: el servicio le pasa eventos y el reloj, y aplica el intervalo.
+ */
+final class GpsSamplingPolicy {
+
+    enum Profile {
+        //            moving   slowing  stillAfter suspendAfter (0 = nunca)
+        PRECISION(    1_000L,  3_000L,  20_000L,   0L),
+        BALANCED(     3_000L, 10_000L,  20_000L,   60_000L),
+        BATTERY(      5_000L, 20_000L,  15_000L,   30_000L);
+
+        final long movingIntervalMs;
+        final long slowingIntervalMs;
+        final long stillAfterMs;
+        final long suspendAfterMs;
+
+        Profile(long movingIntervalMs, long slowingIntervalMs, long stillAfterMs, long suspendAfterMs) {
+            this.movingIntervalMs = movingIntervalMs;
+            this.slowingIntervalMs = slowingIntervalMs;
+            this.stillAfterMs = stillAfterMs;
+            this.suspendAfterMs = suspendAfterMs;
+        }
+
+        /** "precision" | "balanced" | "battery"; cualquier otro valor → BALANCED. */
+        static Profile fromName(String name) {
+            if (name != null) {
+                for (Profile p : values()) {
+                    if (p.name().equalsIgnoreCase(name)) return p;
+                }
+            }
+            return BALANCED;
+        }
+    }
+
+    enum State { MOVING, SLOWING, SUSPENDED }
+
+    static final float STILL_SPEED_MPS = 0.5f;
+
+    private final Profile profile;
+    private final boolean hasStepSensor;
+
+    private State state = State.MOVING;
+    private long lastMotionMs;
+    private long lastStepCount = -1;
+
+    GpsSamplingPolicy(Profile profile, boolean hasStepSensor, long nowMs) {
+        this.profile = profile;
+        this.hasStepSensor = hasStepSensor;
+        this.lastMotionMs = nowMs;
+    }
+
+    Profile profile() { return profile; }
+
+    State state() { return state; }
+
+    /** Intervalo GPS a pedir en el estado actual; 0 si el GPS debe estar apagado. */
+    long intervalMs() {
+        switch (state) {
+            case MOVING: return profile.movingIntervalMs;
+            case SLOWING: return profile.slowingIntervalMs;
+            default: return 0;
+        }
+    }
+
+    /** Lectura acumulada del contador de pasos. Devuelve true si cambió el estado. */
+    boolean onStepCount(long nowMs, long totalSteps) {
+        boolean moved = lastStepCount >= 0 && totalSteps > lastStepCount;
+        lastStepCount = totalSteps;
+        if (!moved) return false;
+        lastMotionMs = nowMs;
+        return transition(State.MOVING);
+    }
+
+    /** Fix aceptado con su velocidad (m/s, negativa si se desconoce). Devuelve true si cambió el estado. */
+    boolean onFix(long nowMs, float speedMps) {
+        if (speedMps < STILL_SPEED_MPS) return false;
+        lastMotionMs = nowMs;
+        return transition(State.MOVING);
+    }
+
+    /** Avanza por tiempo (llamar periódicamente). Devuelve true si cambió el estado. */
+    boolean evaluate(long nowMs) {
+        long still = nowMs - lastMotionMs;
+        if (state == State.MOVING && still >= profile.stillAfterMs) {
+            return transition(State.SLOWING);
+        }
+        if (state == State.SLOWING && hasStepSensor && profile.suspendAfterMs > 0
+                && still >= profile.suspendAfterMs) {
+            return transition(State.SUSPENDED);
+        }
+        return false;
+    }
+
+    /** Cuánto esperar hasta el próximo evaluate() útil; -1 si sólo un evento puede cambiar el estado. */
+    long nextEvaluationDelayMs(long nowMs) {
+        long still = nowMs - lastMotionMs;
+        if (state == State.MOVING) return Math.max(0, profile.stillAfterMs - still);
+        if (state == State.SLOWING && hasStepSensor && profile.suspendAfterMs > 0) {
+            return Math.max(0, profile.suspendAfterMs - still);
+        }
+        return -1;
+    }
+
+    private boolean transition(State next) {
+        if (state == next) return false;
+        state = next;
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package com.mishabitos.app;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/** {@link EventBus.Dispatcher} sobre un Handler: las entregas corren en su Looper. */
+final class HandlerDispatcher implements EventBus.Dispatcher {
+
+    private final Handler handler;
+
+    HandlerDispatcher(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.uptimeMillis(); // el mismo reloj que usa postDelayed
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        handler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
@@ -0,0 +1,62 @@
+package com.mishabitos.app;
+
+import java.util.Locale;
+
+/**
+ * Latencias de los requests nativos en un histograma de buckets fijos (duplican el límite:
+ * 25, 50, 100 … 12800 ms y uno abierto). Registrar no asigna; los percentiles devuelven el
+ * límite superior del bucket, que alcanza para ver si algo empeoró.
+ *
+ * Thread-safe.
+ */
+final class LatencyStats {
+
+    static final long[] BOUNDS_MS = {25, 50, 100, 200, 400, 800, 1600, 3200, 6400, 12800};
+
+    private final long[] buckets = new long[BOUNDS_MS.length + 1];
+    private long count;
+    private long errors;
+    private long totalMs;
+    private long maxMs;
+
+    /** {@code ok} false: sin respuesta o con error HTTP. */
+    synchronized void record(long latencyMs, boolean ok) {
+        int i = 0;
+        while (i < BOUNDS_MS.length && latencyMs > BOUNDS_MS[i]) i++;
+        buckets[i]++;
+        count++;
+        if (!ok) errors++;
+        totalMs += latencyMs;
+        if (latencyMs > maxMs) maxMs = latencyMs;
+    }
+
+    /** Límite superior del bucket del percentil {@code p} (0–100); -1 sin datos, MAX_VALUE si cae en el último. */
+    synchronized long percentileMs(double p) {
+        if (count == 0) return -1;
+        long rank = Math.max(1, (long) Math.ceil(count * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return (i < BOUNDS_MS.length) ? BOUNDS_MS[i] : Long.MAX_VALUE;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    synchronized long count() { return count; }
+
+    synchronized long errors() { return errors; }
+
+    synchronized long maxMs() { return maxMs; }
+
+    synchronized long meanMs() { return (count == 0) ? 0 : totalMs / count; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d requests (%d errores), media %d ms, p50 ≤%s, p95 ≤%s, máx %d ms",
+                count, errors, meanMs(), bound(percentileMs(50)), bound(percentileMs(95)), maxMs);
+    }
+
+    private static String bound(long ms) {
+        return (ms == Long.MAX_VALUE) ? "∞" : (ms + " ms");
+    }
+}
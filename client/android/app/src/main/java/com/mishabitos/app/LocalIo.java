@@ -0,0 +1,30 @@
+package com.mishabitos.app;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hilo para el I/O local que espera la UI (snapshot del selector, índice, outbox de gastos).
+ *
+ * Separado de {@link SupabaseClient#executor()}: un request lento no puede demorar la apertura
+ * ni el guardado de un gasto. Un solo hilo y cola sin límite: nunca corre en quien lo pide,
+ * que puede ser el hilo principal.
+ */
+final class LocalIo {
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            r -> new Thread(r, "LocalIO"));
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private LocalIo() {}
+
+    static ExecutorService executor() {
+        return EXECUTOR;
+    }
+}
@@ -0,0 +1,277 @@
+package com.mishabitos.app;
+
+/**
+ * Pipeline de filtrado de fixes GPS, en Java puro para poder probarlo en la JVM.
+ *
+ * Cada fix pasa por una cadena de {@link Stage}s que pueden rechazarlo o corregir su
+ * posición. Si todas lo aceptan, la distancia desde el último fix aceptado se suma al
+ * total. La configuración por defecto ({@link #createDefault()}) es:
+ * <ol>
+ *   <li>{@link AccuracyGate}: descarta fixes con precisión informada peor que N metros.</li>
+ *   <li>{@link SpeedGate}: descarta saltos que implican una velocidad imposible a pie.</li>
+ *   <li>{@link KalmanSmoother}: filtro de velocidad constante en un plano ENU local.</li>
+ *   <li>{@link MinDistanceGate}: ignora movimientos menores a N metros (jitter en reposo).</li>
+ * </ol>
+ * Un fix no asigna objetos: las etapas trabajan sobre un {@link Fix} mutable reutilizado.
+ */
+final class LocationFilterEngine {
+
+    static final float UNKNOWN_ACCURACY = -1f;
+    static final float UNKNOWN_SPEED = -1f;
+
+    /** Fix en proceso. Las etapas pueden modificar lat/lng. */
+    static final class Fix {
+        double lat;
+        double lng;
+        long timestamp;
+        float accuracy; // metros, UNKNOWN_ACCURACY si el proveedor no la informa
+        float speed;    // m/s, UNKNOWN_SPEED si el proveedor no la informa
+    }
+
+    interface Stage {
+        /** Devuelve false para descartar el fix. */
+        boolean apply(Fix fix, LocationFilterEngine engine);
+
+        void reset();
+    }
+
+    private final Stage[] stages;
+    private final Fix fix = new Fix();
+
+    private boolean hasLast;
+    private double lastLat;
+    private double lastLng;
+    private long lastTimestamp;
+    private double lastDistance;
+    private double totalDistance;
+    private int rejected;
+
+    LocationFilterEngine(Stage... stages) {
+        this.stages = stages.clone();
+    }
+
+    static LocationFilterEngine createDefault() {
+        return new LocationFilterEngine(
+            new AccuracyGate(25f),
+            new SpeedGate(8f),
+            new KalmanSmoother(0.3),
+            new MinDistanceGate(5.0, 1.0)
+        );
+    }
+
+    /** Procesa un fix. Devuelve true si fue aceptado; la posición filtrada queda en lat()/lng(). */
+    boolean process(double lat, double lng, long timestamp, float accuracy, float speed) {
+        fix.lat = lat;
+        fix.lng = lng;
+        fix.timestamp = timestamp;
+        fix.accuracy = accuracy;
+        fix.speed = speed;
+
+        for (Stage stage : stages) {
+            if (!stage.apply(fix, this)) {
+                rejected++;
+                return false;
+            }
+        }
+
+        lastDistance = hasLast ? GeoMath.equirectangularMeters(lastLat, lastLng, fix.lat, fix.lng) : 0;
+        totalDistance += lastDistance;
+        hasLast = true;
+        lastLat = fix.lat;
+        lastLng = fix.lng;
+        lastTimestamp = fix.timestamp;
+        return true;
+    }
+
+    /** Empieza una sesión nueva. */
+    void reset() {
+        hasLast = false;
+        lastDistance = 0;
+        totalDistance = 0;
+        rejected = 0;
+        for (Stage stage : stages) stage.reset();
+    }
+
+    /** Retoma una sesión (p. ej. recuperada del journal) desde su último punto y distancia. */
+    void restore(double lat, double lng, long timestamp, double distanceMeters) {
+        reset();
+        hasLast = true;
+        lastLat = lat;
+        lastLng = lng;
+        lastTimestamp = timestamp;
+        totalDistance = distanceMeters;
+    }
+
+    boolean hasLast() { return hasLast; }
+
+    double lat() { return lastLat; }
+
+    double lng() { return lastLng; }
+
+    long timestamp() { return lastTimestamp; }
+
+    double lastDistanceMeters() { return lastDistance; }
+
+    double totalDistanceMeters() { return totalDistance; }
+
+    int rejectedCount() { return rejected; }
+
+    // ─── Etapas ───────────────────────────────────────────────────────────────
+
+    static final class AccuracyGate implements Stage {
+        private final float maxAccuracyMeters;
+
+        AccuracyGate(float maxAccuracyMeters) {
+            this.maxAccuracyMeters = maxAccuracyMeters;
+        }
+
+        @Override
+        public boolean apply(Fix fix, LocationFilterEngine engine) {
+            return fix.accuracy == UNKNOWN_ACCURACY || fix.accuracy <= maxAccuracyMeters;
+        }
+
+        @Override
+        public void reset() {}
+    }
+
+    /** Rechaza fixes cuya distancia al último aceptado implica superar maxSpeed. */
+    static final class SpeedGate implements Stage {
+        private final float maxSpeedMps;
+
+        SpeedGate(float maxSpeedMps) {
+            this.maxSpeedMps = maxSpeedMps;
+        }
+
+        @Override
+        public boolean apply(Fix fix, LocationFilterEngine engine) {
+            if (!engine.hasLast) return true;
+            long dtMs = fix.timestamp - engine.lastTimestamp;
+            if (dtMs <= 0) return false; // duplicado o fuera de orden
+            double d = GeoMath.equirectangularMeters(engine.lastLat, engine.lastLng, fix.lat, fix.lng);
+            // La precisión del fix amplía el margen: un salto dentro del error no es un outlier
+            double slack = (fix.accuracy > 0) ? fix.accuracy : 0;
+            return d - slack <= maxSpeedMps * (dtMs / 1000.0);
+        }
+
+        @Override
+        public void reset() {}
+    }
+
+    /**
+     * Kalman de velocidad constante por eje (este/norte) en metros, relativo al primer fix.
+     * Ruido de proceso: aceleración blanca de desvío {@code accelNoise} m/s². El ruido de
+     * medición sale de la precisión del fix. Si el GPS informa velocidad casi nula se fuerza
+     * velocidad cero (zero-velocity update) para que el estado no derive estando parado.
+     */
+    static final class KalmanSmoother implements Stage {
+        private static final double DEFAULT_ACCURACY_M = 10.0;
+        private static final long RESET_GAP_MS = 30_000;
+        private static final float STATIONARY_SPEED_MPS = 0.3f;
+
+        private final double accelVar;
+
+        private boolean initialized;
+        private double originLat;
+        private double originLng;
+        private double mPerDegLng;
+        private long lastTs;
+        // Estado y covarianza por eje: [pos, vel], P = [[p00, p01], [p01, p11]]
+        private double ex, evx, e00, e01, e11;
+        private double ny, nvy, n00, n01, n11;
+
+        KalmanSmoother(double accelNoise) {
+            this.accelVar = accelNoise * accelNoise;
+        }
+
+        @Override
+        public boolean apply(Fix fix, LocationFilterEngine engine) {
+            double r = (fix.accuracy > 0) ? fix.accuracy : DEFAULT_ACCURACY_M;
+            double rVar = r * r;
+
+            if (!initialized || fix.timestamp - lastTs > RESET_GAP_MS) {
+                originLat = fix.lat;
+                originLng = fix.lng;
+                mPerDegLng = GeoMath.metersPerDegLng(fix.lat);
+                ex = 0; evx = 0; e00 = rVar; e01 = 0; e11 = 4.0;
+                ny = 0; nvy = 0; n00 = rVar; n01 = 0; n11 = 4.0;
+                lastTs = fix.timestamp;
+                initialized = true;
+                return true;
+            }
+
+            double dt = Math.max(0, (fix.timestamp - lastTs) / 1000.0);
+            lastTs = fix.timestamp;
+
+            double zx = (fix.lng - originLng) * mPerDegLng;
+            double zy = (fix.lat - originLat) * GeoMath.METERS_PER_DEG_LAT;
+
+            // Eje este
+            double dt2 = dt * dt, dt3 = dt2 * dt, dt4 = dt3 * dt;
+            double q00 = accelVar * dt4 / 4, q01 = accelVar * dt3 / 2, q11 = accelVar * dt2;
+
+            double px = ex + evx * dt;
+            double p00 = e00 + 2 * dt * e01 + dt2 * e11 + q00;
+            double p01 = e01 + dt * e11 + q01;
+            double p11 = e11 + q11;
+            double k0 = p00 / (p00 + rVar), k1 = p01 / (p00 + rVar);
+            double innov = zx - px;
+            ex = px + k0 * innov;
+            evx = evx + k1 * innov;
+            e00 = (1 - k0) * p00;
+            e01 = (1 - k0) * p01;
+            e11 = p11 - k1 * p01;
+
+            // Eje norte
+            double py = ny + nvy * dt;
+            p00 = n00 + 2 * dt * n01 + dt2 * n11 + q00;
+            p01 = n01 + dt * n11 + q01;
+            p11 = n11 + q11;
+            k0 = p00 / (p00 + rVar);
+            k1 = p01 / (p00 + rVar);
+            innov = zy - py;
+            ny = py + k0 * innov;
+            nvy = nvy + k1 * innov;
+            n00 = (1 - k0) * p00;
+            n01 = (1 - k0) * p01;
+            n11 = p11 - k1 * p01;
+
+            if (fix.speed != UNKNOWN_SPEED && fix.speed < STATIONARY_SPEED_MPS) {
+                evx = 0; e01 = 0; e11 = 0;
+                nvy = 0; n01 = 0; n11 = 0;
+            }
+
+            fix.lng = originLng + ex / mPerDegLng;
+            fix.lat = originLat + ny / GeoMath.METERS_PER_DEG_LAT;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            initialized = false;
+        }
+    }
+
+    /**
+     * Ignora movimientos menores a {@code minDistanceMeters} o a la precisión del fix
+     * multiplicada por {@code accuracyFactor}: parado, el ruido GPS no suma distancia.
+     */
+    static final class MinDistanceGate implements Stage {
+        private final double minDistanceMeters;
+        private final double accuracyFactor;
+
+        MinDistanceGate(double minDistanceMeters, double accuracyFactor) {
+            this.minDistanceMeters = minDistanceMeters;
+            this.accuracyFactor = accuracyFactor;
+        }
+
+        @Override
+        public boolean apply(Fix fix, LocationFilterEngine engine) {
+            if (!engine.hasLast) return true;
+            double threshold = Math.max(minDistanceMeters, fix.accuracy * accuracyFactor);
+            return GeoMath.equirectangularMeters(engine.lastLat, engine.lastLng, fix.lat, fix.lng) >= threshold;
+        }
+
+        @Override
+        public void reset() {}
+    }
+}
@@ -0,0 +1,90 @@
+package com.mishabitos.app;
+
+/**
+ * Procesamiento por fix de LocationTrackingService, sin dependencias de Android.
+ *
+ * Encadena la política de muestreo, el filtro y el simplificador, y lleva el deadline
+ * de inactividad como un simple timestamp: el servicio tiene un único Runnable que se
+ * re-agenda hasta ese deadline en lugar de cancelar y crear uno nuevo en cada fix.
+ * En régimen estable {@link #onFix} no asigna objetos (salvo los chunks que el sink
+ * reserve para guardar puntos).
+ *
+ * Se usa desde un único hilo.
+ */
+final class LocationPipeline {
+
+    static final int ACCEPTED = 1;
+    static final int SAMPLING_CHANGED = 1 << 1;
+
+    private final LocationFilterEngine filter;
+    private final PathSimplifier simplifier;
+    private final long inactivityTimeoutMs;
+
+    private GpsSamplingPolicy policy;
+    private long inactivityDeadlineMs;
+    private float lastSpeed;
+
+    LocationPipeline(LocationFilterEngine filter, PathSimplifier simplifier, long inactivityTimeoutMs) {
+        this.filter = filter;
+        this.simplifier = simplifier;
+        this.inactivityTimeoutMs = inactivityTimeoutMs;
+    }
+
+    /** Empieza una sesión. {@code nowMs} es reloj monotónico (elapsedRealtime). */
+    void start(GpsSamplingPolicy policy, long nowMs) {
+        this.policy = policy;
+        filter.reset();
+        simplifier.reset();
+        lastSpeed = 0;
+        inactivityDeadlineMs = nowMs + inactivityTimeoutMs;
+    }
+
+    /** Continúa desde una sesión recuperada. Llamar después de {@link #start}. */
+    void restore(double lat, double lng, long timestamp, double distanceMeters) {
+        filter.restore(lat, lng, timestamp, distanceMeters);
+    }
+
+    /**
+     * Procesa un fix crudo. Devuelve una combinación de {@link #ACCEPTED} (el fix se sumó
+     * al path; la posición filtrada queda en lat()/lng()) y {@link #SAMPLING_CHANGED}
+     * (hay que aplicar el nuevo intervalo de la política). Sólo un fix aceptado le llega a
+     * la política: un rebote por multipath que el filtro descarta no reactiva el GPS.
+     */
+    int onFix(long nowMs, double lat, double lng, long timestamp, float accuracy, float speed) {
+        if (!filter.process(lat, lng, timestamp, accuracy, speed)) return 0;
+
+        int result = ACCEPTED;
+        if (speed != LocationFilterEngine.UNKNOWN_SPEED && policy != null && policy.onFix(nowMs, speed)) {
+            result |= SAMPLING_CHANGED;
+        }
+        lastSpeed = (speed != LocationFilterEngine.UNKNOWN_SPEED) ? speed : 0f;
+        simplifier.add(filter.lat(), filter.lng(), filter.timestamp(), lastSpeed);
+        inactivityDeadlineMs = nowMs + inactivityTimeoutMs;
+        return result;
+    }
+
+    /** Lectura del contador de pasos. Devuelve true si cambió el intervalo de muestreo. */
+    boolean onStepCount(long nowMs, long totalSteps) {
+        return policy != null && policy.onStepCount(nowMs, totalSteps);
+    }
+
+    long inactivityDeadlineMs() { return inactivityDeadlineMs; }
+
+    GpsSamplingPolicy policy() { return policy; }
+
+    /** true si hay un fix aceptado (o una sesión recuperada) en lat()/lng(). */
+    boolean hasFix() { return filter.hasLast(); }
+
+    double lat() { return filter.lat(); }
+
+    double lng() { return filter.lng(); }
+
+    long timestamp() { return filter.timestamp(); }
+
+    float speed() { return lastSpeed; }
+
+    /** Distancia sumada por el último fix aceptado. */
+    double lastDistanceMeters() { return filter.lastDistanceMeters(); }
+
+    double totalDistanceMeters() { return filter.totalDistanceMeters(); }
+}
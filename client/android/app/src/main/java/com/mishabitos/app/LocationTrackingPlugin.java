@@ -1,9 +1,13 @@
 package com.mishabitos.app;
 
 import android.Manifest;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Build;
+import android.os.IBinder;
+import android.util.Base64;
 import android.util.Log;
 
 import com.getcapacitor.JSArray;
@@ -31,6 +35,115 @@ import com.getcapacitor.annotation.PermissionCallback;
 public class LocationTrackingPlugin extends Plugin {
 
     private static final String TAG = "LocationTrackingPlugin";
+    private static final int MAX_PAGE_SIZE = 500; // puntos por mensaje del bridge
+    private static final String FORMAT_BINARY = "binary";
+    private static final String FORMAT_POLYLINE6 = "polyline6";
+
+    // locationUpdate se conflaciona: el JS sólo usa la última posición (el path lo trae con getPath)
+    private static final long DEFAULT_UPDATE_INTERVAL_MS = 1000L;
+    private long updateIntervalMs = DEFAULT_UPDATE_INTERVAL_MS;
+
+    // Binder y suscripciones del servicio mientras corre (se usan y se cambian en el hilo main)
+    private LocationTrackingService.LocalBinder service;
+    private EventBus<LocationTrackingService.LocationEvent>.Subscription fixSubscription;
+    private EventBus<LocationTrackingService.LocationEvent>.Subscription stopSubscription;
+    private boolean paused;
+
+    // Sin BIND_AUTO_CREATE: se conecta cada vez que arranca una sesión y no mantiene vivo al servicio
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            unsubscribe();
+            service = (LocationTrackingService.LocalBinder) binder;
+            if (!paused) subscribeFixes();
+            stopSubscription = service.subscribeStops(LocationTrackingPlugin.this::onStopped);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            unsubscribe();
+        }
+    };
+
+    @Override
+    public void load() {
+        getContext().bindService(new Intent(getContext(), LocationTrackingService.class), connection, 0);
+    }
+
+    // Con el WebView oculto no hay suscripción a posiciones: sin suscriptores el servicio no
+    // arma un evento por fix. Al volver, la nueva suscripción recibe la última posición.
+    // El fin de sesión sigue suscripto
+    @Override
+    protected void handleOnPause() {
+        super.handleOnPause();
+        paused = true;
+        unsubscribeFixes();
+    }
+
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        paused = false;
+        subscribeFixes();
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        unsubscribe();
+        getContext().unbindService(connection);
+        super.handleOnDestroy();
+    }
+
+    private void subscribeFixes() {
+        unsubscribeFixes();
+        if (service == null) return;
+        fixSubscription = service.subscribeFixes(this::onFix, EventBus.Policy.latest(updateIntervalMs));
+    }
+
+    private void unsubscribeFixes() {
+        if (fixSubscription == null) return;
+        fixSubscription.unsubscribe();
+        Log.d(TAG, "locationUpdate: " + fixSubscription.deliveredCount() + " enviados, "
+            + fixSubscription.droppedCount() + " conflacionados");
+        fixSubscription = null;
+    }
+
+    private void unsubscribe() {
+        unsubscribeFixes();
+        if (stopSubscription != null) {
+            stopSubscription.unsubscribe();
+            stopSubscription = null;
+        }
+        service = null; // el binder de una sesión terminada no se reutiliza
+    }
+
+    // Entregas en el hilo de tracking; notifyListeners es seguro desde cualquier hilo
+
+    private void onFix(LocationTrackingService.LocationEvent e) {
+        JSObject data = new JSObject();
+        data.put("lat", e.lat);
+        data.put("lng", e.lng);
+        data.put("timestamp", e.timestamp);
+        data.put("speed", e.speed);
+        data.put("distance", e.distanceMeters);
+        // Puntos ya guardados (simplificados): el JS trae los nuevos con getPath()
+        data.put("pathSize", e.pathSize);
+        // Estadísticas en vivo en el mismo mensaje: getSessionStats() queda para el final de la
+        // sesión. Se está en el hilo de tracking, el que las escribe
+        JSObject stats = new JSObject();
+        putLiveStats(stats, LocationTrackingService.sessionStats, System.currentTimeMillis());
+        data.put("stats", stats);
+        notifyListeners("locationUpdate", data);
+    }
+
+    private void onStopped(LocationTrackingService.LocationEvent e) {
+        // Auto-stop por inactividad: el JS pide los puntos que le falten con getPath()
+        JSObject data = new JSObject();
+        data.put("pathSize", e.pathSize);
+        data.put("distance", e.distanceMeters);
+        data.put("reason", "inactivity");
+        notifyListeners("trackingStopped", data);
+    }
 
     @PluginMethod
     public void startTracking(PluginCall call) {
@@ -51,33 +164,23 @@ public class LocationTrackingPlugin extends Plugin {
     }
 
     private void doStartTracking(PluginCall call) {
-        // Registrar listener estático para recibir callbacks del servicio
-        LocationTrackingService.listener = new LocationTrackingService.LocationUpdateListener() {
-            @Override
-            public void onLocationUpdate(double lat, double lng, long timestamp, float speed, double distanceMeters) {
-                JSObject data = new JSObject();
-                data.put("lat", lat);
-                data.put("lng", lng);
-                data.put("timestamp", timestamp);
-                data.put("speed", speed);
-                data.put("distance", distanceMeters);
-                notifyListeners("locationUpdate", data);
-            }
-
-            @Override
-            public void onTrackingStopped(double distanceMeters) {
-                // Auto-stop por inactividad: devolver el path completo al JS
-                JSObject data = new JSObject();
-                data.put("path", buildPathArray());
-                data.put("distance", distanceMeters);
-                data.put("reason", "inactivity");
-                notifyListeners("trackingStopped", data);
-                LocationTrackingService.listener = null;
-            }
-        };
-
+        // Las suscripciones se crean al conectarse el binder (ver connection)
+        Long interval = call.getLong("updateIntervalMs");
+        updateIntervalMs = (interval != null && interval >= 0) ? interval : DEFAULT_UPDATE_INTERVAL_MS;
         Context ctx = getContext();
         Intent serviceIntent = new Intent(ctx, LocationTrackingService.class);
+        String profile = call.getString("profile");
+        if (profile != null) {
+            serviceIntent.putExtra(LocationTrackingService.EXTRA_PROFILE, profile);
+        }
+        Double tolerance = call.getDouble("toleranceMeters");
+        if (tolerance != null && tolerance >= 0) {
+            serviceIntent.putExtra(LocationTrackingService.EXTRA_TOLERANCE_METERS, tolerance.doubleValue());
+        }
+        // resume: continuar la caminata que quedó sin terminar si el proceso murió hace poco
+        if (Boolean.TRUE.equals(call.getBoolean("resume", false))) {
+            serviceIntent.putExtra(LocationTrackingService.EXTRA_RESUME, true);
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             ctx.startForegroundService(serviceIntent);
         } else {
@@ -90,28 +193,140 @@ public class LocationTrackingPlugin extends Plugin {
 
     @PluginMethod
     public void stopTracking(PluginCall call) {
-        // Leer el path ANTES de parar el servicio
-        JSArray path = buildPathArray();
-        Log.d(TAG, "stopTracking() — " + LocationTrackingService.collectedPath.size() + " puntos");
+        // Cancelar antes de detener para no recibir eventos de la sesión que termina
+        unsubscribe();
+
+        // El flush del último punto tiene que correr en el hilo escritor del path
+        LocationTrackingService.runOnTrackingThread(() -> {
+            LocationTrackingService.flushPath();
+            LocationTrackingService.sessionStats.finish(System.currentTimeMillis());
+            getContext().stopService(new Intent(getContext(), LocationTrackingService.class));
+
+            // El path queda en memoria hasta la próxima sesión; el JS lo pagina con getPath()
+            int pathSize = LocationTrackingService.collectedPath.size();
+            Log.d(TAG, "stopTracking() — " + pathSize + " puntos");
+
+            JSObject result = new JSObject();
+            result.put("pathSize", pathSize);
+            call.resolve(result);
+        });
+    }
+
+    /** Si hay una sesión en curso y su distancia, leídas de memoria vía el binder. */
+    @PluginMethod
+    public void isTracking(PluginCall call) {
+        LocationTrackingService.LocalBinder svc = service;
+        boolean active = svc != null && svc.isSessionActive();
+        JSObject result = new JSObject();
+        result.put("active", active);
+        result.put("distance", active ? svc.distanceMeters() : 0.0);
+        call.resolve(result);
+    }
 
-        // Quitar listener antes de detener para que onDestroy no dispare eventos
-        LocationTrackingService.listener = null;
+    /**
+     * Devuelve una página del path de la sesión actual (o de la última terminada).
+     * Opciones: sinceIndex (default 0), limit (default y máximo {@link #MAX_PAGE_SIZE}).
+     * Resultado: { points, nextIndex, total, hasMore }. El JS vuelve a llamar con
+     * sinceIndex = nextIndex para traer sólo los puntos nuevos.
+     */
+    @PluginMethod
+    public void getPath(PluginCall call) {
+        int sinceIndex = call.getInt("sinceIndex", 0);
+        int limit = call.getInt("limit", MAX_PAGE_SIZE);
+        if (sinceIndex < 0 || limit <= 0) {
+            call.reject("sinceIndex must be >= 0 and limit > 0");
+            return;
+        }
 
-        getContext().stopService(new Intent(getContext(), LocationTrackingService.class));
+        TrackBuffer.Snapshot snapshot = LocationTrackingService.collectedPath.snapshot();
+        int total = snapshot.size();
+        int from = Math.min(sinceIndex, total);
+        int to = from + Math.min(limit, Math.min(MAX_PAGE_SIZE, total - from));
 
         JSObject result = new JSObject();
-        result.put("path", path);
+        result.put("points", buildPathArray(snapshot, from, to));
+        result.put("nextIndex", to);
+        result.put("total", total);
+        result.put("hasMore", to < total);
         call.resolve(result);
     }
 
-    private JSArray buildPathArray() {
+    /**
+     * Devuelve el path completo en un único string compacto.
+     * format: "binary" (default, TrackCodec v1 en base64, incluye timestamp y speed)
+     * o "polyline6" (encoded polyline de precisión 6, sólo lat/lng).
+     */
+    @PluginMethod
+    public void getEncodedPath(PluginCall call) {
+        String format = call.getString("format", FORMAT_BINARY);
+        TrackBuffer.Snapshot snapshot = LocationTrackingService.collectedPath.snapshot();
+
+        String encoded;
+        if (FORMAT_BINARY.equals(format)) {
+            encoded = Base64.encodeToString(TrackCodec.encode(snapshot), Base64.NO_WRAP);
+        } else if (FORMAT_POLYLINE6.equals(format)) {
+            encoded = TrackCodec.encodePolyline(snapshot);
+        } else {
+            call.reject("Unknown format: " + format);
+            return;
+        }
+
+        JSObject result = new JSObject();
+        result.put("encoded", encoded);
+        result.put("format", format);
+        result.put("count", snapshot.size());
+        call.resolve(result);
+    }
+
+    /**
+     * Estadísticas de la sesión actual (o de la última si ya terminó). Costo constante:
+     * no recorre el path.
+     */
+    @PluginMethod
+    public void getSessionStats(PluginCall call) {
+        // Se leen en el hilo escritor para obtener valores consistentes entre sí
+        LocationTrackingService.runOnTrackingThread(() -> {
+            SessionStats stats = LocationTrackingService.sessionStats;
+            long now = System.currentTimeMillis();
+
+            JSObject result = new JSObject();
+            if (stats.isStarted()) result.put("startTime", stats.startMs());
+            putLiveStats(result, stats, now);
+            if (stats.hasBounds()) {
+                JSObject bounds = new JSObject();
+                bounds.put("south", stats.minLat());
+                bounds.put("west", stats.minLng());
+                bounds.put("north", stats.maxLat());
+                bounds.put("east", stats.maxLng());
+                result.put("bounds", bounds); // sin fixes todavía: no se incluye
+            }
+            call.resolve(result);
+        });
+    }
+
+    /** Lo que también viaja en cada locationUpdate. Llamar en el hilo de tracking. */
+    private static void putLiveStats(JSObject out, SessionStats stats, long now) {
+        out.put("active", stats.isStarted() && !stats.isFinished());
+        out.put("elapsedMs", stats.elapsedMs(now));
+        out.put("movingMs", stats.movingMs());
+        out.put("pausedMs", stats.pausedMs(now));
+        out.put("distance", stats.distanceMeters());
+        out.put("averagePace", stats.averagePaceSecPerKm());
+        out.put("rollingPace", stats.rollingPaceSecPerKm());
+
+        JSArray splits = new JSArray();
+        for (int i = 0; i < stats.splitCount(); i++) splits.put(stats.splitMs(i));
+        out.put("splits", splits);
+    }
+
+    private JSArray buildPathArray(TrackBuffer.Snapshot snapshot, int from, int to) {
         JSArray path = new JSArray();
-        for (double[] point : LocationTrackingService.collectedPath) {
+        for (int i = from; i < to; i++) {
             JSObject p = new JSObject();
-            p.put("lat", point[0]);
-            p.put("lng", point[1]);
-            p.put("timestamp", (long) point[2]);
-            p.put("speed", (float) point[3]);
+            p.put("lat", snapshot.lat(i));
+            p.put("lng", snapshot.lng(i));
+            p.put("timestamp", snapshot.timestamp(i));
+            p.put("speed", snapshot.speed(i));
             path.put(p);
         }
         return path;
@@ -6,20 +6,27 @@ import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.os.Binder;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
 
 public class LocationTrackingService extends Service {
@@ -28,24 +35,94 @@ public class LocationTrackingService extends Service {
     static final String CHANNEL_ID = "location_tracking_channel";
     static final int NOTIF_ID = 43;
     private static final long INACTIVITY_TIMEOUT_MS = 5 * 60 * 1000L; // 5 min
-    private static final float MIN_DISTANCE_METERS = 5.0f;
-    private static final long MIN_TIME_MS = 3000L; // 3 seg entre actualizaciones GPS
-
-    // Path accesible estáticamente desde el plugin (mismo proceso, mismo looper)
-    static final List<double[]> collectedPath = new ArrayList<>(); // [lat, lng, timestamp_ms, speed_m/s]
-
-    // Listener para callbacks al plugin
-    interface LocationUpdateListener {
-        void onLocationUpdate(double lat, double lng, long timestamp, float speed, double distanceMeters);
-        void onTrackingStopped(double distanceMeters);
+    private static final long NOTIF_MIN_INTERVAL_MS = 2000L;
+
+    // Path accesible estáticamente desde el plugin (mismo proceso). Un solo escritor (GPS),
+    // lectores sin bloqueo vía snapshot(). Columnas: [lat, lng, timestamp_ms, speed_m/s]
+    static final TrackBuffer collectedPath = new TrackBuffer();
+
+    // Descarta puntos colineales antes de guardarlos; el último punto queda pendiente
+    // hasta que llega el siguiente o se llama a flushPath()
+    static final PathSimplifier pathSimplifier = new PathSimplifier(LocationTrackingService::storePoint);
+    // Estadísticas en vivo (ritmo, parciales, tiempo en movimiento). Se escriben y se leen
+    // en el hilo de tracking: el plugin las consulta vía runOnTrackingThread()
+    static final SessionStats sessionStats = new SessionStats();
+
+    static final String EXTRA_TOLERANCE_METERS = "toleranceMeters";
+    static final String EXTRA_PROFILE = "profile";
+    // Retomar la sesión que quedó en el journal (si es reciente) en vez de empezar una nueva
+    static final String EXTRA_RESUME = "resume";
+
+    /** Fix aceptado (posición suavizada) o fin de sesión por inactividad. Inmutable. */
+    static final class LocationEvent {
+        final double lat;
+        final double lng;
+        final long timestamp;
+        final float speed;
+        final double distanceMeters;
+        final int pathSize;
+
+        LocationEvent(double lat, double lng, long timestamp, float speed, double distanceMeters, int pathSize) {
+            this.lat = lat;
+            this.lng = lng;
+            this.timestamp = timestamp;
+            this.speed = speed;
+            this.distanceMeters = distanceMeters;
+            this.pathSize = pathSize;
+        }
     }
-    static LocationUpdateListener listener;
 
+    // Copia en disco de collectedPath para sobrevivir a la muerte del proceso (mismo hilo escritor)
+    private static final String JOURNAL_FILE = "walk_session.journal";
+    private static volatile TrackJournal journal;
+
+    // Hilo propio para GPS, pasos y timers: no compite con el WebView por el main looper.
+    // Es el único escritor de collectedPath / pathSimplifier / journal.
+    private static volatile Handler trackingHandler;
+    // Hilo de la instancia anterior: termina de vaciar el path y cerrar su journal después de
+    // onDestroy, así que el hilo de la siguiente instancia lo espera antes de tocar el estado
+    // estático. Sólo se lee y escribe desde el main thread (onCreate / onDestroy).
+    private static HandlerThread previousTrackingThread;
+    private static final long PREVIOUS_THREAD_WARN_MS = 2000L;
+
+    // Logs por fix sólo si se habilitan con: adb shell setprop log.tag.LocationTrackingSvc DEBUG
+    private static final boolean LOG_FIXES = Log.isLoggable(TAG, Log.DEBUG);
+
+    private HandlerThread trackingThread;
+    private Handler handler;
+    // Journal que abrió esta instancia; onDestroy cierra éste y no el de otra instancia
+    private TrackJournal ownJournal;
     private LocationManager locationManager;
-    private Location lastLocation;
-    private double totalDistanceMeters = 0;
-    private Handler inactivityHandler;
-    private Runnable inactivityRunnable;
+    private SensorManager sensorManager;
+    private final LocationPipeline pipeline = new LocationPipeline(
+        LocationFilterEngine.createDefault(), pathSimplifier, INACTIVITY_TIMEOUT_MS);
+    // Escritos en el hilo de tracking, leídos por LocalBinder desde cualquiera
+    private volatile double totalDistanceMeters = 0;
+    private volatile boolean sessionActive = false;
+    private boolean sessionStarted = false;
+    private long requestedIntervalMs = -1;
+
+    // Runnables reutilizados: nada se asigna por fix
+    private final Runnable samplingCheck = this::evaluateSampling;
+    private final Runnable inactivityCheck = this::checkInactivity;
+
+    private ServiceNotification notification;
+
+    // Suscripciones vía LocalBinder; entregan en el hilo de tracking. Los fixes se pueden
+    // conflacionar; el fin de sesión va aparte para que ninguna política lo descarte
+    private EventBus<LocationEvent> fixEvents;
+    private EventBus<LocationEvent> stopEvents;
+    private final LocalBinder binder = new LocalBinder();
+
+    private final SensorEventListener stepListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            if (pipeline.onStepCount(SystemClock.elapsedRealtime(), (long) event.values[0])) {
+                applySamplingState();
+            }
+        }
+        @Override public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    };
 
     private final LocationListener gpsListener = new LocationListener() {
         @Override
@@ -65,110 +142,385 @@ public class LocationTrackingService extends Service {
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "onCreate()");
-        inactivityHandler = new Handler(Looper.getMainLooper());
+        HandlerThread previous = previousTrackingThread;
+        previousTrackingThread = null;
+        trackingThread = new HandlerThread("LocationTracking", Process.THREAD_PRIORITY_BACKGROUND);
+        trackingThread.start();
+        handler = new Handler(trackingThread.getLooper());
+        // Primero en la cola: todo lo que toca el path o el journal se encola después
+        if (previous != null) handler.post(() -> awaitTrackingThread(previous));
+        trackingHandler = handler;
+        HandlerDispatcher dispatcher = new HandlerDispatcher(handler);
+        fixEvents = new EventBus<>(dispatcher);
+        stopEvents = new EventBus<>(dispatcher);
+        locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+        sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+        handler.post(this::openJournal);
         createNotificationChannel();
+        notification = new ServiceNotification(this, NOTIF_ID, baseNotification(),
+            LocationTrackingService::formatDistance, NOTIF_MIN_INTERVAL_MS, handler);
         startForegroundCompat();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "onStartCommand() — iniciando nueva sesión");
-        collectedPath.clear();
-        totalDistanceMeters = 0;
-        lastLocation = null;
-
-        startLocationUpdates();
-        resetInactivityTimer();
+        // intent null: reinicio de START_STICKY después de que el sistema mató el proceso
+        boolean sticky = intent == null;
+        boolean resume = sticky || intent.getBooleanExtra(EXTRA_RESUME, false);
+        Log.d(TAG, "onStartCommand() — " + (sticky ? "reinicio del sistema" : resume ? "retomar sesión" : "nueva sesión"));
+        double tolerance = sticky ? PathSimplifier.DEFAULT_TOLERANCE_METERS
+            : intent.getDoubleExtra(EXTRA_TOLERANCE_METERS, PathSimplifier.DEFAULT_TOLERANCE_METERS);
+        String profile = sticky ? null : intent.getStringExtra(EXTRA_PROFILE);
+        handler.post(() -> {
+            if (resume) {
+                resumeSession(sticky, tolerance, profile);
+            } else {
+                startSession(tolerance, GpsSamplingPolicy.Profile.fromName(profile), false);
+            }
+        });
 
-        return START_NOT_STICKY;
+        // Si el sistema mata el proceso, se reinicia y retoma la sesión desde el journal
+        return START_STICKY;
     }
 
     @Override
     public void onDestroy() {
         Log.d(TAG, "onDestroy()");
-        if (locationManager != null) {
-            locationManager.removeUpdates(gpsListener);
+        locationManager.removeUpdates(gpsListener);
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(stepListener);
         }
-        cancelInactivityTimer();
+        handler.removeCallbacks(samplingCheck);
+        handler.removeCallbacks(inactivityCheck);
+        notification.cancelPending();
+        Log.d(TAG, "Notificación: " + notification.postedCount() + " publicadas, "
+            + notification.avoidedCount() + " evitadas");
+        sessionActive = false;
+        fixEvents.clear();
+        handler.post(() -> {
+            stopEvents.clear(); // después de entregar un posible fin de sesión ya encolado
+            flushPath();
+            sessionStats.finish(System.currentTimeMillis());
+            closeJournal(ownJournal);
+            ownJournal = null;
+        });
+        trackingHandler = null;
+        trackingThread.quitSafely(); // procesa lo encolado (flush + journal) y termina
+        previousTrackingThread = trackingThread;
         super.onDestroy();
     }
 
+    /**
+     * Espera a que el hilo de la instancia anterior termine su flush y cierre el journal:
+     * si no, un stop + start inmediato tendría dos escritores del path y el cierre viejo
+     * podría truncar el journal que la nueva instancia ya mapeó. Corre en el hilo de tracking
+     * nuevo, nunca en el main thread (el cierre hace force + truncate).
+     */
+    private static void awaitTrackingThread(HandlerThread previous) {
+        try {
+            previous.join(PREVIOUS_THREAD_WARN_MS);
+            if (previous.isAlive()) {
+                Log.w(TAG, "El hilo de tracking anterior sigue cerrando el journal después de "
+                    + PREVIOUS_THREAD_WARN_MS + " ms; se lo sigue esperando");
+                previous.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Interrumpido esperando el hilo de tracking anterior");
+        }
+    }
+
     @Override
-    public IBinder onBind(Intent intent) { return null; }
+    public IBinder onBind(Intent intent) { return binder; }
 
-    // ─── GPS ──────────────────────────────────────────────────────────────────
+    /**
+     * Interfaz en proceso para el plugin (bindService sin BIND_AUTO_CREATE). El path y las
+     * estadísticas siguen siendo estáticos porque se leen también después de detener el servicio.
+     */
+    final class LocalBinder extends Binder {
 
-    private void startLocationUpdates() {
-        locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
-        try {
-            locationManager.requestLocationUpdates(
-                LocationManager.GPS_PROVIDER,
-                MIN_TIME_MS,
-                0f, // sin filtro de distancia mínima (lo hacemos manual)
-                gpsListener,
-                Looper.getMainLooper()
-            );
-            Log.d(TAG, "GPS updates iniciados");
-        } catch (SecurityException e) {
-            Log.e(TAG, "Permiso de ubicación denegado: " + e.getMessage());
+        boolean isSessionActive() {
+            return sessionActive;
+        }
+
+        double distanceMeters() {
+            return totalDistanceMeters;
+        }
+
+        /**
+         * Fixes aceptados, con la política de entrega que elija cada suscriptor. Si la sesión
+         * ya tiene posición, la suscripción la recibe primero.
+         */
+        EventBus<LocationEvent>.Subscription subscribeFixes(EventBus.Receiver<LocationEvent> r, EventBus.Policy policy) {
+            EventBus<LocationEvent>.Subscription s = fixEvents.subscribe(r, policy);
+            // El pipeline se lee en el hilo de tracking
+            handler.post(() -> {
+                if (sessionActive && pipeline.hasFix()) {
+                    s.send(new LocationEvent(pipeline.lat(), pipeline.lng(), pipeline.timestamp(),
+                        pipeline.speed(), totalDistanceMeters, collectedPath.size()));
+                }
+            });
+            return s;
+        }
+
+        /** Fin de sesión por inactividad (se entrega cada uno, sin conflacionar). */
+        EventBus<LocationEvent>.Subscription subscribeStops(EventBus.Receiver<LocationEvent> r) {
+            return stopEvents.subscribe(r, EventBus.Policy.every(1));
+        }
+    }
+
+    /**
+     * Ejecuta {@code r} en el hilo que escribe el path (o en el actual si el servicio
+     * no está corriendo, en cuyo caso no hay otro escritor).
+     */
+    static void runOnTrackingThread(Runnable r) {
+        Handler h = trackingHandler;
+        if (h == null || !h.post(r)) r.run();
+    }
+
+    /**
+     * Retoma la sesión del journal con la tolerancia y el perfil con que empezó. Sin sesión
+     * reciente que retomar, un reinicio del sistema termina el servicio (nadie pidió una
+     * caminata nueva) y un pedido explícito empieza una con la configuración recibida.
+     */
+    private void resumeSession(boolean sticky, double tolerance, String profile) {
+        if (sessionStarted) return; // ya corre en esta instancia
+        if (hasRecoverableSession()) {
+            startSession(journal.toleranceMeters(), journalProfile(journal.profile()), true);
+        } else if (sticky) {
+            Log.d(TAG, "Reinicio sin sesión que retomar, se detiene el servicio");
             stopSelf();
+        } else {
+            startSession(tolerance, GpsSamplingPolicy.Profile.fromName(profile), false);
         }
     }
 
-    private void handleLocationUpdate(Location location) {
-        float distFromLast = (lastLocation != null)
-            ? lastLocation.distanceTo(location)
-            : MIN_DISTANCE_METERS + 1f;
+    private static GpsSamplingPolicy.Profile journalProfile(int ordinal) {
+        GpsSamplingPolicy.Profile[] profiles = GpsSamplingPolicy.Profile.values();
+        return (ordinal >= 0 && ordinal < profiles.length) ? profiles[ordinal] : GpsSamplingPolicy.Profile.fromName(null);
+    }
+
+    private void startSession(double tolerance, GpsSamplingPolicy.Profile profile, boolean recover) {
+        collectedPath.clear();
+        pathSimplifier.setTolerance(tolerance);
+
+        boolean hasSteps = registerStepListener();
+        long now = SystemClock.elapsedRealtime();
+        pipeline.start(new GpsSamplingPolicy(profile, hasSteps, now), now);
+        totalDistanceMeters = 0;
+        Log.d(TAG, "Perfil GPS " + profile + ", contador de pasos=" + hasSteps);
+
+        if (recover) {
+            recoverSession();
+        } else {
+            if (!sessionStarted && journal != null && journal.hasActiveSession() && journal.count() > 0) {
+                Log.w(TAG, "Sesión sin terminar en el journal (" + journal.count()
+                    + " puntos) reemplazada por una nueva");
+            }
+            long startMs = System.currentTimeMillis();
+            sessionStats.start(startMs);
+            if (journal != null) journal.begin(startMs, tolerance, profile.ordinal());
+        }
+        sessionStarted = true;
+        sessionActive = true;
+
+        requestedIntervalMs = -1;
+        applySamplingState();
+        handler.removeCallbacks(inactivityCheck);
+        handler.postDelayed(inactivityCheck, INACTIVITY_TIMEOUT_MS);
+    }
 
-        // Filtrar puntos con menos de 5 metros de desplazamiento
-        if (lastLocation != null && distFromLast < MIN_DISTANCE_METERS) return;
+    // ─── GPS ──────────────────────────────────────────────────────────────────
+
+    /** Aplica el intervalo del estado actual de la política (re-registra o apaga el GPS). */
+    private void applySamplingState() {
+        GpsSamplingPolicy policy = pipeline.policy();
+        long interval = policy.intervalMs();
+        if (interval != requestedIntervalMs) {
+            requestedIntervalMs = interval;
+            locationManager.removeUpdates(gpsListener);
+            if (interval > 0) {
+                try {
+                    locationManager.requestLocationUpdates(
+                        LocationManager.GPS_PROVIDER,
+                        interval,
+                        0f, // sin filtro de distancia mínima (lo hacemos manual)
+                        gpsListener,
+                        handler.getLooper()
+                    );
+                    Log.d(TAG, "GPS " + policy.state() + " cada " + interval + " ms");
+                } catch (SecurityException e) {
+                    Log.e(TAG, "Permiso de ubicación denegado: " + e.getMessage());
+                    stopSelf();
+                    return;
+                }
+            } else {
+                Log.d(TAG, "GPS suspendido hasta detectar pasos");
+            }
+        }
+        scheduleSamplingCheck();
+    }
+
+    private void evaluateSampling() {
+        if (pipeline.policy().evaluate(SystemClock.elapsedRealtime())) {
+            applySamplingState();
+        } else {
+            scheduleSamplingCheck();
+        }
+    }
 
-        if (lastLocation != null) totalDistanceMeters += distFromLast;
-        lastLocation = location;
+    private void scheduleSamplingCheck() {
+        handler.removeCallbacks(samplingCheck);
+        long delay = pipeline.policy().nextEvaluationDelayMs(SystemClock.elapsedRealtime());
+        if (delay >= 0) handler.postDelayed(samplingCheck, delay);
+    }
 
-        double lat = location.getLatitude();
-        double lng = location.getLongitude();
-        long ts = location.getTime();
-        float speed = location.hasSpeed() ? location.getSpeed() : 0f;
+    private boolean registerStepListener() {
+        Sensor stepSensor = (sensorManager != null)
+            ? sensorManager.getDefaultSensor(Sensor.TYPE_STEP_COUNTER)
+            : null;
+        if (stepSensor == null) return false;
+        sensorManager.unregisterListener(stepListener);
+        return sensorManager.registerListener(stepListener, stepSensor, SensorManager.SENSOR_DELAY_NORMAL, handler);
+    }
 
-        collectedPath.add(new double[]{lat, lng, (double) ts, speed});
-        Log.d(TAG, "Punto #" + collectedPath.size() + " lat=" + lat + " lng=" + lng
-            + " dist=" + String.format(Locale.US, "%.1f", totalDistanceMeters) + "m");
+    private void handleLocationUpdate(Location location) {
+        int result = pipeline.onFix(
+            SystemClock.elapsedRealtime(),
+            location.getLatitude(),
+            location.getLongitude(),
+            location.getTime(),
+            location.hasAccuracy() ? location.getAccuracy() : LocationFilterEngine.UNKNOWN_ACCURACY,
+            location.hasSpeed() ? location.getSpeed() : LocationFilterEngine.UNKNOWN_SPEED);
+        if ((result & LocationPipeline.SAMPLING_CHANGED) != 0) applySamplingState();
+        if ((result & LocationPipeline.ACCEPTED) == 0) return;
+
+        totalDistanceMeters = pipeline.totalDistanceMeters();
+        if (journal != null) journal.setDistanceMeters(totalDistanceMeters);
+        sessionStats.onFix(pipeline.timestamp(), pipeline.lat(), pipeline.lng(), pipeline.lastDistanceMeters());
+
+        if (LOG_FIXES) {
+            Log.d(TAG, "Fix aceptado (guardados=" + collectedPath.size() + ") dist=" + totalDistanceMeters + "m");
+        }
 
-        resetInactivityTimer();
-        updateNotification();
+        notification.update(Math.round(totalDistanceMeters));
 
-        if (listener != null) {
-            listener.onLocationUpdate(lat, lng, ts, speed, totalDistanceMeters);
+        if (fixEvents.hasSubscribers()) {
+            // Posición suavizada por el filtro; un objeto por fix sólo si alguien escucha
+            fixEvents.publish(new LocationEvent(pipeline.lat(), pipeline.lng(), pipeline.timestamp(),
+                pipeline.speed(), totalDistanceMeters, collectedPath.size()));
         }
     }
 
-    // ─── Inactividad ──────────────────────────────────────────────────────────
+    /**
+     * Guarda el punto pendiente del simplificador. Debe correr en el hilo de tracking
+     * (ver {@link #runOnTrackingThread}), que es el único escritor de collectedPath.
+     */
+    static void flushPath() {
+        pathSimplifier.flush();
+    }
 
-    private void resetInactivityTimer() {
-        cancelInactivityTimer();
-        inactivityRunnable = () -> {
-            Log.d(TAG, "Timeout de inactividad (5 min) — guardando sesión");
-            if (listener != null) {
-                listener.onTrackingStopped(totalDistanceMeters);
-                listener = null;
+    private static void storePoint(double lat, double lng, long ts, float speed) {
+        collectedPath.append(lat, lng, ts, speed);
+        TrackJournal j = journal;
+        if (j != null) {
+            try {
+                j.append(lat, lng, ts, speed);
+            } catch (IOException e) {
+                Log.e(TAG, "Error escribiendo journal, se desactiva: " + e.getMessage());
+                closeJournal(j);
             }
-            stopSelf();
-        };
-        inactivityHandler.postDelayed(inactivityRunnable, INACTIVITY_TIMEOUT_MS);
+        }
     }
 
-    private void cancelInactivityTimer() {
-        if (inactivityRunnable != null) {
-            inactivityHandler.removeCallbacks(inactivityRunnable);
-            inactivityRunnable = null;
+    // ─── Journal ──────────────────────────────────────────────────────────────
+
+    private void openJournal() {
+        try {
+            ownJournal = TrackJournal.open(new File(getFilesDir(), JOURNAL_FILE));
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo abrir el journal, la sesión sólo queda en memoria: " + e.getMessage());
+            ownJournal = null;
+        }
+        journal = ownJournal;
+    }
+
+    /** true si el proceso murió a mitad de una caminata reciente que quedó en el journal. */
+    private boolean hasRecoverableSession() {
+        if (journal == null || !journal.hasActiveSession() || journal.count() == 0) return false;
+        if (System.currentTimeMillis() - journal.lastTimestamp() > INACTIVITY_TIMEOUT_MS) {
+            Log.d(TAG, "Sesión en journal demasiado vieja, se descarta");
+            return false;
         }
+        return true;
+    }
+
+    /** Reconstruye collectedPath y la distancia desde el journal y continúa esa sesión. */
+    private void recoverSession() {
+        journal.replay(collectedPath::append);
+        totalDistanceMeters = journal.distanceMeters();
+
+        TrackBuffer.Snapshot path = collectedPath.snapshot();
+        int last = path.size() - 1;
+
+        // Las estadísticas se rehacen con los puntos guardados (simplificados): alcanza para
+        // parciales y bounding box; el tiempo en movimiento puede quedar algo por debajo
+        sessionStats.start(journal.sessionStartMs());
+        for (int i = 0; i <= last; i++) {
+            double delta = (i == 0) ? 0 : GeoMath.equirectangularMeters(
+                path.lat(i - 1), path.lng(i - 1), path.lat(i), path.lng(i));
+            sessionStats.onFix(path.timestamp(i), path.lat(i), path.lng(i), delta);
+        }
+        pipeline.restore(path.lat(last), path.lng(last), path.timestamp(last), totalDistanceMeters);
+
+        Log.d(TAG, "Sesión recuperada: " + path.size() + " puntos, "
+            + String.format(Locale.US, "%.1f", totalDistanceMeters) + "m");
+    }
+
+    /**
+     * Finaliza (compacta) y cierra {@code j}. El estático sólo se limpia si todavía apunta a
+     * esa instancia, para no desactivar el journal de una instancia posterior.
+     */
+    private static void closeJournal(TrackJournal j) {
+        if (j == null || j.isClosed()) return;
+        if (journal == j) journal = null;
+        try {
+            j.finish();
+        } catch (IOException e) {
+            Log.e(TAG, "Error finalizando journal: " + e.getMessage());
+        }
+        try {
+            j.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error cerrando journal: " + e.getMessage());
+        }
+    }
+
+    // ─── Inactividad ──────────────────────────────────────────────────────────
+
+    /**
+     * Cada fix aceptado sólo corre el deadline del pipeline; este Runnable se re-agenda
+     * hasta alcanzarlo en vez de cancelarse y recrearse en cada fix.
+     */
+    private void checkInactivity() {
+        long remaining = pipeline.inactivityDeadlineMs() - SystemClock.elapsedRealtime();
+        if (remaining > 0) {
+            handler.postDelayed(inactivityCheck, remaining);
+            return;
+        }
+        Log.d(TAG, "Timeout de inactividad (5 min) — guardando sesión");
+        flushPath();
+        sessionStats.finish(pipeline.timestamp()); // sin contar los 5 min de espera
+        sessionActive = false;
+        stopEvents.publish(new LocationEvent(pipeline.lat(), pipeline.lng(), pipeline.timestamp(),
+            0f, totalDistanceMeters, collectedPath.size()));
+        stopSelf(); // onDestroy corre después de la entrega, que ya quedó encolada en este hilo
     }
 
     // ─── Notificación ─────────────────────────────────────────────────────────
 
     private void startForegroundCompat() {
-        Notification n = buildNotification(0);
+        Notification n = notification.initial(0);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             startForeground(NOTIF_ID, n,
                 android.content.pm.ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION);
@@ -177,29 +529,20 @@ public class LocationTrackingService extends Service {
         }
     }
 
-    private Notification buildNotification(double distMeters) {
-        String text;
-        if (distMeters == 0) {
-            text = "Esperando señal GPS...";
-        } else if (distMeters < 1000) {
-            text = String.format(Locale.getDefault(), "%.0f m recorridos", distMeters);
-        } else {
-            text = String.format(Locale.getDefault(), "%.2f km recorridos", distMeters / 1000.0);
-        }
+    private NotificationCompat.Builder baseNotification() {
         return new NotificationCompat.Builder(this, CHANNEL_ID)
             .setContentTitle("Registrando caminata")
-            .setContentText(text)
             .setSmallIcon(R.mipmap.ic_launcher)
             .setOngoing(true)
             .setSilent(true)
             .setPriority(NotificationCompat.PRIORITY_LOW)
-            .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-            .build();
+            .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
     }
 
-    private void updateNotification() {
-        NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        if (nm != null) nm.notify(NOTIF_ID, buildNotification(totalDistanceMeters));
+    private static String formatDistance(long meters) {
+        if (meters == 0) return "Esperando señal GPS...";
+        if (meters < 1000) return meters + " m recorridos";
+        return String.format(Locale.getDefault(), "%.2f km recorridos", meters / 1000.0);
     }
 
     private void createNotificationChannel() {
@@ -0,0 +1,83 @@
+package com.mishabitos.app;
+
+/**
+ * Decide cuándo vale la pena repostear la notificación de un servicio en primer plano.
+ *
+ * Los servicios le pasan un valor numérico (pasos, metros) en cada evento. Un valor igual
+ * al último publicado se descarta; uno distinto se publica si pasó {@code minIntervalMs}
+ * desde la última publicación, y si no queda pendiente (pisando al pendiente anterior)
+ * hasta que el llamador agende {@link #flush}. Así el último valor siempre llega.
+ * Java puro y de un solo hilo: {@link ServiceNotification} pone el Handler y el IPC.
+ */
+final class NotificationThrottle {
+
+    /** Nada que hacer: valor repetido o ya hay un flush agendado que lo va a publicar. */
+    static final int SKIP = 0;
+    /** Publicar ahora. */
+    static final int POST = 1;
+    /** Quedó pendiente: agendar {@link #flush} dentro de {@link #flushDelayMs}. */
+    static final int SCHEDULE = 2;
+
+    private long minIntervalMs;
+
+    private boolean hasPosted;
+    private long lastPostMs;
+    private long lastValue;
+    private boolean hasPending;
+    private long pendingValue;
+    private long avoided;
+
+    NotificationThrottle(long minIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    int offer(long value, long nowMs) {
+        if (hasPending ? value == pendingValue : (hasPosted && value == lastValue)) {
+            avoided++;
+            return SKIP;
+        }
+        if (!hasPosted || nowMs - lastPostMs >= minIntervalMs) {
+            if (hasPending) avoided++; // el pendiente queda superado por este valor
+            markPosted(value, nowMs);
+            return POST;
+        }
+        boolean scheduled = hasPending;
+        if (scheduled) avoided++;
+        hasPending = true;
+        pendingValue = value;
+        return scheduled ? SKIP : SCHEDULE;
+    }
+
+    /** Publica el pendiente, si hay. Devuelve false si no había nada que publicar. */
+    boolean flush(long nowMs) {
+        if (!hasPending) return false;
+        markPosted(pendingValue, nowMs);
+        return true;
+    }
+
+    /** Registra una publicación hecha por fuera de {@link #offer} (p. ej. la inicial). */
+    void markPosted(long value, long nowMs) {
+        hasPosted = true;
+        lastPostMs = nowMs;
+        lastValue = value;
+        hasPending = false;
+    }
+
+    /** Cambia el intervalo (p. ej. más largo con la pantalla apagada); vale desde el próximo offer. */
+    void setMinIntervalMs(long minIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    long flushDelayMs(long nowMs) {
+        return Math.max(0, lastPostMs + minIntervalMs - nowMs);
+    }
+
+    boolean hasPending() { return hasPending; }
+
+    long lastValue() { return lastValue; }
+
+    /** Actualizaciones que no llegaron a NotificationManager (repetidas o coalescidas). */
+    long avoidedCount() { return avoided; }
+
+    void countAvoided() { avoided++; }
+}
@@ -0,0 +1,134 @@
+package com.mishabitos.app;
+
+/**
+ * Simplificación en línea de un track GPS ("opening window").
+ *
+ * Cada punto nuevo extiende el segmento que sale del último punto emitido (ancla).
+ * Mientras todos los puntos intermedios queden a menos de {@code toleranceMeters}
+ * de ese segmento, se descartan; cuando alguno se sale, se emite el último punto que
+ * todavía cumplía y pasa a ser la nueva ancla. Así todo punto descartado queda dentro
+ * de la tolerancia respecto del path final.
+ *
+ * La ventana es de tamaño fijo y se guarda en arrays primitivos: no hay asignaciones
+ * por punto y el costo está acotado a {@code maxWindow} comparaciones.
+ */
+final class PathSimplifier {
+
+    interface Sink {
+        void accept(double lat, double lng, long timestamp, float speed);
+    }
+
+    static final double DEFAULT_TOLERANCE_METERS = 4.0;
+    static final int DEFAULT_MAX_WINDOW = 64;
+
+    private final Sink sink;
+    private final int maxWindow;
+    private double toleranceMeters;
+
+    private boolean hasAnchor;
+    private double anchorLat;
+    private double anchorLng;
+    private double metersPerDegLng;
+
+    // Puntos posteriores al ancla todavía no emitidos
+    private final double[] winLat;
+    private final double[] winLng;
+    private final long[] winTs;
+    private final float[] winSpeed;
+    private int winSize;
+
+    PathSimplifier(double toleranceMeters, int maxWindow, Sink sink) {
+        if (maxWindow < 2) throw new IllegalArgumentException("maxWindow must be >= 2");
+        this.sink = sink;
+        this.maxWindow = maxWindow;
+        this.winLat = new double[maxWindow];
+        this.winLng = new double[maxWindow];
+        this.winTs = new long[maxWindow];
+        this.winSpeed = new float[maxWindow];
+        setTolerance(toleranceMeters);
+    }
+
+    PathSimplifier(Sink sink) {
+        this(DEFAULT_TOLERANCE_METERS, DEFAULT_MAX_WINDOW, sink);
+    }
+
+    void setTolerance(double toleranceMeters) {
+        if (!(toleranceMeters >= 0)) throw new IllegalArgumentException("tolerance must be >= 0");
+        this.toleranceMeters = toleranceMeters;
+    }
+
+    /** Descarta el estado de la sesión anterior (no emite nada). */
+    void reset() {
+        hasAnchor = false;
+        winSize = 0;
+    }
+
+    /** Cantidad de puntos retenidos a la espera de saber si se emiten. */
+    int pendingCount() {
+        return winSize;
+    }
+
+    void add(double lat, double lng, long timestamp, float speed) {
+        if (!hasAnchor) {
+            setAnchor(lat, lng);
+            sink.accept(lat, lng, timestamp, speed);
+            return;
+        }
+
+        if (winSize > 0 && (winSize == maxWindow || !windowFits(lat, lng))) {
+            // El último punto que todavía cumplía pasa a ser el ancla
+            int last = winSize - 1;
+            setAnchor(winLat[last], winLng[last]);
+            sink.accept(winLat[last], winLng[last], winTs[last], winSpeed[last]);
+            winSize = 0;
+        }
+
+        winLat[winSize] = lat;
+        winLng[winSize] = lng;
+        winTs[winSize] = timestamp;
+        winSpeed[winSize] = speed;
+        winSize++;
+    }
+
+    /** Emite el último punto pendiente (fin de sesión) para no perder el tramo final. */
+    void flush() {
+        if (winSize == 0) return;
+        int last = winSize - 1;
+        setAnchor(winLat[last], winLng[last]);
+        sink.accept(winLat[last], winLng[last], winTs[last], winSpeed[last]);
+        winSize = 0;
+    }
+
+    private void setAnchor(double lat, double lng) {
+        hasAnchor = true;
+        anchorLat = lat;
+        anchorLng = lng;
+        metersPerDegLng = GeoMath.metersPerDegLng(lat);
+    }
+
+    /** ¿Todos los puntos de la ventana quedan dentro de la tolerancia del segmento ancla→(lat,lng)? */
+    private boolean windowFits(double lat, double lng) {
+        final double metersPerDegLat = GeoMath.METERS_PER_DEG_LAT;
+        double ex = (lng - anchorLng) * metersPerDegLng;
+        double ey = (lat - anchorLat) * metersPerDegLat;
+        double lenSq = ex * ex + ey * ey;
+        double tolSq = toleranceMeters * toleranceMeters;
+
+        for (int i = 0; i < winSize; i++) {
+            double px = (winLng[i] - anchorLng) * metersPerDegLng;
+            double py = (winLat[i] - anchorLat) * metersPerDegLat;
+            if (distanceToSegmentSq(px, py, ex, ey, lenSq) > tolSq) return false;
+        }
+        return true;
+    }
+
+    /** Distancia² (m²) del punto p al segmento (0,0)→e en coordenadas locales. */
+    static double distanceToSegmentSq(double px, double py, double ex, double ey, double lenSq) {
+        double t = (lenSq > 0) ? (px * ex + py * ey) / lenSq : 0;
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+        double dx = px - t * ex;
+        double dy = py - t * ey;
+        return dx * dx + dy * dy;
+    }
+}
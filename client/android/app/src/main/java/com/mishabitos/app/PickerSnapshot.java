@@ -0,0 +1,222 @@
+package com.mishabitos.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Categorías y planillas del selector de gasto rápido, ya parseadas, en un archivo binario
+ * compacto. {@link WidgetAuthPlugin} lo escribe junto al JSON de WidgetPrefs y
+ * {@link QuickExpenseActivity} lo lee al abrir sin pasar por org.json.
+ *
+ * Guarda también el cursor de {@link PickerSyncJob} de cada lista (el {@code updated_at} más
+ * nuevo ya traído del servidor), así datos y cursor se escriben juntos.
+ *
+ * Layout (little endian); los textos van como (largo short, UTF-8):
+ * <pre>
+ *   magic (int), version (int), categorías (int), planillas (int),
+ *   cursor de categorías, cursor de planillas (vacío: sin cursor),
+ *   ítems: id y nombre, primero categorías y después planillas,
+ *   crc32 de lo anterior (int)
+ * </pre>
+ *
+ * Inmutable; para cambiar una lista se crea otro snapshot.
+ */
+final class PickerSnapshot {
+
+    private static final int MAGIC = 0x48425053; // "HBPS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAX_ITEMS = 10_000;
+
+    static final PickerSnapshot EMPTY = new PickerSnapshot(
+            Collections.<Item>emptyList(), Collections.<Item>emptyList());
+
+    /** Una categoría o planilla. Inmutable. */
+    static final class Item {
+        final String id;
+        final String name;
+
+        Item(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name; // lo que muestra el Spinner
+        }
+    }
+
+    final List<Item> categories;
+    final List<Item> planillas;
+    final String categoriesCursor; // null: sin sincronizar
+    final String planillasCursor;
+
+    PickerSnapshot(List<Item> categories, List<Item> planillas) {
+        this(categories, planillas, null, null);
+    }
+
+    PickerSnapshot(List<Item> categories, List<Item> planillas, String categoriesCursor, String planillasCursor) {
+        this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+        this.planillas = Collections.unmodifiableList(new ArrayList<>(planillas));
+        this.categoriesCursor = categoriesCursor;
+        this.planillasCursor = planillasCursor;
+    }
+
+    PickerSnapshot withCategories(List<Item> categories) {
+        return new PickerSnapshot(categories, planillas, categoriesCursor, planillasCursor);
+    }
+
+    PickerSnapshot withPlanillas(List<Item> planillas) {
+        return new PickerSnapshot(categories, planillas, categoriesCursor, planillasCursor);
+    }
+
+    PickerSnapshot withCategories(List<Item> categories, String cursor) {
+        return new PickerSnapshot(categories, planillas, cursor, planillasCursor);
+    }
+
+    PickerSnapshot withPlanillas(List<Item> planillas, String cursor) {
+        return new PickerSnapshot(categories, planillas, categoriesCursor, cursor);
+    }
+
+    /**
+     * Aplica a {@code current} los ítems cambiados: los que ya estaban se reemplazan en su
+     * lugar y los nuevos van al final. Si {@code liveIds} no es null, se quitan los ítems cuyo
+     * id ya no existe en el servidor (borrados).
+     */
+    static List<Item> merge(List<Item> current, List<Item> changed, Set<String> liveIds) {
+        Map<String, Item> updates = new LinkedHashMap<>();
+        for (Item item : changed) updates.put(item.id, item);
+        List<Item> out = new ArrayList<>(current.size() + changed.size());
+        for (Item item : current) {
+            Item updated = updates.remove(item.id);
+            Item next = (updated != null) ? updated : item;
+            if (liveIds == null || liveIds.contains(next.id)) out.add(next);
+        }
+        for (Item item : updates.values()) {
+            if (liveIds == null || liveIds.contains(item.id)) out.add(item);
+        }
+        return out;
+    }
+
+    /** El cursor más nuevo entre {@code cursor} y {@code candidate} (timestamps ISO del mismo servidor). */
+    static String maxCursor(String cursor, String candidate) {
+        if (candidate == null || candidate.isEmpty()) return cursor;
+        return (cursor == null || candidate.compareTo(cursor) > 0) ? candidate : cursor;
+    }
+
+    // ─── Codificación ─────────────────────────────────────────────────────────
+
+    byte[] encode() {
+        List<byte[]> strings = new ArrayList<>(2 + 2 * (categories.size() + planillas.size()));
+        strings.add(utf8(categoriesCursor));
+        strings.add(utf8(planillasCursor));
+        int size = HEADER_SIZE + 4 + 4 + strings.get(0).length + strings.get(1).length;
+        for (Item item : categories) size += addStrings(strings, item);
+        for (Item item : planillas) size += addStrings(strings, item);
+
+        ByteBuffer b = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(MAGIC).putInt(VERSION).putInt(categories.size()).putInt(planillas.size());
+        for (byte[] s : strings) b.putShort((short) s.length).put(s);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, size - 4);
+        b.putInt((int) crc.getValue());
+        return b.array();
+    }
+
+    private static int addStrings(List<byte[]> out, Item item) {
+        byte[] id = utf8(item.id);
+        byte[] name = utf8(item.name);
+        out.add(id);
+        out.add(name);
+        return 4 + id.length + name.length;
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) throw new IllegalArgumentException("Texto demasiado largo");
+        return b;
+    }
+
+    /** Devuelve null si los bytes no son un snapshot válido (versión vieja, truncado o corrupto). */
+    static PickerSnapshot decode(byte[] data) {
+        if (data.length < HEADER_SIZE + 4) return null;
+        ByteBuffer b = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION
+                || b.getInt(data.length - 4) != (int) crc.getValue()) {
+            return null;
+        }
+        int nCategories = b.getInt(8);
+        int nPlanillas = b.getInt(12);
+        if (nCategories < 0 || nPlanillas < 0 || nCategories + nPlanillas > MAX_ITEMS) return null;
+        b.position(HEADER_SIZE);
+        b.limit(data.length - 4);
+        try {
+            String categoriesCursor = readString(b);
+            String planillasCursor = readString(b);
+            List<Item> categories = readItems(b, nCategories);
+            List<Item> planillas = readItems(b, nPlanillas);
+            return new PickerSnapshot(categories, planillas,
+                    categoriesCursor.isEmpty() ? null : categoriesCursor,
+                    planillasCursor.isEmpty() ? null : planillasCursor);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static List<Item> readItems(ByteBuffer b, int n) {
+        List<Item> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) items.add(new Item(readString(b), readString(b)));
+        return items;
+    }
+
+    private static String readString(ByteBuffer b) {
+        int len = b.getShort() & 0xFFFF;
+        if (len > b.remaining()) throw new BufferUnderflowException();
+        String s = new String(b.array(), b.position(), len, StandardCharsets.UTF_8);
+        b.position(b.position() + len);
+        return s;
+    }
+
+    // ─── Archivo ──────────────────────────────────────────────────────────────
+
+    /** Lee el snapshot; null si no existe o no es válido. */
+    static PickerSnapshot read(File file) {
+        if (!file.exists()) return null;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() > Integer.MAX_VALUE) return null;
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return decode(data);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Escritura atómica: temporal + fsync + rename. */
+    void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(encode());
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("No se pudo reemplazar " + file);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.mishabitos.app;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Mantiene al día las categorías y planillas del selector de gasto rápido sin abrir la app.
+ *
+ * Job periódico con red. Por cada tabla trae de PostgREST sólo las filas con
+ * {@code updated_at} posterior al cursor guardado en el {@link PickerSnapshot} y las mezcla
+ * por id ({@link PickerSnapshot#merge}); los borrados (que no dejan fila) se detectan con la
+ * lista de ids, que es chica. Sin cursor trae todo una vez.
+ *
+ * Si la tabla no tiene {@code updated_at} se recuerda (por tabla) y no se vuelve a pedir el
+ * cursor: cada corrida compara la lista de ids con el snapshot y trae sólo las filas nuevas;
+ * la tabla entera (para ver renombres) a lo sumo una vez por {@link #FULL_REFRESH_MS}.
+ */
+public class PickerSyncJob extends JobService {
+
+    private static final String TAG = "PickerSync";
+    private static final int JOB_ID = 2002;
+    private static final long PERIOD_MS = 6 * 60 * 60 * 1000L;
+    private static final long FULL_REFRESH_MS = 24 * 60 * 60 * 1000L;
+
+    private static final String PREFS_NAME = "PickerSync";
+    private static final String KEY_NO_CURSOR = "no_cursor_"; // + tabla: no tiene updated_at
+    private static final String KEY_FULL_AT = "full_at_";     // + tabla: última vez que se trajo entera
+
+    /** Filas cambiadas de una tabla y el nuevo cursor. */
+    private static final class Delta {
+        final List<PickerSnapshot.Item> changed = new ArrayList<>();
+        Set<String> liveIds; // null: no se pidieron (sin borrados que aplicar)
+        boolean full;        // changed es la tabla entera
+        String cursor;
+
+        List<PickerSnapshot.Item> applyTo(List<PickerSnapshot.Item> current) {
+            return full ? changed : PickerSnapshot.merge(current, changed, liveIds);
+        }
+    }
+
+    private volatile boolean stopped;
+
+    /** Agenda la sincronización periódica si no estaba agendada. */
+    static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) return;
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, PickerSyncJob.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPeriodic(PERIOD_MS)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped = false;
+        SupabaseClient.executor().execute(() -> jobFinished(params, !sync()));
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        return true;
+    }
+
+    /** Devuelve false si hay que reintentar. */
+    private boolean sync() {
+        SupabaseClient client = SupabaseClient.get(this);
+        SupabaseClient.Session session = client.session();
+        String userId = (session != null) ? session.userId() : null;
+        if (userId == null) return true; // sin sesión no hay nada que traer: esperar al próximo período
+
+        PickerSnapshot snapshot = WidgetAuthPlugin.pickerSnapshot(this);
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        try {
+            // Las mismas filas que muestra la app (ver server/routes/categories.js y planillas.js)
+            Delta categories = pull(client, "categories", "name", "name.asc",
+                    "or=(user_id.eq." + userId + ",is_default.eq.true)", snapshot.categoriesCursor,
+                    snapshot.categories, prefs);
+            if (stopped) return false;
+
+            Set<String> sharedIds = new HashSet<>();
+            SupabaseClient.Response shares = client.request("GET",
+                    "/rest/v1/planilla_shares?select=planilla_id&user_id=eq." + userId, null, null);
+            if (!shares.isSuccessful()) return false;
+            JSONArray rows = new JSONArray(shares.bodyString());
+            for (int i = 0; i < rows.length(); i++) sharedIds.add(rows.getJSONObject(i).optString("planilla_id"));
+            String filter = sharedIds.isEmpty() ? "user_id=eq." + userId
+                    : "or=(user_id.eq." + userId + ",id.in.(" + String.join(",", sharedIds) + "))";
+            Delta planillas = pull(client, "planillas", "nombre", "created_at.desc", filter,
+                    snapshot.planillasCursor, snapshot.planillas, prefs);
+            if (stopped || categories == null || planillas == null) return false;
+
+            // Sobre el snapshot vigente al escribir: la app pudo guardar listas mientras tanto
+            WidgetAuthPlugin.updatePickerSnapshot(this, current -> current
+                    .withCategories(categories.applyTo(current.categories), categories.cursor)
+                    .withPlanillas(planillas.applyTo(current.planillas), planillas.cursor));
+            Log.d(TAG, "Categorías: " + categories.changed.size() + " cambiadas; planillas: "
+                    + planillas.changed.size() + " cambiadas. " + client.stats());
+            return true;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Sincronización fallida: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Trae lo cambiado desde {@code cursor} (o la tabla entera en el orden {@code fullOrder});
+     * null si el servidor respondió con error. {@code known} son los ítems que ya están en el
+     * snapshot: una fila visible que no está ahí y no cambió (p. ej. una planilla recién
+     * compartida) también se trae.
+     */
+    private static Delta pull(SupabaseClient client, String table, String nameColumn, String fullOrder,
+                              String filter, String cursor, List<PickerSnapshot.Item> known,
+                              SharedPreferences prefs) throws IOException, JSONException {
+        if (prefs.getBoolean(KEY_NO_CURSOR + table, false)) {
+            return pullByIds(client, table, nameColumn, fullOrder, filter, known, prefs);
+        }
+        String base = "/rest/v1/" + table + "?" + filter + "&select=id," + nameColumn;
+        Delta delta = new Delta();
+        SupabaseClient.Response r;
+        if (cursor != null) {
+            // gte: las filas del mismo instante que el cursor se vuelven a traer; el merge es idempotente
+            r = client.request("GET", base + ",updated_at&updated_at=gte." + encode(cursor)
+                    + "&order=updated_at.asc", null, null);
+        } else {
+            r = client.request("GET", base + ",updated_at&order=" + fullOrder, null, null);
+            delta.full = true;
+        }
+        if (r.code == 400 && isMissingUpdatedAt(r)) {
+            Log.i(TAG, table + " no tiene updated_at: se sincroniza por lista de ids");
+            prefs.edit().putBoolean(KEY_NO_CURSOR + table, true).apply();
+            return pullByIds(client, table, nameColumn, fullOrder, filter, known, prefs);
+        }
+        if (!r.isSuccessful()) return null;
+
+        delta.cursor = cursor;
+        addRows(delta, new JSONArray(r.bodyString()), nameColumn);
+        if (delta.full) return delta;
+        return addLiveIds(client, table, nameColumn, filter, known, delta) ? delta : null;
+    }
+
+    /**
+     * Tabla sin {@code updated_at}: la lista de ids alcanza para ver altas y bajas; la tabla
+     * entera se trae la primera vez y después cada {@link #FULL_REFRESH_MS} (renombres).
+     */
+    private static Delta pullByIds(SupabaseClient client, String table, String nameColumn, String fullOrder,
+                                   String filter, List<PickerSnapshot.Item> known, SharedPreferences prefs)
+            throws IOException, JSONException {
+        long now = System.currentTimeMillis();
+        long fullAt = prefs.getLong(KEY_FULL_AT + table, 0);
+        Delta delta = new Delta();
+        if (!known.isEmpty() && now - fullAt >= 0 && now - fullAt < FULL_REFRESH_MS) {
+            return addLiveIds(client, table, nameColumn, filter, known, delta) ? delta : null;
+        }
+        SupabaseClient.Response r = client.request("GET",
+                "/rest/v1/" + table + "?" + filter + "&select=id," + nameColumn + "&order=" + fullOrder, null, null);
+        if (!r.isSuccessful()) return null;
+        delta.full = true;
+        addRows(delta, new JSONArray(r.bodyString()), nameColumn);
+        prefs.edit().putLong(KEY_FULL_AT + table, now).apply();
+        return delta;
+    }
+
+    /**
+     * Agrega al delta los ids vivos (para aplicar borrados) y trae las filas visibles que no
+     * están ni en {@code known} ni en el delta. false si el servidor respondió con error.
+     */
+    private static boolean addLiveIds(SupabaseClient client, String table, String nameColumn, String filter,
+                                      List<PickerSnapshot.Item> known, Delta delta)
+            throws IOException, JSONException {
+        SupabaseClient.Response ids = client.request("GET",
+                "/rest/v1/" + table + "?" + filter + "&select=id", null, null);
+        if (!ids.isSuccessful()) return false;
+        JSONArray idRows = new JSONArray(ids.bodyString());
+        delta.liveIds = new HashSet<>(idRows.length() * 2);
+        for (int i = 0; i < idRows.length(); i++) delta.liveIds.add(idRows.getJSONObject(i).optString("id"));
+
+        Set<String> missing = new HashSet<>(delta.liveIds);
+        for (PickerSnapshot.Item item : known) missing.remove(item.id);
+        for (PickerSnapshot.Item item : delta.changed) missing.remove(item.id);
+        if (!missing.isEmpty()) {
+            SupabaseClient.Response extra = client.request("GET", "/rest/v1/" + table + "?id=in.("
+                    + String.join(",", missing) + ")&select=id," + nameColumn, null, null);
+            if (!extra.isSuccessful()) return false;
+            addRows(delta, new JSONArray(extra.bodyString()), nameColumn);
+        }
+        return true;
+    }
+
+    /** 42703 (undefined_column) sobre updated_at; cualquier otro 400 es un error del request. */
+    private static boolean isMissingUpdatedAt(SupabaseClient.Response r) {
+        try {
+            JSONObject error = new JSONObject(r.bodyString());
+            return "42703".equals(error.optString("code")) && error.optString("message").contains("updated_at");
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    private static void addRows(Delta delta, JSONArray rows, String nameColumn) throws JSONException {
+        for (int i = 0; i < rows.length(); i++) {
+            JSONObject row = rows.getJSONObject(i);
+            delta.changed.add(new PickerSnapshot.Item(row.optString("id"), row.optString(nameColumn)));
+            if (row.has("updated_at") && !row.isNull("updated_at")) {
+                delta.cursor = PickerSnapshot.maxCursor(delta.cursor, row.getString("updated_at"));
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -1,70 +1,90 @@
 package com.mishabitos.app;
 
 import android.app.Activity;
-import android.content.SharedPreferences;
+import android.content.Context;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.Filter;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class QuickExpenseActivity extends Activity {
 
+    private static final String TAG = "QuickExpense";
+    private static final String INDEX_FILE = "expense_index.bin";
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final String DEFAULT_DESCRIPTION = "Gasto Rápido";
+
+    private static ExpenseIndex expenseIndex;
+
     private EditText etAmount;
-    private EditText etDescription;
+    private AutoCompleteTextView etDescription;
     private Spinner spPlanilla;
     private Spinner spCategory;
     private CheckBox cbShared;
     private CheckBox cbInstallments;
     private Button btnSave;
     private Button btnCancel;
-    private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final ExecutorService executorService = LocalIo.executor();
     private Handler mainHandler = new Handler(Looper.getMainLooper());
-    private List<String> categoryNames = new ArrayList<>();
-    private List<PlanillaItem> planillaItems = new ArrayList<>();
+    private EditText etPaidBy;
+    private EditText etCurrentInstallment;
+    private EditText etTotalInstallments;
+    private View layoutInstallments;
+    private final List<String> categoryNames = new ArrayList<>();
+    private final List<PickerSnapshot.Item> planillaItems = new ArrayList<>();
+    private ArrayAdapter<String> categoryAdapter;
+    private ArrayAdapter<PickerSnapshot.Item> planillaAdapter;
+    private ExpenseIndex index;
+    private long createdAtMs;
+    private volatile long interactiveMs = -1;
+
+    /** Índice de categorías y descripciones; la primera vez lee el archivo (no llamar en el hilo principal). */
+    static synchronized ExpenseIndex expenseIndex(Context context) {
+        if (expenseIndex == null) expenseIndex = ExpenseIndex.read(indexFile(context));
+        return expenseIndex;
+    }
 
-    private static class PlanillaItem {
-        String id;
-        String name;
-        
-        PlanillaItem(String id, String name) {
-            this.id = id;
-            this.name = name;
-        }
-        
-        @Override
-        public String toString() {
-            return name; 
-        }
+    private static File indexFile(Context context) {
+        return new File(context.getApplicationContext().getFilesDir(), INDEX_FILE);
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        // Secciones de arranque para systrace/Perfetto; "Fully drawn" en logcat marca cuándo
+        // se puede cargar un gasto (el tiempo hasta interactivo desde el toque en el widget)
+        createdAtMs = SystemClock.uptimeMillis();
+        Trace.beginSection("QuickExpense.onCreate");
         super.onCreate(savedInstanceState);
+        Trace.beginSection("QuickExpense.inflate");
         setContentView(R.layout.activity_quick_expense);
+        Trace.endSection();
 
         // Make window look like a dialog
         if (getWindow() != null) {
@@ -75,6 +95,7 @@ public class QuickExpenseActivity extends Activity {
             getWindow().setBackgroundDrawableResource(android.R.color.transparent);
         }
 
+        Trace.beginSection("QuickExpense.bindViews");
         etAmount = findViewById(R.id.et_amount);
         etDescription = findViewById(R.id.et_description);
         spCategory = findViewById(R.id.sp_category);
@@ -83,48 +104,92 @@ public class QuickExpenseActivity extends Activity {
         cbInstallments = findViewById(R.id.cb_installments);
         btnSave = findViewById(R.id.btn_save);
         btnCancel = findViewById(R.id.btn_cancel);
+        etPaidBy = findViewById(R.id.et_paid_by);
+        etCurrentInstallment = findViewById(R.id.et_current_installment);
+        etTotalInstallments = findViewById(R.id.et_total_installments);
+        layoutInstallments = findViewById(R.id.layout_installments);
 
         btnCancel.setOnClickListener(v -> finish());
         btnSave.setOnClickListener(v -> saveExpense());
+        // Hasta que lleguen categorías y planillas
+        btnSave.setEnabled(false);
 
-        cbShared.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            EditText etPaidBy = findViewById(R.id.et_paid_by);
-            etPaidBy.setVisibility(isChecked ? View.VISIBLE : View.GONE);
-        });
+        cbShared.setOnCheckedChangeListener((buttonView, isChecked) ->
+                etPaidBy.setVisibility(isChecked ? View.VISIBLE : View.GONE));
 
-        cbInstallments.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            View layoutInstallments = findViewById(R.id.layout_installments);
-            layoutInstallments.setVisibility(isChecked ? View.VISIBLE : View.GONE);
-        });
+        cbInstallments.setOnCheckedChangeListener((buttonView, isChecked) ->
+                layoutInstallments.setVisibility(isChecked ? View.VISIBLE : View.GONE));
 
-        loadCategories();
-        loadPlanillas();
-    }
+        categoryAdapter = pickerAdapter(categoryNames);
+        spCategory.setAdapter(categoryAdapter);
+        planillaAdapter = pickerAdapter(planillaItems);
+        spPlanilla.setAdapter(planillaAdapter);
+        Trace.endSection();
 
+        loadPickers();
+        Trace.endSection();
+    }
 
+    /** Lee el snapshot del selector y el índice de gastos fuera del hilo principal y los muestra. */
+    private void loadPickers() {
+        executorService.execute(() -> {
+            Trace.beginSection("QuickExpense.loadSnapshot");
+            PickerSnapshot snapshot;
+            ExpenseIndex expenses;
+            try {
+                snapshot = WidgetAuthPlugin.pickerSnapshot(getApplicationContext());
+                expenses = expenseIndex(getApplicationContext());
+            } finally {
+                Trace.endSection();
+            }
+            mainHandler.post(() -> bindPickers(snapshot, expenses));
+        });
+    }
 
-    private void loadCategories() {
-        SharedPreferences sharedPref = getSharedPreferences("WidgetPrefs", MODE_PRIVATE);
-        String categoriesJson = sharedPref.getString("categories_json", "[]");
-        
+    private void bindPickers(PickerSnapshot snapshot, ExpenseIndex expenses) {
+        if (isFinishing() || isDestroyed()) return;
+        Trace.beginSection("QuickExpense.bindPickers");
+        index = expenses;
+        List<String> names = new ArrayList<>(snapshot.categories.size());
+        for (PickerSnapshot.Item item : snapshot.categories) names.add(item.name);
+        if (names.isEmpty()) {
+            names.add("General");
+            names.add("Comida");
+            names.add("Transporte");
+        }
+        // Las más usadas últimamente primero: la preseleccionada suele ser la correcta
         categoryNames.clear();
-        try {
-            JSONArray jsonArray = new JSONArray(categoriesJson);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject cat = jsonArray.getJSONObject(i);
-                categoryNames.add(cat.optString("name", "Unknown"));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        categoryNames.addAll(index.rankCategories(names));
+        planillaItems.clear();
+        planillaItems.addAll(snapshot.planillas);
+        if (planillaItems.isEmpty()) {
+            // Fallback or empty state
+            planillaItems.add(new PickerSnapshot.Item(null, "Sin Planillas"));
         }
+        categoryAdapter.notifyDataSetChanged();
+        planillaAdapter.notifyDataSetChanged();
+        spCategory.setSelection(0);
+        etDescription.setAdapter(new SuggestionAdapter(this, index));
+        etDescription.setOnItemClickListener((parent, view, position, id) -> {
+            ExpenseIndex.Suggestion s = (ExpenseIndex.Suggestion) parent.getItemAtPosition(position);
+            int i = categoryNames.indexOf(s.category);
+            if (i >= 0) spCategory.setSelection(i);
+        });
+        btnSave.setEnabled(true);
+        Trace.endSection();
 
-        if (categoryNames.isEmpty()) {
-            categoryNames.add("General");
-            categoryNames.add("Comida");
-            categoryNames.add("Transporte");
-        }
+        reportFullyDrawn();
+        interactiveMs = SystemClock.uptimeMillis() - createdAtMs;
+        Log.d(TAG, "Interactivo en " + interactiveMs + " ms");
+    }
+
+    /** Tiempo de onCreate hasta que se puede cargar un gasto; -1 mientras no llegó. */
+    long interactiveMs() {
+        return interactiveMs;
+    }
 
-        ArrayAdapter<String> adapter = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item, categoryNames) {
+    private <T> ArrayAdapter<T> pickerAdapter(List<T> items) {
+        ArrayAdapter<T> adapter = new ArrayAdapter<T>(this, android.R.layout.simple_spinner_item, items) {
             @Override
             public View getView(int position, View convertView, ViewGroup parent) {
                 View view = super.getView(position, convertView, parent);
@@ -142,70 +207,64 @@ public class QuickExpenseActivity extends Activity {
             }
         };
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        spCategory.setAdapter(adapter);
+        return adapter;
     }
 
-    private void loadPlanillas() {
-        SharedPreferences sharedPref = getSharedPreferences("WidgetPrefs", MODE_PRIVATE);
-        String planillasJson = sharedPref.getString("planillas_json", "[]");
-
-        planillaItems.clear();
-        try {
-            JSONArray jsonArray = new JSONArray(planillasJson);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject obj = jsonArray.getJSONObject(i);
-                String id = obj.optString("id");
-                String name = obj.optString("nombre", "Sin Nombre");
-                planillaItems.add(new PlanillaItem(id, name));
+    /** Desplegable de la descripción: filtra contra el trie de {@link ExpenseIndex}. */
+    private static final class SuggestionAdapter extends ArrayAdapter<ExpenseIndex.Suggestion> {
+        private final ExpenseIndex index;
+        private final Filter filter = new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence prefix) {
+                // Hilo del Filter: suggest es sub-milisegundo y no bloquea la escritura
+                List<ExpenseIndex.Suggestion> found = (prefix != null)
+                        ? index.suggest(prefix.toString(), MAX_SUGGESTIONS) : new ArrayList<>(0);
+                FilterResults results = new FilterResults();
+                results.values = found;
+                results.count = found.size();
+                return results;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        if (planillaItems.isEmpty()) {
-            // Fallback or empty state
-            planillaItems.add(new PlanillaItem(null, "Sin Planillas"));
-        }
 
-        ArrayAdapter<PlanillaItem> adapter = new ArrayAdapter<PlanillaItem>(this, android.R.layout.simple_spinner_item, planillaItems) {
             @Override
-            public View getView(int position, View convertView, ViewGroup parent) {
-                View view = super.getView(position, convertView, parent);
-                TextView text = (TextView) view.findViewById(android.R.id.text1);
-                text.setTextColor(Color.WHITE);
-                return view;
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence prefix, FilterResults results) {
+                clear();
+                if (results.values != null) addAll((List<ExpenseIndex.Suggestion>) results.values);
+                notifyDataSetChanged();
             }
 
             @Override
-            public View getDropDownView(int position, View convertView, ViewGroup parent) {
-                View view = super.getDropDownView(position, convertView, parent);
-                TextView text = (TextView) view.findViewById(android.R.id.text1);
-                text.setTextColor(Color.BLACK);
-                return view;
+            public CharSequence convertResultToString(Object result) {
+                return ((ExpenseIndex.Suggestion) result).description;
             }
         };
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        spPlanilla.setAdapter(adapter);
+
+        SuggestionAdapter(Context context, ExpenseIndex index) {
+            super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<>());
+            this.index = index;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View view = super.getView(position, convertView, parent);
+            ((TextView) view.findViewById(android.R.id.text1)).setTextColor(Color.BLACK);
+            return view;
+        }
+
+        @Override
+        public Filter getFilter() {
+            return filter;
+        }
     }
 
     private void saveExpense() {
-        EditText etAmount = findViewById(R.id.et_amount);
-        EditText etDescription = findViewById(R.id.et_description);
-        Spinner spCategory = findViewById(R.id.sp_category);
-        Spinner spPlanilla = findViewById(R.id.sp_planilla);
-        CheckBox cbShared = findViewById(R.id.cb_shared);
-        CheckBox cbInstallments = findViewById(R.id.cb_installments);
-        EditText etPaidBy = findViewById(R.id.et_paid_by);
-        EditText etCurrentInstallment = findViewById(R.id.et_current_installment);
-        EditText etTotalInstallments = findViewById(R.id.et_total_installments);
-
         String amountStr = etAmount.getText().toString();
         String description = etDescription.getText().toString();
         String category = spCategory.getSelectedItem().toString();
         boolean isShared = cbShared.isChecked();
         boolean isInstallment = cbInstallments.isChecked(); 
         
-        PlanillaItem selectedPlanilla = (PlanillaItem) spPlanilla.getSelectedItem();
+        PickerSnapshot.Item selectedPlanilla = (PickerSnapshot.Item) spPlanilla.getSelectedItem();
         String planillaId = selectedPlanilla != null ? selectedPlanilla.id : null;
 
         if (planillaId == null) {
@@ -226,16 +285,13 @@ public class QuickExpenseActivity extends Activity {
             return;
         }
 
+        // Sólo las descripciones escritas alimentan el autocompletado
+        String typedDescription = description.trim().isEmpty() ? null : description;
         if (description.isEmpty()) {
-            description = "Gasto Rápido";
+            description = DEFAULT_DESCRIPTION;
         }
         
-        SharedPreferences sharedPref = getSharedPreferences("WidgetPrefs", MODE_PRIVATE);
-        String token = sharedPref.getString("access_token", null);
-        String savedUrl = sharedPref.getString("supabase_url", null);
-        String savedKey = sharedPref.getString("supabase_key", null);
-
-        if (token == null || savedUrl == null || savedKey == null) {
+        if (!SupabaseClient.get(this).hasSession()) {
             Toast.makeText(this, "Abre la app para sincronizar sesión", Toast.LENGTH_LONG).show();
             finish();
             return;
@@ -244,8 +300,6 @@ public class QuickExpenseActivity extends Activity {
         btnSave.setEnabled(false);
         btnSave.setText("...");
 
-        String finalDescription = description;
-        double finalAmount = amount;
         String paidBy = etPaidBy.getText().toString();
         
         int currentInstallment = 1;
@@ -261,74 +315,77 @@ public class QuickExpenseActivity extends Activity {
                 // Default to 1
             }
         }
-        
-        int finalCurrent = currentInstallment;
-        int finalTotal = totalInstallments;
 
+        // El id lo genera el cliente: es la clave de idempotencia de los reintentos
+        String expenseId = UUID.randomUUID().toString();
+        String json;
+        try {
+            JSONObject jsonParam = new JSONObject();
+            jsonParam.put("id", expenseId);
+            jsonParam.put("amount", amount);
+            jsonParam.put("description", description);
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.US);
+            jsonParam.put("created_at", sdf.format(new Date()));
+            jsonParam.put("category", category);
+            jsonParam.put("currency", "ARS");
+            jsonParam.put("planilla_id", planillaId);
+            jsonParam.put("is_shared", isShared);
+            if (isShared && !paidBy.isEmpty()) {
+                jsonParam.put("payer_name", paidBy);
+            }
+            
+            if (isInstallment) {
+                 jsonParam.put("is_installment", true);
+                 jsonParam.put("current_installment", currentInstallment);
+                 jsonParam.put("total_installments", totalInstallments);
+            } else {
+                 jsonParam.put("is_installment", false);
+            }
+            json = jsonParam.toString();
+        } catch (JSONException e) {
+            Toast.makeText(this, "Gasto inválido", Toast.LENGTH_SHORT).show();
+            btnSave.setEnabled(true);
+            btnSave.setText("Agregar");
+            return;
+        }
+
+        // Se guarda en el outbox local y el diálogo se cierra; ExpenseOutboxJob lo sube
+        // cuando haya red (con reintentos). El índice se actualiza después, en otra tarea:
+        // cerrar el diálogo no espera esa escritura
         executorService.execute(() -> {
             try {
-                // URL includes planilla_id in the path for this endpoint: /api/planillas/${planillaId}/expenses
-                // Wait, native code is calling Supabase DIRECTLY or via Backend API?
-                // Looking at previous code: savedUrl + "/rest/v1/expenses"
-                // It was calling Supabase PostgREST directly.
-                // So we need to include 'planilla_id' in the JSON body.
-                
-                URL url = new URL(savedUrl + "/rest/v1/expenses");
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setRequestProperty("apikey", savedKey);
-                conn.setRequestProperty("Authorization", "Bearer " + token);
-                conn.setRequestProperty("Prefer", "return=minimal");
-                conn.setDoOutput(true);
-
-                JSONObject jsonParam = new JSONObject();
-                jsonParam.put("amount", finalAmount);
-                jsonParam.put("description", finalDescription);
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.US);
-                jsonParam.put("created_at", sdf.format(new Date()));
-                jsonParam.put("category", category);
-                jsonParam.put("currency", "ARS");
-                jsonParam.put("planilla_id", planillaId);
-                jsonParam.put("is_shared", isShared);
-                if (isShared && !paidBy.isEmpty()) {
-                    jsonParam.put("payer_name", paidBy);
-                }
-                
-                if (isInstallment) {
-                     jsonParam.put("is_installment", true);
-                     jsonParam.put("current_installment", finalCurrent);
-                     jsonParam.put("total_installments", finalTotal);
-                } else {
-                     jsonParam.put("is_installment", false);
-                }
-
-                try (OutputStream os = conn.getOutputStream()) {
-                    byte[] input = jsonParam.toString().getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
-                }
-
-                int responseCode = conn.getResponseCode();
-                
+                ExpenseOutboxJob.outbox(getApplicationContext()).add(expenseId, json);
+                ExpenseOutboxJob.schedule(getApplicationContext());
                 mainHandler.post(() -> {
-                    if (responseCode >= 200 && responseCode < 300) {
-                        Toast.makeText(QuickExpenseActivity.this, "Gasto guardado!", Toast.LENGTH_SHORT).show();
-                        finish();
-                    } else {
-                        Toast.makeText(QuickExpenseActivity.this, "Error: " + responseCode, Toast.LENGTH_LONG).show();
-                        btnSave.setEnabled(true);
-                        btnSave.setText("Agregar");
-                    }
+                    Toast.makeText(QuickExpenseActivity.this, "Gasto guardado!", Toast.LENGTH_SHORT).show();
+                    finish();
                 });
-
-            } catch (Exception e) {
-                e.printStackTrace();
+                executorService.execute(() -> recordInIndex(typedDescription, category));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "No se pudo guardar el gasto en el outbox", e);
                 mainHandler.post(() -> {
-                    Toast.makeText(QuickExpenseActivity.this, "Error de conexión", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(QuickExpenseActivity.this, "No se pudo guardar el gasto", Toast.LENGTH_SHORT).show();
                     btnSave.setEnabled(true);
                     btnSave.setText("Agregar");
                 });
             }
         });
     }
+
+    /**
+     * Suma el gasto al índice en memoria (actualización incremental) y reescribe su archivo,
+     * que es chico: {@link ExpenseIndex#MAX_ENTRIES} descripciones de hasta
+     * {@link ExpenseIndex#MAX_DESCRIPTION_LENGTH} caracteres como mucho. Si falla la
+     * escritura el gasto ya está en el outbox: sólo se pierde el uso.
+     */
+    private void recordInIndex(String description, String category) {
+        Context context = getApplicationContext();
+        try {
+            ExpenseIndex expenses = expenseIndex(context);
+            expenses.record(description, category, System.currentTimeMillis());
+            expenses.write(indexFile(context));
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "No se pudo guardar el índice de gastos: " + e.getMessage());
+        }
+    }
 }
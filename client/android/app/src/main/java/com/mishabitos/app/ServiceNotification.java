@@ -0,0 +1,91 @@
+package com.mishabitos.app;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+/**
+ * Notificación persistente de un servicio en primer plano, actualizada con tope de frecuencia.
+ *
+ * Reutiliza un único Builder y sólo formatea el texto cuando va a publicar; si el texto
+ * formateado coincide con el visible tampoco publica. Todos los métodos se llaman desde
+ * el hilo del {@code handler}.
+ */
+final class ServiceNotification {
+
+    interface Formatter {
+        String format(long value);
+    }
+
+    private final NotificationManager manager;
+    private final int id;
+    private final NotificationCompat.Builder builder;
+    private final Formatter formatter;
+    private final Handler handler;
+    private final NotificationThrottle throttle;
+    private final Runnable flushTask = this::flushPending;
+
+    private String lastText;
+    private long posted;
+
+    ServiceNotification(Context context, int id, NotificationCompat.Builder builder,
+                        Formatter formatter, long minIntervalMs, Handler handler) {
+        this.manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.id = id;
+        this.builder = builder;
+        this.formatter = formatter;
+        this.handler = handler;
+        this.throttle = new NotificationThrottle(minIntervalMs);
+    }
+
+    /** Notificación para startForeground(); cuenta como publicada. */
+    Notification initial(long value) {
+        throttle.markPosted(value, SystemClock.elapsedRealtime());
+        lastText = formatter.format(value);
+        posted++;
+        return builder.setContentText(lastText).build();
+    }
+
+    void update(long value) {
+        long now = SystemClock.elapsedRealtime();
+        switch (throttle.offer(value, now)) {
+            case NotificationThrottle.POST:
+                post(value);
+                break;
+            case NotificationThrottle.SCHEDULE:
+                handler.postDelayed(flushTask, throttle.flushDelayMs(now));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Descarta el pendiente (el servicio se detiene y la notificación desaparece). */
+    void cancelPending() {
+        handler.removeCallbacks(flushTask);
+    }
+
+    long postedCount() { return posted; }
+
+    long avoidedCount() { return throttle.avoidedCount(); }
+
+    private void flushPending() {
+        if (throttle.flush(SystemClock.elapsedRealtime())) post(throttle.lastValue());
+    }
+
+    private void post(long value) {
+        String text = formatter.format(value);
+        if (text.equals(lastText)) {
+            throttle.countAvoided();
+            return;
+        }
+        lastText = text;
+        if (manager == null) return;
+        manager.notify(id, builder.setContentText(text).build());
+        posted++;
+    }
+}
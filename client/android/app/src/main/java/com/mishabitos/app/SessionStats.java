@@ -0,0 +1,193 @@
+package com.mishabitos.app;
+
+/**
+ * Estadísticas de la caminata en curso, actualizadas en O(1) por fix aceptado.
+ *
+ * <ul>
+ *   <li>Tiempo en movimiento vs. pausado: un tramo entre fixes cuenta como movimiento si
+ *       duró menos de {@link #MAX_MOVING_GAP_MS} y su velocidad media supera
+ *       {@link #MOVING_SPEED_MPS}. El resto del tiempo transcurrido es pausa.</li>
+ *   <li>Ritmo móvil: segundos por km sobre los últimos {@code paceWindowMeters}, con un
+ *       anillo de (distancia, tiempo en movimiento) acumulados.</li>
+ *   <li>Parciales por km en tiempo en movimiento, interpolados en el cruce de cada km.</li>
+ *   <li>Bounding box de los fixes.</li>
+ * </ul>
+ * Los timestamps son los de los fixes (ms epoch). Se usa desde un único hilo.
+ */
+final class SessionStats {
+
+    static final long MAX_MOVING_GAP_MS = 15_000;
+    static final double MOVING_SPEED_MPS = 0.3;
+    static final double DEFAULT_PACE_WINDOW_METERS = 500;
+    private static final int PACE_RING_SIZE = 1024; // ~10 min a 1 Hz
+    private static final double SPLIT_METERS = 1000;
+
+    private final double paceWindowMeters;
+
+    // Anillo para el ritmo móvil: muestras [tail, head) en orden cronológico
+    private final double[] ringDistance = new double[PACE_RING_SIZE];
+    private final long[] ringMovingMs = new long[PACE_RING_SIZE];
+    private int ringHead;
+    private int ringCount;
+
+    private boolean started;
+    private boolean finished;
+    private long startMs;
+    private long endMs;
+
+    private boolean hasFix;
+    private long lastFixMs;
+    private long movingMs;
+    private double distance;
+    private int fixes;
+
+    private long[] splitEndMovingMs = new long[8];
+    private int splitCount;
+
+    private double minLat, maxLat, minLng, maxLng;
+
+    SessionStats() {
+        this(DEFAULT_PACE_WINDOW_METERS);
+    }
+
+    SessionStats(double paceWindowMeters) {
+        this.paceWindowMeters = paceWindowMeters;
+    }
+
+    /** Empieza una sesión nueva en {@code startMs}. */
+    void start(long startMs) {
+        started = true;
+        finished = false;
+        this.startMs = startMs;
+        hasFix = false;
+        movingMs = 0;
+        distance = 0;
+        fixes = 0;
+        splitCount = 0;
+        ringHead = 0;
+        ringCount = 0;
+    }
+
+    /** Cierra la sesión: el tiempo transcurrido deja de correr. */
+    void finish(long endMs) {
+        if (!started || finished) return;
+        finished = true;
+        this.endMs = Math.max(endMs, hasFix ? lastFixMs : startMs);
+    }
+
+    /** Fix aceptado, con la distancia recorrida desde el anterior. */
+    void onFix(long timestamp, double lat, double lng, double deltaMeters) {
+        if (!started) start(timestamp);
+        if (hasFix) {
+            long dt = timestamp - lastFixMs;
+            boolean moving = dt > 0 && dt <= MAX_MOVING_GAP_MS && deltaMeters * 1000.0 / dt >= MOVING_SPEED_MPS;
+            long segmentMovingMs = moving ? dt : 0;
+            if (deltaMeters > 0) recordSplits(deltaMeters, segmentMovingMs);
+            movingMs += segmentMovingMs;
+            distance += deltaMeters;
+        }
+        lastFixMs = timestamp;
+        fixes++;
+
+        if (!hasFix) {
+            minLat = maxLat = lat;
+            minLng = maxLng = lng;
+            hasFix = true;
+        } else {
+            if (lat < minLat) minLat = lat; else if (lat > maxLat) maxLat = lat;
+            if (lng < minLng) minLng = lng; else if (lng > maxLng) maxLng = lng;
+        }
+
+        pushPaceSample();
+    }
+
+    // ─── Consultas ────────────────────────────────────────────────────────────
+
+    boolean isStarted() { return started; }
+
+    boolean isFinished() { return finished; }
+
+    long startMs() { return startMs; }
+
+    /** Tiempo desde el inicio hasta {@code nowMs} (o hasta el fin si ya terminó). */
+    long elapsedMs(long nowMs) {
+        if (!started) return 0;
+        long end = finished ? endMs : Math.max(nowMs, hasFix ? lastFixMs : startMs);
+        return end - startMs;
+    }
+
+    long movingMs() { return movingMs; }
+
+    long pausedMs(long nowMs) {
+        return Math.max(0, elapsedMs(nowMs) - movingMs);
+    }
+
+    double distanceMeters() { return distance; }
+
+    int fixCount() { return fixes; }
+
+    /** Ritmo medio en movimiento (s/km); 0 si todavía no hay distancia. */
+    double averagePaceSecPerKm() {
+        return (distance > 0 && movingMs > 0) ? movingMs / distance : 0;
+    }
+
+    /** Ritmo sobre los últimos {@code paceWindowMeters} (s/km); 0 si no alcanza. */
+    double rollingPaceSecPerKm() {
+        if (ringCount < 2) return 0;
+        int tail = (ringHead - ringCount + PACE_RING_SIZE) % PACE_RING_SIZE;
+        int last = (ringHead - 1 + PACE_RING_SIZE) % PACE_RING_SIZE;
+        double d = ringDistance[last] - ringDistance[tail];
+        long t = ringMovingMs[last] - ringMovingMs[tail];
+        return (d > 0 && t > 0) ? t / d : 0;
+    }
+
+    int splitCount() { return splitCount; }
+
+    /** Duración en movimiento del km {@code i} (0 = primero), en ms. */
+    long splitMs(int i) {
+        if (i < 0 || i >= splitCount) throw new IndexOutOfBoundsException("split " + i + " de " + splitCount);
+        return splitEndMovingMs[i] - (i == 0 ? 0 : splitEndMovingMs[i - 1]);
+    }
+
+    boolean hasBounds() { return hasFix; }
+
+    double minLat() { return minLat; }
+
+    double maxLat() { return maxLat; }
+
+    double minLng() { return minLng; }
+
+    double maxLng() { return maxLng; }
+
+    // ─── Internos ─────────────────────────────────────────────────────────────
+
+    /** Registra los km que cruza el tramo que se está por sumar, interpolando el tiempo del cruce. */
+    private void recordSplits(double delta, long segmentMovingMs) {
+        double end = distance + delta;
+        double nextMark = (splitCount + 1) * SPLIT_METERS;
+        while (end >= nextMark) {
+            double fraction = (nextMark - distance) / delta;
+            if (splitCount == splitEndMovingMs.length) {
+                long[] grown = new long[splitCount * 2];
+                System.arraycopy(splitEndMovingMs, 0, grown, 0, splitCount);
+                splitEndMovingMs = grown;
+            }
+            splitEndMovingMs[splitCount++] = movingMs + Math.round(segmentMovingMs * fraction);
+            nextMark = (splitCount + 1) * SPLIT_METERS;
+        }
+    }
+
+    private void pushPaceSample() {
+        ringDistance[ringHead] = distance;
+        ringMovingMs[ringHead] = movingMs;
+        ringHead = (ringHead + 1) % PACE_RING_SIZE;
+        if (ringCount < PACE_RING_SIZE) ringCount++;
+
+        // Descartar las muestras más viejas mientras la siguiente ya cubra la ventana
+        while (ringCount > 2) {
+            int next = (ringHead - ringCount + 1 + PACE_RING_SIZE) % PACE_RING_SIZE;
+            if (distance - ringDistance[next] < paceWindowMeters) break;
+            ringCount--;
+        }
+    }
+}
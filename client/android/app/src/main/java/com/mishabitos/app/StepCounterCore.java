@@ -0,0 +1,89 @@
+package com.mishabitos.app;
+
+/**
+ * Lógica por evento de StepCounterService, sin dependencias de Android.
+ *
+ * Convierte la lectura acumulada de TYPE_STEP_COUNTER en pasos del día: guarda el
+ * baseline (lectura al empezar el día o tras un reinicio del teléfono) y detecta el cambio
+ * de día con {@link DayClock}. En régimen estable {@link #onSensorValue} no asigna objetos.
+ *
+ * Se usa desde un único hilo.
+ */
+final class StepCounterCore {
+
+    static final int UNCHANGED = 0;
+    static final int STEPS_CHANGED = 1;
+    /** Cambió el día o el baseline: conviene persistir enseguida. */
+    static final int BASELINE_CHANGED = 1 << 1;
+    static final int DAY_ROLLED = 1 << 2;
+
+    private final DayClock clock;
+
+    private int day;
+    private int steps;
+    private long baseline = -1;
+    private long lastSensorValue = -1;
+
+    StepCounterCore(DayClock clock) {
+        this.clock = clock;
+    }
+
+    /** Retoma el estado guardado (el día puede ser viejo: ver {@link #checkDay}). */
+    void restore(int day, int steps, long baseline) {
+        this.day = day;
+        this.steps = steps;
+        this.baseline = baseline;
+        this.lastSensorValue = -1;
+    }
+
+    /**
+     * Lectura del sensor tomada en {@code eventWallMs} (hora del evento, no de entrega: un
+     * lote del FIFO puede llegar después de medianoche con pasos del día anterior).
+     */
+    int onSensorValue(long sensorValue, long eventWallMs) {
+        lastSensorValue = sensorValue;
+        int today = clock.dayKey(eventWallMs);
+        // Sólo hacia adelante: si el reloj retrocede a ayer se sigue contando en el día actual
+        if (today > day) {
+            day = today;
+            baseline = sensorValue;
+            steps = 0;
+            return DAY_ROLLED | BASELINE_CHANGED | STEPS_CHANGED;
+        }
+
+        int result = UNCHANGED;
+        // Primera lectura o reset por reinicio del dispositivo
+        if (baseline < 0 || sensorValue < baseline) {
+            baseline = sensorValue;
+            result = BASELINE_CHANGED;
+        }
+        int s = (int) (sensorValue - baseline);
+        if (s != steps) {
+            steps = s;
+            result |= STEPS_CHANGED;
+        }
+        return result;
+    }
+
+    /**
+     * Pasa al día siguiente sin esperar un evento del sensor (timer de medianoche, cambio
+     * de zona horaria, arranque del servicio).
+     */
+    int checkDay(long nowWallMs) {
+        int today = clock.dayKey(nowWallMs);
+        if (today <= day) return UNCHANGED;
+        day = today;
+        baseline = lastSensorValue; // -1 si todavía no hubo lecturas: la próxima fija el baseline
+        steps = 0;
+        return DAY_ROLLED | BASELINE_CHANGED | STEPS_CHANGED;
+    }
+
+    int day() { return day; }
+
+    int steps() { return steps; }
+
+    long baseline() { return baseline; }
+
+    /** Próxima medianoche local según la última consulta. */
+    long nextMidnightMs() { return clock.nextMidnightMs(); }
+}
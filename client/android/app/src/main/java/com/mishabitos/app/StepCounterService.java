@@ -1,44 +1,138 @@
 package com.mishabitos.app;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
-import android.appwidget.AppWidgetManager;
-import android.content.ComponentName;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
 import android.hardware.SensorManager;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
+import java.util.TimeZone;
 
-public class StepCounterService extends Service implements SensorEventListener {
+public class StepCounterService extends Service implements SensorEventListener2 {
 
     private static final String TAG = "StepCounterSvc";
 
     static final String PREFS_NAME = "StepCounterPrefs";
-    static final String KEY_STEPS_TODAY = "steps_today";
-    static final String KEY_STEP_DATE = "step_date";
-    static final String KEY_SENSOR_BASELINE = "sensor_baseline";
     static final String KEY_STEPS_GOAL = "steps_goal";
+    // Claves de versiones anteriores: los pasos ahora viven en StepStore (se migran una vez)
+    private static final String KEY_STEPS_TODAY = "steps_today";
+    private static final String KEY_STEP_DATE = "step_date";
+    private static final String KEY_SENSOR_BASELINE = "sensor_baseline";
+
+    private static final String STORE_FILE = "steps.bin";
+    // Cada cuánto, como máximo, se escriben a disco los pasos (el baseline y el cambio de día van enseguida)
+    private static final long PERSIST_INTERVAL_MS = 30_000L;
+    // Tope de espera del flush del FIFO antes de pasar de día
+    private static final long FLUSH_TIMEOUT_MS = 5_000L;
+    private static StepStore store;
+
+    private static final String HISTORY_FILE = "step_history.bin";
+    private static StepHistory history;
+    private static boolean historyUnavailable;
 
     private static final String CHANNEL_ID = "step_service_channel";
     private static final int NOTIF_ID = 42;
+    private static final long NOTIF_MIN_INTERVAL_MS = 2000L;
+    private static final long WIDGET_MIN_INTERVAL_MS = 5000L;
+    // Con la pantalla apagada nadie ve el widget; al encenderla se manda lo pendiente
+    private static final long WIDGET_SCREEN_OFF_INTERVAL_MS = 5 * 60_000L;
+    private static final int DEFAULT_STEPS_GOAL = 8000;
+    private static int stepsGoal = -1; // caché de KEY_STEPS_GOAL; -1 hasta leerlo
+
+    // Logs por evento sólo si se habilitan con: adb shell setprop log.tag.StepCounterSvc DEBUG
+    private static final boolean LOG_EVENTS = Log.isLoggable(TAG, Log.DEBUG);
+
+    // Latencia máxima de reporte del FIFO del sensor en segundo plano: el chip de pasos
+    // acumula eventos y despierta al procesador una vez por lote en lugar de por paso
+    static final String EXTRA_MAX_REPORT_LATENCY_MS = "maxReportLatencyMs";
+    static final long DEFAULT_MAX_REPORT_LATENCY_MS = 60_000L;
+
+    /** Pasos del día tras un cambio. Inmutable. */
+    static final class StepEvent {
+        final int steps;
+        final int day;
+
+        StepEvent(int steps, int day) {
+            this.steps = steps;
+            this.day = day;
+        }
+    }
 
+    /** Cambio de actividad según la cadencia. Inmutable. */
+    static final class ActivityEvent {
+        final CadenceClassifier.Activity activity;
+        final int cadence;
+        final long sinceMs;
+
+        ActivityEvent(CadenceClassifier.Activity activity, int cadence, long sinceMs) {
+            this.activity = activity;
+            this.cadence = cadence;
+            this.sinceMs = sinceMs;
+        }
+    }
+
+    // Hilo del sensor; null si el servicio no está corriendo
+    private static volatile Handler sensorHandler;
+    private static volatile StepCounterService running;
+    // Con la app visible se entrega cada paso sin lote, para que la UI esté al día
+    private static volatile boolean appInForeground;
+
+    private HandlerThread sensorThread;
+    private Handler handler;
     private SensorManager sensorManager;
-    private long sensorBaseline = -1;
-    private String currentDate;
+    private Sensor stepSensor; // TYPE_STEP_COUNTER, o el acelerómetro si no hay contador
+    // Sin contador de pasos: se detectan con el acelerómetro y se acumulan como si fuera uno
+    private static final int ACCEL_SAMPLING_US = (int) (1_000_000 / AccelStepDetector.DEFAULT_RATE_HZ);
+    private boolean accelFallback;
+    private AccelStepDetector accelDetector;
+    private long accelTotal;
+    private long maxReportLatencyMs = DEFAULT_MAX_REPORT_LATENCY_MS;
+    private boolean counting; // startCounting ya hizo la configuración de esta instancia
+    private boolean registeredBatched;
+    private long batchLatencyMs; // latencia del registro actual (0: sin lote)
+    private boolean switchToLiveOnFlush;
+    private boolean reregisterOnFlush;
+    private boolean rollDayOnFlush;
+    private final Runnable rollDayTask = this::rollDay;
+    private final Runnable widgetUpdate = this::triggerWidgetUpdate;
+    private final Runnable widgetFlush = this::flushWidgetUpdate;
+    private final Runnable persistTask = this::persist;
+    private final Runnable midnightCheck = this::onMidnight;
+    // Suscripciones vía LocalBinder; entregan en el hilo del sensor
+    private EventBus<StepEvent> stepEvents;
+    private EventBus<ActivityEvent> activityEvents;
+    private final CadenceClassifier classifier = new CadenceClassifier();
+    private final Runnable activityCheck = this::checkActivity;
+    private boolean activityCheckScheduled;
+    private final LocalBinder binder = new LocalBinder();
+    private final NotificationThrottle widgetThrottle = new NotificationThrottle(WIDGET_MIN_INTERVAL_MS);
+    private final DayClock dayClock = new DayClock(TimeZone.getDefault());
+    private final StepCounterCore core = new StepCounterCore(dayClock);
+    private boolean persistScheduled;
+    private StepStore counter;
+    private StepHistory minutes; // null si no se pudo abrir el archivo
+    private ServiceNotification notification;
 
     // ─── Lifecycle ────────────────────────────────────────────────────────────
 
@@ -46,134 +140,554 @@ public class StepCounterService extends Service implements SensorEventListener {
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "onCreate() - Servicio creado");
+        sensorThread = new HandlerThread("StepCounter", Process.THREAD_PRIORITY_BACKGROUND);
+        sensorThread.start();
+        handler = new Handler(sensorThread.getLooper());
+        HandlerDispatcher dispatcher = new HandlerDispatcher(handler);
+        stepEvents = new EventBus<>(dispatcher);
+        activityEvents = new EventBus<>(dispatcher);
+        sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+        registerSystemReceiver();
         createNotificationChannel();
+        notification = new ServiceNotification(this, NOTIF_ID, baseNotification(),
+                this::formatSteps, NOTIF_MIN_INTERVAL_MS, handler);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            startForeground(NOTIF_ID, buildNotification(0),
+            startForeground(NOTIF_ID, notification.initial(0),
                     android.content.pm.ServiceInfo.FOREGROUND_SERVICE_TYPE_HEALTH);
         } else {
-            startForeground(NOTIF_ID, buildNotification(0));
+            startForeground(NOTIF_ID, notification.initial(0));
         }
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "onStartCommand() - Servicio iniciando");
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        currentDate = getTodayDate();
-        String savedDate = prefs.getString(KEY_STEP_DATE, "");
-
-        if (!savedDate.equals(currentDate)) {
-            // Nuevo día: reiniciar baseline y pasos
-            prefs.edit()
-                    .putString(KEY_STEP_DATE, currentDate)
-                    .putInt(KEY_STEPS_TODAY, 0)
-                    .putLong(KEY_SENSOR_BASELINE, -1)
-                    .apply();
-            sensorBaseline = -1;
-        } else {
-            sensorBaseline = prefs.getLong(KEY_SENSOR_BASELINE, -1);
+        long latency = (intent != null)
+                ? intent.getLongExtra(EXTRA_MAX_REPORT_LATENCY_MS, DEFAULT_MAX_REPORT_LATENCY_MS)
+                : DEFAULT_MAX_REPORT_LATENCY_MS;
+        handler.post(() -> startCounting(latency));
+        sensorHandler = handler;
+        running = this;
+        return START_STICKY; // El sistema lo reinicia si lo mata
+    }
+
+    private void startCounting(long latencyMs) {
+        long latency = Math.max(0, latencyMs);
+        if (counting) {
+            // usePedometer llama a startService en cada montaje: no se rehace nada (el detector
+            // del acelerómetro perdería la racha sin confirmar). Sólo cambia la latencia del lote
+            if (latency != maxReportLatencyMs) {
+                maxReportLatencyMs = latency;
+                if (stepSensor != null && !appInForeground) {
+                    // Vaciar el lote registrado con la latencia vieja antes de re-registrar:
+                    // las muestras del acelerómetro que quedan en el FIFO se perderían
+                    reregisterOnFlush = true;
+                    if (!registeredBatched || !sensorManager.flush(this)) onFlushCompleted(stepSensor);
+                }
+                Log.d(TAG, "Latencia máx. del lote pedida: " + latency + " ms");
+            }
+            return;
         }
+        counting = true;
+        maxReportLatencyMs = latency;
+        counter = stepStore(this);
+        minutes = stepHistory(this);
+        core.restore(counter.day(), counter.steps(), counter.baseline());
+        // Si el día guardado ya pasó: reiniciar baseline y pasos
+        publish(core.checkDay(System.currentTimeMillis()));
+        scheduleMidnightCheck();
 
         // Registrar el sensor de pasos
-        sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        Sensor stepSensor = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_COUNTER);
+        stepSensor = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_COUNTER);
+        if (stepSensor == null) startAccelFallback();
         if (stepSensor != null) {
-            sensorManager.registerListener(this, stepSensor, SensorManager.SENSOR_DELAY_UI);
-            Log.d(TAG, "Sensor TYPE_STEP_COUNTER registrado exitosamente");
+            registerSensor(!appInForeground);
+            Log.d(TAG, "Sensor " + stepSensor.getStringType() + " registrado, latencia máx. " + maxBatchLatencyMs()
+                    + " ms (FIFO de " + stepSensor.getFifoReservedEventCount() + " eventos)");
         } else {
-            Log.e(TAG, "ERROR: Sensor TYPE_STEP_COUNTER NO DISPONIBLE en este dispositivo");
+            Log.e(TAG, "ERROR: ni TYPE_STEP_COUNTER ni acelerómetro disponibles en este dispositivo");
         }
 
-        Log.d(TAG, "onStartCommand() completado, baseline=" + sensorBaseline + ", date=" + currentDate);
-        return START_STICKY; // El sistema lo reinicia si lo mata
+        Log.d(TAG, "startCounting() completado, baseline=" + core.baseline() + ", día=" + core.day());
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        sensorHandler = null;
+        running = null;
         if (sensorManager != null) {
             sensorManager.unregisterListener(this);
         }
+        unregisterReceiver(systemReceiver);
+        handler.removeCallbacks(widgetUpdate);
+        handler.removeCallbacks(widgetFlush);
+        handler.removeCallbacks(midnightCheck);
+        handler.removeCallbacks(rollDayTask);
+        handler.removeCallbacks(persistTask);
+        handler.removeCallbacks(activityCheck);
+        stepEvents.clear();
+        activityEvents.clear();
+        handler.post(persistTask); // lo último que procesa el hilo antes de terminar
+        if (minutes != null) {
+            StepHistory h = minutes;
+            handler.post(h::force);
+        }
+        notification.cancelPending();
+        Log.d(TAG, "Notificación: " + notification.postedCount() + " publicadas, "
+                + notification.avoidedCount() + " evitadas");
+        sensorThread.quitSafely();
     }
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 
-    // ─── SensorEventListener ─────────────────────────────────────────────────
+    /**
+     * Interfaz en proceso para el plugin (bindService sin BIND_AUTO_CREATE: no mantiene vivo
+     * al servicio). Las lecturas son de memoria; las suscripciones van por {@link EventBus}.
+     */
+    final class LocalBinder extends Binder {
+
+        int stepsToday() {
+            return stepStore(StepCounterService.this).steps();
+        }
+
+        int day() {
+            return stepStore(StepCounterService.this).day();
+        }
+
+        boolean hasSensor() {
+            return stepSensor != null;
+        }
+
+        /**
+         * Cambios de pasos del día, con la política de entrega que elija cada suscriptor. El
+         * suscriptor nuevo recibe enseguida el valor actual, sin esperar al próximo paso.
+         */
+        EventBus<StepEvent>.Subscription subscribe(EventBus.Receiver<StepEvent> receiver, EventBus.Policy policy) {
+            EventBus<StepEvent>.Subscription s = stepEvents.subscribe(receiver, policy);
+            // core se lee en el hilo del sensor; counter es null hasta que arranca el conteo
+            handler.post(() -> {
+                if (counter != null) s.send(new StepEvent(core.steps(), core.day()));
+            });
+            return s;
+        }
+
+        /** Cambios de actividad (idle, walking, brisk, running). */
+        EventBus<ActivityEvent>.Subscription subscribeActivity(EventBus.Receiver<ActivityEvent> receiver,
+                EventBus.Policy policy) {
+            return activityEvents.subscribe(receiver, policy);
+        }
+
+        /** Corre {@code r} en el hilo del sensor, el único que puede leer {@link #classifier()}. */
+        boolean runOnSensorThread(Runnable r) {
+            return handler.post(r);
+        }
+
+        CadenceClassifier classifier() {
+            return classifier;
+        }
+    }
+
+    // ─── Lotes del sensor ─────────────────────────────────────────────────────
+
+    /**
+     * La app pasó a primer plano o a segundo plano. En primer plano los pasos se entregan
+     * sin lote; al volver al fondo se re-registra con la latencia configurada.
+     */
+    static void setAppInForeground(boolean foreground) {
+        appInForeground = foreground;
+        Handler h = sensorHandler;
+        if (h != null) h.post(() -> {
+            StepCounterService svc = running;
+            if (svc != null) svc.onForegroundChanged(foreground);
+        });
+    }
+
+    /**
+     * Redibuja el widget de pasos (p. ej. cambió la meta). Con el servicio corriendo se hace
+     * en el hilo del sensor, el mismo que empuja los pasos, así los envíos no se cruzan.
+     */
+    static void refreshWidget(Context context) {
+        Context app = context.getApplicationContext();
+        Handler h = sensorHandler;
+        Runnable push = () -> {
+            StepCounterService svc = running;
+            if (svc != null && svc.counter != null) {
+                StepWidget.pushSteps(svc, svc.core.steps());
+            } else {
+                StepWidget.pushSteps(app, stepStore(app).steps());
+            }
+        };
+        if (h == null || !h.post(push)) push.run();
+    }
+
+    /** Vacía el FIFO del sensor para que la próxima lectura incluya los pasos acumulados. */
+    static void requestFlush() {
+        Handler h = sensorHandler;
+        if (h != null) h.post(() -> {
+            StepCounterService svc = running;
+            if (svc != null) svc.flushSensor();
+        });
+    }
+
+    private void onForegroundChanged(boolean foreground) {
+        if (stepSensor == null) return;
+        if (foreground && registeredBatched) {
+            // Primero vaciar el lote acumulado; al completarse se pasa a entrega inmediata
+            switchToLiveOnFlush = true;
+            if (!sensorManager.flush(this)) onFlushCompleted(stepSensor);
+        } else if (!foreground && !registeredBatched) {
+            switchToLiveOnFlush = false;
+            registerSensor(true);
+        }
+    }
 
     @Override
-    public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() != Sensor.TYPE_STEP_COUNTER)
-            return;
-        Log.d(TAG, "onSensorChanged - sensorValue=" + (long) event.values[0] + ", baseline=" + sensorBaseline);
-
-        long sensorValue = (long) event.values[0];
-        String todayDate = getTodayDate();
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-
-        // Cambio de día
-        if (!todayDate.equals(currentDate)) {
-            currentDate = todayDate;
-            sensorBaseline = sensorValue;
-            prefs.edit()
-                    .putString(KEY_STEP_DATE, currentDate)
-                    .putLong(KEY_SENSOR_BASELINE, sensorBaseline)
-                    .putInt(KEY_STEPS_TODAY, 0)
-                    .apply();
-            updateNotification(0);
-            triggerWidgetUpdate(0);
-            return;
+    public void onFlushCompleted(Sensor sensor) {
+        // Los eventos del lote ya se entregaron (en este mismo hilo, antes que esto)
+        if (rollDayOnFlush) rollDay();
+        if (reregisterOnFlush) {
+            reregisterOnFlush = false;
+            if (!appInForeground) registerSensor(true);
+        }
+        if (!switchToLiveOnFlush) return;
+        switchToLiveOnFlush = false;
+        if (appInForeground) registerSensor(false);
+    }
+
+    /**
+     * Sin TYPE_STEP_COUNTER: usa el acelerómetro. El total sintético sigue desde lo guardado,
+     * así StepCounterCore calcula los pasos del día igual que con el contador del sistema.
+     */
+    private void startAccelFallback() {
+        // Versión wake-up si existe: con el FIFO lleno despierta al CPU en vez de descartar
+        // muestras. Cuesta batería (un despertar por FIFO lleno: según el chip, cada pocos
+        // segundos o cada un minuto), pero sin ella se pierden los pasos con la pantalla apagada.
+        stepSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER, true);
+        if (stepSensor == null) stepSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        if (stepSensor == null) return;
+        Log.w(TAG, "Sin TYPE_STEP_COUNTER: se detectan pasos con el acelerómetro"
+                + (stepSensor.isWakeUpSensor() ? " (wake-up)" : ""));
+        accelFallback = true;
+        accelDetector = new AccelStepDetector(AccelStepDetector.DEFAULT_RATE_HZ);
+        accelTotal = Math.max(0, core.baseline()) + core.steps();
+        onStepValue(accelTotal, System.currentTimeMillis()); // fija el baseline antes del primer paso
+    }
+
+    private void registerSensor(boolean batched) {
+        sensorManager.unregisterListener(this);
+        long latencyMs = batched ? maxBatchLatencyMs() : 0;
+        int latencyUs = (int) Math.min(Integer.MAX_VALUE, latencyMs * 1000L);
+        int samplingUs = accelFallback ? ACCEL_SAMPLING_US : SensorManager.SENSOR_DELAY_NORMAL;
+        boolean ok = sensorManager.registerListener(this, stepSensor, samplingUs, latencyUs, handler);
+        registeredBatched = ok && latencyUs > 0;
+        batchLatencyMs = registeredBatched ? latencyMs : 0;
+        if (!ok) Log.e(TAG, "No se pudo registrar el sensor de pasos");
+    }
+
+    /**
+     * El contador de pasos es acumulado: si su FIFO se llena no se pierde nada y vale la
+     * latencia pedida. Las muestras del acelerómetro sí se pierden, así que su lote no puede
+     * pasar de lo que entra en el FIFO (sin FIFO: sin lote).
+     */
+    private long maxBatchLatencyMs() {
+        if (!accelFallback) return maxReportLatencyMs;
+        long fifoMs = (long) stepSensor.getFifoMaxEventCount() * ACCEL_SAMPLING_US / 1000;
+        return Math.min(maxReportLatencyMs, fifoMs);
+    }
+
+    private void flushSensor() {
+        if (sensorManager != null && stepSensor != null && registeredBatched) {
+            sensorManager.flush(this);
+        }
+    }
+
+    private final BroadcastReceiver systemReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_USER_PRESENT.equals(action)) {
+                // Al desbloquear el teléfono el launcher (y el widget de pasos) queda a la vista
+                if (hasStepWidgets()) flushSensor();
+            } else if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                widgetThrottle.setMinIntervalMs(WIDGET_SCREEN_OFF_INTERVAL_MS);
+            } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                widgetThrottle.setMinIntervalMs(WIDGET_MIN_INTERVAL_MS);
+                handler.removeCallbacks(widgetFlush);
+                flushWidgetUpdate();
+            } else if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+                dayClock.setTimeZone(TimeZone.getDefault());
+                if (minutes != null) minutes.setTimeZone(TimeZone.getDefault());
+                onMidnight();
+            } else {
+                // Cambio manual de hora o fecha
+                dayClock.invalidate();
+                onMidnight();
+            }
+        }
+    };
+
+    private void registerSystemReceiver() {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_USER_PRESENT);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        registerReceiver(systemReceiver, filter, null, handler);
+        PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
+        if (pm != null && !pm.isInteractive()) {
+            handler.post(() -> widgetThrottle.setMinIntervalMs(WIDGET_SCREEN_OFF_INTERVAL_MS));
         }
+    }
+
+    private boolean hasStepWidgets() {
+        return StepWidget.widgetIds(this).length > 0;
+    }
+
+    // ─── SensorEventListener ─────────────────────────────────────────────────
 
-        // Primera lectura o reset por reinicio del dispositivo
-        if (sensorBaseline < 0 || sensorValue < sensorBaseline) {
-            sensorBaseline = sensorValue;
-            prefs.edit().putLong(KEY_SENSOR_BASELINE, sensorBaseline).apply();
+    /** Sin asignaciones en régimen estable: el caso de todos los pasos del día. */
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        int type = event.sensor.getType();
+        if (type == Sensor.TYPE_STEP_COUNTER) {
+            onStepValue((long) event.values[0], eventWallMs(event));
+        } else if (type == Sensor.TYPE_ACCELEROMETER && accelFallback) {
+            int steps = accelDetector.onSample(event.timestamp, event.values[0], event.values[1], event.values[2]);
+            if (steps == 0) return; // la gran mayoría de las muestras
+            accelTotal += steps;
+            onStepValue(accelTotal, eventWallMs(event));
         }
+    }
 
-        int stepsToday = (int) (sensorValue - sensorBaseline);
-        prefs.edit().putInt(KEY_STEPS_TODAY, stepsToday).apply();
+    /** event.timestamp es elapsedRealtimeNanos del momento del paso, no de la entrega del lote. */
+    private static long eventWallMs(SensorEvent event) {
+        return System.currentTimeMillis() - (SystemClock.elapsedRealtimeNanos() - event.timestamp) / 1_000_000L;
+    }
 
-        updateNotification(stepsToday);
-        triggerWidgetUpdate(stepsToday);
+    /** Lectura acumulada de pasos (del sensor o del detector por acelerómetro). */
+    private void onStepValue(long sensorValue, long eventWallMs) {
+        if (LOG_EVENTS) {
+            Log.d(TAG, "onSensorChanged - sensorValue=" + sensorValue + ", baseline=" + core.baseline());
+        }
+        int before = core.steps();
+        int result = core.onSensorValue(sensorValue, eventWallMs);
+        if ((result & StepCounterCore.DAY_ROLLED) == 0) {
+            int delta = core.steps() - before; // negativo tras un reinicio: se ignora
+            if (minutes != null) minutes.add(eventWallMs, delta);
+            if (classifier.onSteps(eventWallMs, delta)) publishActivity(eventWallMs);
+            if (delta > 0) scheduleActivityCheck();
+        }
+        publish(result);
     }
 
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
     }
 
+    // ─── Actividad ────────────────────────────────────────────────────────────
+
+    private void publishActivity(long nowMs) {
+        if (LOG_EVENTS) Log.d(TAG, "Actividad: " + classifier.activity());
+        if (!activityEvents.hasSubscribers()) return;
+        activityEvents.publish(new ActivityEvent(classifier.activity(),
+                classifier.cadence(nowMs, CadenceClassifier.SHORT_WINDOW_S), classifier.activitySinceMs()));
+    }
+
+    /**
+     * Sin pasos no hay eventos del sensor: este chequeo periódico baja la actividad a IDLE.
+     * Se agenda una sola vez mientras haya actividad, no en cada paso.
+     */
+    private void scheduleActivityCheck() {
+        if (activityCheckScheduled) return;
+        activityCheckScheduled = true;
+        long period = registeredBatched ? batchLatencyMs : CadenceClassifier.CLASSIFY_WINDOW_S * 500L;
+        handler.postDelayed(activityCheck, period);
+    }
+
+    private void checkActivity() {
+        activityCheckScheduled = false;
+        // Con lotes, los pasos de la última latencia pueden seguir en el FIFO: no darlos por ausentes
+        long horizon = System.currentTimeMillis() - batchLatencyMs;
+        if (classifier.evaluate(horizon)) publishActivity(horizon);
+        if (classifier.activity() != CadenceClassifier.Activity.IDLE) scheduleActivityCheck();
+    }
+
+    // ─── Persistencia ────────────────────────────────────────────────────────
+
+    /**
+     * Contador de pasos compartido por el proceso. El servicio lo actualiza; el widget y el
+     * plugin leen de memoria. Si el servicio no corre, se carga del archivo.
+     */
+    static synchronized StepStore stepStore(Context context) {
+        if (store == null) {
+            store = new StepStore(new File(context.getFilesDir(), STORE_FILE));
+            if (!store.load()) migrateFromPrefs(context, store);
+        }
+        return store;
+    }
+
+    /**
+     * Historial por minuto/hora/día/semana compartido por el proceso (queda mapeado mientras
+     * viva el proceso). Devuelve null si el archivo no se puede abrir.
+     */
+    static synchronized StepHistory stepHistory(Context context) {
+        if (history == null && !historyUnavailable) {
+            try {
+                history = StepHistory.open(new File(context.getFilesDir(), HISTORY_FILE), TimeZone.getDefault());
+            } catch (IOException e) {
+                Log.e(TAG, "No se pudo abrir el historial de pasos: " + e.getMessage());
+                historyUnavailable = true;
+            }
+        }
+        return history;
+    }
+
+    /** Meta diaria de pasos; se lee de SharedPreferences una vez por proceso. */
+    static synchronized int stepsGoal(Context context) {
+        if (stepsGoal < 0) {
+            stepsGoal = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                    .getInt(KEY_STEPS_GOAL, DEFAULT_STEPS_GOAL);
+        }
+        return stepsGoal;
+    }
+
+    static synchronized void setStepsGoal(Context context, int goal) {
+        stepsGoal = goal;
+        context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putInt(KEY_STEPS_GOAL, goal).apply();
+    }
+
+    /** Trae los pasos guardados en SharedPreferences por versiones anteriores. */
+    private static void migrateFromPrefs(Context context, StepStore target) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        if (!prefs.contains(KEY_STEP_DATE)) return;
+        target.update(StepStore.parseDay(prefs.getString(KEY_STEP_DATE, "")),
+                prefs.getInt(KEY_STEPS_TODAY, 0),
+                prefs.getLong(KEY_SENSOR_BASELINE, -1),
+                System.currentTimeMillis());
+        try {
+            target.flush();
+            prefs.edit().remove(KEY_STEP_DATE).remove(KEY_STEPS_TODAY).remove(KEY_SENSOR_BASELINE).apply();
+        } catch (IOException e) {
+            Log.e(TAG, "Error migrando pasos desde SharedPreferences: " + e.getMessage());
+        }
+    }
+
+    /** Lleva el resultado de StepCounterCore al store, la notificación y el widget. */
+    private void publish(int result) {
+        if (result == StepCounterCore.UNCHANGED) return;
+        int stepsToday = core.steps();
+        if (counter.update(core.day(), stepsToday, core.baseline(), System.currentTimeMillis())) {
+            persist();
+        } else {
+            schedulePersist();
+        }
+        notification.update(stepsToday);
+        scheduleWidgetUpdate(stepsToday);
+        if ((result & StepCounterCore.STEPS_CHANGED) != 0 && stepEvents.hasSubscribers()) {
+            // Un objeto por cambio sólo mientras haya suscriptores (la app abierta)
+            stepEvents.publish(new StepEvent(stepsToday, core.day()));
+        }
+        if ((result & StepCounterCore.DAY_ROLLED) != 0) scheduleMidnightCheck();
+    }
+
+    /**
+     * Cambio de día sin pasos nuevos (timer de medianoche o cambio de hora/zona). Con el
+     * sensor en lote, primero se vacía el FIFO: los pasos de antes de medianoche que todavía
+     * no llegaron se cuentan en su día y recién después se pasa al siguiente.
+     */
+    private void onMidnight() {
+        if (rollDayOnFlush) return; // ya hay un flush en curso
+        if (stepSensor != null && registeredBatched && sensorManager.flush(this)) {
+            rollDayOnFlush = true;
+            // Por si el flush no se completa nunca (algunos drivers no lo avisan)
+            handler.postDelayed(rollDayTask, FLUSH_TIMEOUT_MS);
+        } else {
+            rollDay();
+        }
+    }
+
+    private void rollDay() {
+        handler.removeCallbacks(rollDayTask);
+        rollDayOnFlush = false;
+        publish(core.checkDay(System.currentTimeMillis()));
+        scheduleMidnightCheck();
+    }
+
+    private void scheduleMidnightCheck() {
+        handler.removeCallbacks(midnightCheck);
+        long delay = core.nextMidnightMs() - System.currentTimeMillis();
+        // El Handler no cuenta el tiempo en deep sleep: puede llegar tarde, pero el próximo
+        // evento del sensor igual detecta el cambio de día por su propio timestamp
+        handler.postDelayed(midnightCheck, Math.max(0, delay) + 1000L);
+    }
+
+    private void schedulePersist() {
+        if (persistScheduled) return;
+        persistScheduled = true;
+        handler.postDelayed(persistTask, PERSIST_INTERVAL_MS);
+    }
+
+    private void persist() {
+        handler.removeCallbacks(persistTask);
+        persistScheduled = false;
+        if (counter == null) return;
+        try {
+            counter.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Error guardando pasos: " + e.getMessage());
+        }
+    }
+
     // ─── Helpers ─────────────────────────────────────────────────────────────
 
-    private void triggerWidgetUpdate(int steps) {
-        AppWidgetManager manager = AppWidgetManager.getInstance(this);
-        int[] ids = manager.getAppWidgetIds(new ComponentName(this, StepWidget.class));
-        for (int id : ids) {
-            StepWidget.updateAppWidget(this, manager, id);
+    /**
+     * Como mucho una actualización del widget cada WIDGET_MIN_INTERVAL_MS (con la pantalla
+     * apagada, WIDGET_SCREEN_OFF_INTERVAL_MS). Un lote del FIFO llega como ráfaga de eventos:
+     * la actualización corre después del último. StepWidget descarta las que no se notan.
+     */
+    private void scheduleWidgetUpdate(int steps) {
+        long now = SystemClock.elapsedRealtime();
+        switch (widgetThrottle.offer(steps, now)) {
+            case NotificationThrottle.POST:
+                handler.removeCallbacks(widgetUpdate);
+                handler.post(widgetUpdate);
+                break;
+            case NotificationThrottle.SCHEDULE:
+                handler.postDelayed(widgetFlush, widgetThrottle.flushDelayMs(now));
+                break;
+            default:
+                break;
         }
     }
 
-    private Notification buildNotification(int steps) {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        int goal = prefs.getInt(KEY_STEPS_GOAL, 8000);
-        String text = (steps < 0) ? "Sensor de pasos no disponible"
-                : formatNumber(steps) + " / " + formatNumber(goal) + " pasos hoy";
+    private void flushWidgetUpdate() {
+        if (widgetThrottle.flush(SystemClock.elapsedRealtime())) triggerWidgetUpdate();
+    }
+
+    private void triggerWidgetUpdate() {
+        StepWidget.pushSteps(this, (int) widgetThrottle.lastValue());
+    }
+
+    private NotificationCompat.Builder baseNotification() {
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("Contador de Pasos")
-                .setContentText(text)
                 .setSmallIcon(R.mipmap.ic_launcher)
                 .setOngoing(true)
                 .setSilent(true)
                 .setPriority(NotificationCompat.PRIORITY_LOW)
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .build();
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
     }
 
-    private void updateNotification(int steps) {
-        NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        if (nm != null)
-            nm.notify(NOTIF_ID, buildNotification(steps));
+    /** Sólo corre cuando la notificación se va a publicar, no en cada evento del sensor. */
+    private String formatSteps(long steps) {
+        int goal = stepsGoal(this);
+        return (steps < 0) ? "Sensor de pasos no disponible"
+                : formatNumber((int) steps) + " / " + formatNumber(goal) + " pasos hoy";
     }
 
     private void createNotificationChannel() {
@@ -189,10 +703,6 @@ public class StepCounterService extends Service implements SensorEventListener {
         }
     }
 
-    private String getTodayDate() {
-        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
-    }
-
     private String formatNumber(int n) {
         if (n >= 1000) {
             return String.format(Locale.getDefault(), "%,d", n);
@@ -0,0 +1,245 @@
+package com.mishabitos.app;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TimeZone;
+
+/**
+ * Serie temporal de pasos: buckets por minuto, hora, día y semana en anillos de tamaño
+ * fijo, mapeados en memoria desde un único archivo (mismo criterio que {@link TrackJournal}:
+ * cada escritura es un store en memoria y el kernel baja las páginas a disco).
+ *
+ * Cada {@link #add} suma en los cuatro niveles, así que los totales por hora/día/semana
+ * están siempre al día y una consulta lee un entero por bucket devuelto, sin recorrer
+ * minutos. Los buckets se alinean a la hora local; las semanas empiezan el lunes.
+ *
+ * Layout (little endian):
+ * <pre>
+ *   header (64 B): magic, version, último índice escrito por nivel
+ *   minutos:  short × MINUTE_SLOTS (~91 días)
+ *   horas:    int × HOUR_SLOTS     (~170 días)
+ *   días:     int × DAY_SLOTS      (~2.8 años)
+ *   semanas:  int × WEEK_SLOTS     (~4.9 años)
+ * </pre>
+ *
+ * Thread-safe: escribe el hilo del sensor y el plugin consulta desde otro.
+ */
+final class StepHistory implements Closeable {
+
+    enum Resolution {
+        MINUTE(MINUTE_SLOTS), HOUR(HOUR_SLOTS), DAY(DAY_SLOTS), WEEK(WEEK_SLOTS);
+
+        final int slots;
+
+        Resolution(int slots) {
+            this.slots = slots;
+        }
+
+        /** "minute" | "hour" | "day" | "week"; null si no es ninguno. */
+        static Resolution fromName(String name) {
+            if (name != null) {
+                for (Resolution r : values()) {
+                    if (r.name().equalsIgnoreCase(name)) return r;
+                }
+            }
+            return null;
+        }
+    }
+
+    interface BucketSink {
+        /** {@code startMs}: inicio del bucket (epoch ms). */
+        void bucket(long startMs, int steps);
+    }
+
+    static final int MINUTE_SLOTS = 1 << 17;
+    static final int HOUR_SLOTS = 1 << 12;
+    static final int DAY_SLOTS = 1 << 10;
+    static final int WEEK_SLOTS = 1 << 8;
+
+    static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x48425348; // "HBSH"
+    private static final int VERSION = 1;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_NEWEST = 8; // 4 ints, uno por Resolution
+
+    private static final int MINUTES_OFFSET = HEADER_SIZE;
+    private static final int HOURS_OFFSET = MINUTES_OFFSET + MINUTE_SLOTS * 2;
+    private static final int DAYS_OFFSET = HOURS_OFFSET + HOUR_SLOTS * 4;
+    private static final int WEEKS_OFFSET = DAYS_OFFSET + DAY_SLOTS * 4;
+    static final int FILE_SIZE = WEEKS_OFFSET + WEEK_SLOTS * 4;
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    // El 1/1/1970 fue jueves: corriendo 3 días, las semanas arrancan el lunes
+    private static final int WEEK_SHIFT_DAYS = 3;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int[] newest = new int[4];
+    private TimeZone zone;
+
+    private StepHistory(RandomAccessFile file, MappedByteBuffer map, TimeZone zone) {
+        this.file = file;
+        this.map = map;
+        this.zone = zone;
+    }
+
+    static StepHistory open(File path, TimeZone zone) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        try {
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            StepHistory h = new StepHistory(raf, map, zone);
+            h.load();
+            return h;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private void load() {
+        if (map.getInt(OFF_MAGIC) != MAGIC || map.getInt(OFF_VERSION) != VERSION) {
+            // Archivo nuevo o de otra versión: empezar vacío
+            for (int off = HEADER_SIZE; off < FILE_SIZE; off += 4) map.putInt(off, 0);
+            for (int r = 0; r < newest.length; r++) map.putInt(OFF_NEWEST + r * 4, Integer.MIN_VALUE);
+            map.putInt(OFF_VERSION, VERSION);
+            map.putInt(OFF_MAGIC, MAGIC);
+        }
+        for (int r = 0; r < newest.length; r++) newest[r] = map.getInt(OFF_NEWEST + r * 4);
+    }
+
+    synchronized void setTimeZone(TimeZone zone) {
+        this.zone = zone;
+    }
+
+    // ─── Escritura ────────────────────────────────────────────────────────────
+
+    /** Suma {@code steps} al minuto (y a la hora, día y semana) que contiene {@code wallMs}. */
+    synchronized void add(long wallMs, int steps) {
+        if (steps <= 0) return;
+        long local = wallMs + zone.getOffset(wallMs);
+        int day = (int) Math.floorDiv(local, DAY_MS);
+        addTo(Resolution.MINUTE, (int) Math.floorDiv(local, MINUTE_MS), steps);
+        addTo(Resolution.HOUR, (int) Math.floorDiv(local, HOUR_MS), steps);
+        addTo(Resolution.DAY, day, steps);
+        addTo(Resolution.WEEK, Math.floorDiv(day + WEEK_SHIFT_DAYS, 7), steps);
+    }
+
+    private void addTo(Resolution r, int index, int steps) {
+        int level = r.ordinal();
+        int last = newest[level];
+        if (last != Integer.MIN_VALUE && index <= last - r.slots) return; // ya fuera del anillo
+        if (last == Integer.MIN_VALUE || index > last) {
+            // El anillo avanza: los slots que se reutilizan tienen datos de hace una vuelta
+            long from = (last == Integer.MIN_VALUE) ? (long) index - r.slots + 1 : (long) last + 1;
+            from = Math.max(from, (long) index - r.slots + 1);
+            for (long i = from; i <= index; i++) write(r, slot(r, (int) i), 0);
+            newest[level] = index;
+            map.putInt(OFF_NEWEST + level * 4, index);
+        }
+        int s = slot(r, index);
+        write(r, s, read(r, s) + steps);
+    }
+
+    // ─── Lectura ──────────────────────────────────────────────────────────────
+
+    /**
+     * Entrega los buckets de {@code resolution} entre {@code fromMs} y {@code min(toMs, nowMs)}
+     * (ambos inclusive). Los posteriores al último paso salen en 0, así la serie no tiene
+     * huecos; los más viejos que el anillo y los futuros se omiten. Devuelve la cantidad
+     * entregada. Costo: una lectura por bucket.
+     */
+    synchronized int query(Resolution resolution, long fromMs, long toMs, long nowMs, BucketSink sink) {
+        long end = endIndex(resolution, toMs, nowMs);
+        long first = firstIndex(resolution, fromMs, end);
+        int last = newest[resolution.ordinal()];
+        int count = 0;
+        for (long i = first; i <= end; i++) {
+            int steps = (last != Integer.MIN_VALUE && i <= last) ? read(resolution, slot(resolution, (int) i)) : 0;
+            sink.bucket(startOf(resolution, (int) i), steps);
+            count++;
+        }
+        return count;
+    }
+
+    /** Cantidad de buckets que devolvería {@link #query} (para validar rangos antes de pedirlos). */
+    synchronized long countBuckets(Resolution resolution, long fromMs, long toMs, long nowMs) {
+        long end = endIndex(resolution, toMs, nowMs);
+        return Math.max(0, end - firstIndex(resolution, fromMs, end) + 1);
+    }
+
+    private long endIndex(Resolution r, long toMs, long nowMs) {
+        return indexOf(r, Math.min(toMs, nowMs));
+    }
+
+    /** Desde {@code fromMs}, pero nunca antes de lo que cubre el anillo. */
+    private long firstIndex(Resolution r, long fromMs, long end) {
+        int last = newest[r.ordinal()];
+        long newestIndex = (last == Integer.MIN_VALUE) ? end : Math.max(last, end);
+        return Math.max(indexOf(r, fromMs), newestIndex - r.slots + 1);
+    }
+
+    private long indexOf(Resolution r, long wallMs) {
+        long local = wallMs + zone.getOffset(wallMs);
+        switch (r) {
+            case MINUTE: return Math.floorDiv(local, MINUTE_MS);
+            case HOUR: return Math.floorDiv(local, HOUR_MS);
+            case DAY: return Math.floorDiv(local, DAY_MS);
+            default: return Math.floorDiv(Math.floorDiv(local, DAY_MS) + WEEK_SHIFT_DAYS, 7);
+        }
+    }
+
+    private long startOf(Resolution r, int index) {
+        long local;
+        switch (r) {
+            case MINUTE: local = index * MINUTE_MS; break;
+            case HOUR: local = index * HOUR_MS; break;
+            case DAY: local = index * DAY_MS; break;
+            default: local = ((long) index * 7 - WEEK_SHIFT_DAYS) * DAY_MS; break;
+        }
+        // Offset vigente en ese instante (aproximado sólo en la hora del cambio de horario)
+        return local - zone.getOffset(local - zone.getRawOffset());
+    }
+
+    // ─── Slots ────────────────────────────────────────────────────────────────
+
+    private static int slot(Resolution r, int index) {
+        return index & (r.slots - 1); // slots es potencia de 2: vale también para negativos
+    }
+
+    private int read(Resolution r, int slot) {
+        switch (r) {
+            case MINUTE: return map.getShort(MINUTES_OFFSET + slot * 2) & 0xFFFF;
+            case HOUR: return map.getInt(HOURS_OFFSET + slot * 4);
+            case DAY: return map.getInt(DAYS_OFFSET + slot * 4);
+            default: return map.getInt(WEEKS_OFFSET + slot * 4);
+        }
+    }
+
+    private void write(Resolution r, int slot, int value) {
+        switch (r) {
+            case MINUTE: map.putShort(MINUTES_OFFSET + slot * 2, (short) Math.min(value, 0xFFFF)); break;
+            case HOUR: map.putInt(HOURS_OFFSET + slot * 4, value); break;
+            case DAY: map.putInt(DAYS_OFFSET + slot * 4, value); break;
+            default: map.putInt(WEEKS_OFFSET + slot * 4, value); break;
+        }
+    }
+
+    /** Baja las páginas a disco (el kernel igual lo hace solo; esto es para cortes de energía). */
+    synchronized void force() {
+        map.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
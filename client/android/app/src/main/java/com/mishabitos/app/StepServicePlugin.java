@@ -1,15 +1,18 @@
 package com.mishabitos.app;
 
 import android.Manifest;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.IBinder;
 import android.util.Log;
 
 import androidx.core.content.ContextCompat;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
@@ -18,6 +21,8 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 
+import java.util.Locale;
+
 @CapacitorPlugin(
     name = "StepService",
     permissions = {
@@ -34,6 +39,163 @@ import com.getcapacitor.annotation.PermissionCallback;
 public class StepServicePlugin extends Plugin {
 
     private static final String TAG = "StepServicePlugin";
+    private static final int MAX_HISTORY_BUCKETS = 10_000;
+    static final String EVENT_STEP_UPDATE = "stepUpdate";
+    static final String EVENT_ACTIVITY_CHANGE = "activityChange";
+    private static final long DEFAULT_STEP_UPDATE_INTERVAL_MS = 1000L;
+    private long stepUpdateIntervalMs = DEFAULT_STEP_UPDATE_INTERVAL_MS;
+
+    // Binder y suscripción del servicio mientras corre (se usan y se cambian en el hilo main)
+    private StepCounterService.LocalBinder service;
+    private EventBus<StepCounterService.StepEvent>.Subscription stepSubscription;
+    private EventBus<StepCounterService.ActivityEvent>.Subscription activitySubscription;
+    private boolean paused;
+
+    // Sin BIND_AUTO_CREATE: se conecta cada vez que el servicio arranca y no lo mantiene vivo
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = (StepCounterService.LocalBinder) binder;
+            if (!paused) subscribeSteps();
+            // Cambios de actividad: pocos y sin conflacionar, también con la app en segundo plano
+            if (activitySubscription != null) activitySubscription.unsubscribe();
+            activitySubscription = service.subscribeActivity(StepServicePlugin.this::onActivityChanged,
+                EventBus.Policy.every(8));
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            unsubscribeAll();
+        }
+    };
+
+    // ─── Ciclo de vida de la app ─────────────────────────────────────────────
+    // Con la app visible el servicio entrega cada paso; en segundo plano los agrupa en lotes
+
+    @Override
+    public void load() {
+        StepCounterService.setAppInForeground(true);
+        getContext().bindService(new Intent(getContext(), StepCounterService.class), connection, 0);
+    }
+
+    // En segundo plano no hay suscripción a pasos: sin suscriptores el servicio no arma un
+    // evento por paso. Al volver, la nueva suscripción recibe el valor actual
+
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        StepCounterService.setAppInForeground(true);
+        paused = false;
+        subscribeSteps();
+    }
+
+    @Override
+    protected void handleOnPause() {
+        super.handleOnPause();
+        StepCounterService.setAppInForeground(false);
+        paused = true;
+        unsubscribeSteps();
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        unsubscribeAll();
+        getContext().unbindService(connection);
+        super.handleOnDestroy();
+    }
+
+    private void unsubscribeAll() {
+        unsubscribeSteps();
+        if (activitySubscription != null) {
+            activitySubscription.unsubscribe();
+            activitySubscription = null;
+        }
+        service = null;
+    }
+
+    private void subscribeSteps() {
+        unsubscribeSteps();
+        if (service == null) return;
+        stepSubscription = service.subscribe(this::onStepsChanged, EventBus.Policy.latest(stepUpdateIntervalMs));
+    }
+
+    private void unsubscribeSteps() {
+        if (stepSubscription == null) return;
+        stepSubscription.unsubscribe();
+        Log.d(TAG, "stepUpdate: " + stepSubscription.deliveredCount() + " enviados, "
+            + stepSubscription.droppedCount() + " conflacionados");
+        stepSubscription = null;
+    }
+
+    // ─── Evento stepUpdate ────────────────────────────────────────────────────
+    // El bus lo conflaciona (el último valor, uno cada stepUpdateIntervalMs) y lo entrega en
+    // el hilo del sensor; acá se descarta si el JS no tiene listeners, sin cruzar el bridge
+
+    private void onStepsChanged(StepCounterService.StepEvent e) {
+        if (!hasListeners(EVENT_STEP_UPDATE)) return;
+        JSObject data = new JSObject();
+        data.put("steps", e.steps);
+        data.put("date", StepStore.formatDay(e.day));
+        notifyListeners(EVENT_STEP_UPDATE, data);
+    }
+
+    // ─── Actividad ────────────────────────────────────────────────────────────
+
+    private void onActivityChanged(StepCounterService.ActivityEvent e) {
+        if (!hasListeners(EVENT_ACTIVITY_CHANGE)) return;
+        JSObject data = new JSObject();
+        data.put("activity", e.activity.name().toLowerCase(Locale.US));
+        data.put("cadence", e.cadence);
+        data.put("since", e.sinceMs);
+        notifyListeners(EVENT_ACTIVITY_CHANGE, data);
+    }
+
+    /**
+     * Actividad actual según la cadencia: { activity: idle|walking|brisk|running, cadence
+     * (pasos/min, últimos 10 s), sustainedCadence (último minuto), since, available }.
+     */
+    @PluginMethod
+    public void getActivity(PluginCall call) {
+        StepCounterService.LocalBinder svc = service;
+        // Se lee en el hilo del sensor para obtener valores consistentes entre sí
+        if (svc == null || !svc.runOnSensorThread(() -> call.resolve(activityResult(svc.classifier())))) {
+            JSObject result = new JSObject();
+            result.put("activity", "idle");
+            result.put("cadence", 0);
+            result.put("sustainedCadence", 0);
+            result.put("available", false);
+            call.resolve(result);
+        }
+    }
+
+    private static JSObject activityResult(CadenceClassifier classifier) {
+        long now = System.currentTimeMillis();
+        JSObject result = new JSObject();
+        result.put("activity", classifier.activity().name().toLowerCase(Locale.US));
+        result.put("cadence", classifier.cadence(now, CadenceClassifier.SHORT_WINDOW_S));
+        result.put("sustainedCadence", classifier.cadence(now, CadenceClassifier.LONG_WINDOW_S));
+        if (classifier.activitySinceMs() >= 0) result.put("since", classifier.activitySinceMs());
+        result.put("available", true);
+        return result;
+    }
+
+    /** Frecuencia máxima de eventos stepUpdate ({@code minIntervalMs}, por defecto 1000). */
+    @PluginMethod
+    public void setStepUpdateRate(PluginCall call) {
+        Long interval = call.getLong("minIntervalMs");
+        if (interval == null || interval < 0) {
+            call.reject("minIntervalMs required");
+            return;
+        }
+        stepUpdateIntervalMs = interval;
+        // Se cambia la suscripción viva: el valor pendiente se entrega con el intervalo nuevo
+        if (stepSubscription != null) {
+            stepSubscription.setIntervalMs(interval);
+        } else if (!paused) {
+            subscribeSteps();
+        }
+        call.resolve();
+    }
 
     @PluginMethod
     public void requestPermissions(PluginCall call) {
@@ -97,6 +259,8 @@ public class StepServicePlugin extends Plugin {
         Log.d(TAG, "startService() llamado");
         Context ctx = getContext();
         Intent intent = new Intent(ctx, StepCounterService.class);
+        Long latency = call.getLong("maxReportLatencyMs");
+        if (latency != null) intent.putExtra(StepCounterService.EXTRA_MAX_REPORT_LATENCY_MS, (long) latency);
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 Log.d(TAG, "Usando startForegroundService (API >= O)");
@@ -122,10 +286,19 @@ public class StepServicePlugin extends Plugin {
 
     @PluginMethod
     public void getStepCount(PluginCall call) {
-        SharedPreferences prefs = getContext().getSharedPreferences(
-            StepCounterService.PREFS_NAME, Context.MODE_PRIVATE);
-        int steps = prefs.getInt(StepCounterService.KEY_STEPS_TODAY, 0);
-        String date = prefs.getString(StepCounterService.KEY_STEP_DATE, "");
+        int steps;
+        int day;
+        StepCounterService.LocalBinder svc = service;
+        if (svc != null) {
+            steps = svc.stepsToday();
+            day = svc.day();
+        } else {
+            // Servicio detenido: lo último guardado (se lee del archivo una vez por proceso)
+            StepStore store = StepCounterService.stepStore(getContext());
+            steps = store.steps();
+            day = store.day();
+        }
+        String date = StepStore.formatDay(day);
         Log.d(TAG, "getStepCount() -> steps=" + steps + ", date=" + date);
 
         JSObject result = new JSObject();
@@ -134,6 +307,50 @@ public class StepServicePlugin extends Plugin {
         call.resolve(result);
     }
 
+    /**
+     * Pasos agrupados por minuto, hora, día o semana entre {@code from} y {@code to} (epoch ms,
+     * por defecto las últimas 24 h). Lee los totales ya acumulados: costo constante por bucket.
+     */
+    @PluginMethod
+    public void getStepHistory(PluginCall call) {
+        StepHistory.Resolution resolution = StepHistory.Resolution.fromName(call.getString("resolution", "hour"));
+        if (resolution == null) {
+            call.reject("resolution must be minute, hour, day or week");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long toArg = call.getLong("to");
+        long to = (toArg != null) ? toArg : now;
+        Long fromArg = call.getLong("from");
+        long from = (fromArg != null) ? fromArg : to - 24 * 60 * 60 * 1000L;
+
+        StepHistory history = StepCounterService.stepHistory(getContext());
+        if (history == null) {
+            call.reject("Step history unavailable");
+            return;
+        }
+        if (history.countBuckets(resolution, from, to, now) > MAX_HISTORY_BUCKETS) {
+            call.reject("Range too large: max " + MAX_HISTORY_BUCKETS + " buckets");
+            return;
+        }
+
+        JSArray buckets = new JSArray();
+        int[] total = new int[1];
+        history.query(resolution, from, to, now, (startMs, steps) -> {
+            JSObject b = new JSObject();
+            b.put("start", startMs);
+            b.put("steps", steps);
+            buckets.put(b);
+            total[0] += steps;
+        });
+
+        JSObject result = new JSObject();
+        result.put("resolution", resolution.name().toLowerCase(Locale.US));
+        result.put("buckets", buckets);
+        result.put("total", total[0]);
+        call.resolve(result);
+    }
+
     @PluginMethod
     public void setGoal(PluginCall call) {
         Integer goal = call.getInt("goal");
@@ -143,10 +360,8 @@ public class StepServicePlugin extends Plugin {
             call.reject("goal required");
             return;
         }
-        getContext().getSharedPreferences(StepCounterService.PREFS_NAME, Context.MODE_PRIVATE)
-            .edit()
-            .putInt(StepCounterService.KEY_STEPS_GOAL, goal)
-            .apply();
+        StepCounterService.setStepsGoal(getContext(), goal);
+        StepCounterService.refreshWidget(getContext());
         Log.d(TAG, "setGoal() exitoso, guardado goal=" + goal);
         call.resolve();
     }
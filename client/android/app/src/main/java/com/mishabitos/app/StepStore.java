@@ -0,0 +1,154 @@
+package com.mishabitos.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Contador de pasos del día con persistencia write-behind.
+ *
+ * La copia en memoria es la autoridad: el servicio la actualiza en cada evento del sensor
+ * y los lectores del mismo proceso (widget, plugin) la leen sin tocar disco. A disco va
+ * con {@link #flush}, que reescribe un archivo de {@link #FILE_SIZE} bytes de forma atómica
+ * (temporal + fsync + rename): un corte a mitad de escritura deja la versión anterior.
+ *
+ * Layout (little endian):
+ * <pre>
+ *   magic (int), version (int), day yyyymmdd (int), steps (int),
+ *   sensorBaseline (long), updatedAtMs (long), crc32 de lo anterior (int), padding
+ * </pre>
+ *
+ * Thread-safe: escribe el hilo del sensor, leen otros hilos.
+ */
+final class StepStore {
+
+    static final int FILE_SIZE = 40;
+
+    private static final int MAGIC = 0x48425350; // "HBSP"
+    private static final int VERSION = 1;
+    private static final int CRC_OFFSET = 32;
+
+    private final File file;
+    private final File tmp;
+    private final byte[] buffer = new byte[FILE_SIZE];
+    private final ByteBuffer bytes = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    private int day;
+    private int steps;
+    private long baseline = -1;
+    private long updatedAtMs;
+    private boolean dirty;
+    private boolean loaded;
+
+    StepStore(File file) {
+        this.file = file;
+        this.tmp = new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Lee el archivo. Devuelve false si no existe o está corrupto, en cuyo caso el
+     * contador queda vacío (día 0, baseline -1).
+     */
+    synchronized boolean load() {
+        loaded = true;
+        if (!file.exists() || file.length() < FILE_SIZE) return false;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(buffer);
+        } catch (IOException e) {
+            return false;
+        }
+        crc.reset();
+        crc.update(buffer, 0, CRC_OFFSET);
+        if (bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION
+                || bytes.getInt(CRC_OFFSET) != (int) crc.getValue()) {
+            return false;
+        }
+        day = bytes.getInt(8);
+        steps = bytes.getInt(12);
+        baseline = bytes.getLong(16);
+        updatedAtMs = bytes.getLong(24);
+        dirty = false;
+        return true;
+    }
+
+    synchronized boolean isLoaded() { return loaded; }
+
+    synchronized int day() { return day; }
+
+    synchronized int steps() { return steps; }
+
+    synchronized long baseline() { return baseline; }
+
+    synchronized long updatedAtMs() { return updatedAtMs; }
+
+    synchronized boolean isDirty() { return dirty; }
+
+    /**
+     * Actualiza el contador en memoria. Devuelve true si cambió el día o el baseline: eso
+     * conviene persistirlo enseguida, porque los pasos se pueden recalcular a partir del
+     * baseline (el sensor es acumulado) pero el baseline no.
+     */
+    synchronized boolean update(int day, int steps, long baseline, long nowMs) {
+        boolean critical = day != this.day || baseline != this.baseline;
+        if (!critical && steps == this.steps) return false;
+        this.day = day;
+        this.steps = steps;
+        this.baseline = baseline;
+        this.updatedAtMs = nowMs;
+        dirty = true;
+        return critical;
+    }
+
+    /** Escribe a disco si hay cambios. */
+    synchronized void flush() throws IOException {
+        if (!dirty) return;
+        bytes.putInt(0, MAGIC);
+        bytes.putInt(4, VERSION);
+        bytes.putInt(8, day);
+        bytes.putInt(12, steps);
+        bytes.putLong(16, baseline);
+        bytes.putLong(24, updatedAtMs);
+        crc.reset();
+        crc.update(buffer, 0, CRC_OFFSET);
+        bytes.putInt(CRC_OFFSET, (int) crc.getValue());
+        bytes.putInt(CRC_OFFSET + 4, 0);
+
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(buffer);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("No se pudo reemplazar " + file);
+        }
+        dirty = false;
+    }
+
+    /** Día como entero yyyymmdd. */
+    static int dayKey(int year, int month, int dayOfMonth) {
+        return year * 10000 + month * 100 + dayOfMonth;
+    }
+
+    /** yyyymmdd → "yyyy-MM-dd"; cadena vacía si no hay día. */
+    static String formatDay(int day) {
+        if (day <= 0) return "";
+        int y = day / 10000, m = (day / 100) % 100, d = day % 100;
+        return y + (m < 10 ? "-0" : "-") + m + (d < 10 ? "-0" : "-") + d;
+    }
+
+    /** "yyyy-MM-dd" → yyyymmdd; 0 si no se puede leer. */
+    static int parseDay(String date) {
+        if (date == null || date.length() != 10) return 0;
+        try {
+            return dayKey(Integer.parseInt(date.substring(0, 4)),
+                    Integer.parseInt(date.substring(5, 7)),
+                    Integer.parseInt(date.substring(8, 10)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -3,42 +3,125 @@ package com.mishabitos.app;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.widget.RemoteViews;
 
 import java.util.Locale;
 
+/**
+ * Widget de pasos. El sistema lo redibuja entero en {@link #onUpdate}; el servicio, en cambio,
+ * llama a {@link #pushSteps} y sólo manda por IPC las vistas que cambiaron.
+ */
 public class StepWidget extends AppWidgetProvider {
 
+    // Cachés del proceso, protegidas por StepWidget.class. Los IDs se invalidan cuando el
+    // sistema avisa que se agregó, quitó o restauró un widget
+    private static int[] cachedIds;
+    private static PendingIntent clickIntent;
+    // Lo último que se mandó a los widgets
+    private static final StepWidgetState drawn = new StepWidgetState();
+
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
+        // Los pasos pueden estar esperando en el lote del sensor: pedir que se entreguen
+        StepCounterService.requestFlush();
+        invalidateIds();
+        int steps = StepCounterService.stepStore(context).steps();
+        synchronized (StepWidget.class) {
+            // Bajo el mismo lock que pushSteps, para que los envíos no se crucen
+            int goal = StepCounterService.stepsGoal(context);
+            appWidgetManager.updateAppWidget(appWidgetIds, fullViews(context, steps, goal));
+            // Los demás widgets pueden mostrar otra cosa: el próximo push manda todo a todos
+            drawn.reset();
         }
     }
 
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
-        SharedPreferences prefs = context.getSharedPreferences(
-            StepCounterService.PREFS_NAME, Context.MODE_PRIVATE);
-        int steps = prefs.getInt(StepCounterService.KEY_STEPS_TODAY, 0);
-        int goal = prefs.getInt(StepCounterService.KEY_STEPS_GOAL, 8000);
+    @Override
+    public void onEnabled(Context context) {
+        invalidateIds();
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        invalidateIds();
+    }
+
+    @Override
+    public void onDisabled(Context context) {
+        invalidateIds();
+    }
+
+    @Override
+    public void onRestored(Context context, int[] oldWidgetIds, int[] newWidgetIds) {
+        invalidateIds();
+    }
+
+    /**
+     * Lleva {@code steps} a todos los widgets con un solo {@code partiallyUpdateAppWidget} que
+     * incluye sólo el texto o el bucket de la barra que cambiaron. No hace nada si no hay
+     * widgets o si se vería igual. Se puede llamar desde cualquier hilo.
+     */
+    static void pushSteps(Context context, int steps) {
+        // Todo bajo el lock, incluido el envío: el servicio (hilo del sensor) y setGoal (hilo
+        // del plugin) empujan a la vez, y un diff enviado después que uno más nuevo dejaría
+        // el widget con valores viejos. La meta también se lee adentro por lo mismo
+        synchronized (StepWidget.class) {
+            int[] ids = widgetIds(context);
+            if (ids.length == 0) return;
+            int goal = StepCounterService.stepsGoal(context);
+            int changed = drawn.update(steps, goal);
+            if (changed == StepWidgetState.UNCHANGED) return;
 
+            RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_steps);
+            if ((changed & StepWidgetState.STEPS_CHANGED) != 0) {
+                views.setTextViewText(R.id.tv_step_count, formatNumber(steps));
+            }
+            if ((changed & StepWidgetState.GOAL_CHANGED) != 0) {
+                views.setTextViewText(R.id.tv_step_goal, "/ " + formatNumber(goal));
+            }
+            if ((changed & StepWidgetState.PROGRESS_CHANGED) != 0) {
+                views.setProgressBar(R.id.pb_steps, StepWidgetState.PROGRESS_BUCKETS,
+                        StepWidgetState.bucket(steps, goal), false);
+            }
+            AppWidgetManager.getInstance(context).partiallyUpdateAppWidget(ids, views);
+        }
+    }
+
+    /** IDs de los widgets de pasos en pantalla; vacío si no hay ninguno. */
+    static synchronized int[] widgetIds(Context context) {
+        if (cachedIds == null) {
+            cachedIds = AppWidgetManager.getInstance(context)
+                    .getAppWidgetIds(new ComponentName(context, StepWidget.class));
+        }
+        return cachedIds;
+    }
+
+    private static synchronized void invalidateIds() {
+        cachedIds = null;
+    }
+
+    private static RemoteViews fullViews(Context context, int steps, int goal) {
         RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_steps);
         views.setTextViewText(R.id.tv_step_count, formatNumber(steps));
         views.setTextViewText(R.id.tv_step_goal, "/ " + formatNumber(goal));
-        views.setProgressBar(R.id.pb_steps, goal, Math.min(steps, goal), false);
-
+        views.setProgressBar(R.id.pb_steps, StepWidgetState.PROGRESS_BUCKETS,
+                StepWidgetState.bucket(steps, goal), false);
         // Toque en el widget → abre la app
-        Intent intent = new Intent(context, MainActivity.class);
-        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-            context, 1, intent,
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-        views.setOnClickPendingIntent(R.id.widget_root, pendingIntent);
-
-        appWidgetManager.updateAppWidget(appWidgetId, views);
+        views.setOnClickPendingIntent(R.id.widget_root, clickIntent(context));
+        return views;
+    }
+
+    private static synchronized PendingIntent clickIntent(Context context) {
+        if (clickIntent == null) {
+            Intent intent = new Intent(context, MainActivity.class);
+            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            clickIntent = PendingIntent.getActivity(
+                context.getApplicationContext(), 1, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        }
+        return clickIntent;
     }
 
     private static String formatNumber(int n) {
@@ -0,0 +1,47 @@
+package com.mishabitos.app;
+
+/**
+ * Lo último que se dibujó en los widgets de pasos, para mandar sólo lo que cambió.
+ *
+ * El texto depende sólo de los números (pasos y meta), así que se comparan enteros sin
+ * formatear nada. La barra se compara por bucket ({@link #PROGRESS_BUCKETS} niveles): en
+ * la mayoría de los pasos no cambia.
+ */
+final class StepWidgetState {
+
+    static final int UNCHANGED = 0;
+    static final int STEPS_CHANGED = 1;
+    static final int GOAL_CHANGED = 1 << 1;
+    static final int PROGRESS_CHANGED = 1 << 2;
+
+    static final int PROGRESS_BUCKETS = 100;
+
+    private int steps = -1;
+    private int goal = -1;
+    private int bucket = -1;
+
+    /** Registra lo que se va a dibujar; devuelve qué partes cambiaron respecto de lo anterior. */
+    int update(int steps, int goal) {
+        int b = bucket(steps, goal);
+        int changed = UNCHANGED;
+        if (steps != this.steps) changed |= STEPS_CHANGED;
+        if (goal != this.goal) changed |= GOAL_CHANGED;
+        if (b != bucket) changed |= PROGRESS_CHANGED;
+        this.steps = steps;
+        this.goal = goal;
+        this.bucket = b;
+        return changed;
+    }
+
+    /** Olvida lo dibujado (p. ej. tras una actualización completa hecha por el sistema). */
+    void reset() {
+        steps = -1;
+        goal = -1;
+        bucket = -1;
+    }
+
+    static int bucket(int steps, int goal) {
+        if (goal <= 0) return PROGRESS_BUCKETS;
+        return (int) Math.min(PROGRESS_BUCKETS, (long) Math.max(0, steps) * PROGRESS_BUCKETS / goal);
+    }
+}
@@ -0,0 +1,265 @@
+package com.mishabitos.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cliente HTTP nativo de la app para hablar directo con Supabase (PostgREST).
+ *
+ * <ul>
+ *   <li>La sesión (url, anon key, access token) que guarda {@link WidgetAuthPlugin} se lee de
+ *       WidgetPrefs una vez y queda en memoria; el plugin la actualiza con {@link #setSession}.</li>
+ *   <li>Conexiones keep-alive: la respuesta se lee entera y no se llama a {@code disconnect()},
+ *       así HttpURLConnection devuelve el socket al pool y el próximo request lo reutiliza.</li>
+ *   <li>Timeouts explícitos de conexión y lectura.</li>
+ *   <li>gzip: las respuestas las descomprime HttpURLConnection (manda Accept-Encoding solo);
+ *       los cuerpos grandes se mandan comprimidos. No está confirmado que el gateway de
+ *       Supabase descomprima cuerpos: si contesta 415, o un 400 de PostgREST por JSON ilegible
+ *       (PGRST102), se reenvía sin comprimir, y sólo si así pasa se deja de comprimir en el
+ *       proceso. Cualquier otro 400 es un error del request y vuelve tal cual.</li>
+ *   <li>Latencia de cada request en {@link #stats()}.</li>
+ * </ul>
+ * Los requests en segundo plano van a {@link #executor()}; el I/O local que espera la UI va
+ * a {@link LocalIo}, para no quedar detrás de un request lento.
+ *
+ * Thread-safe.
+ */
+final class SupabaseClient {
+
+    private static final String TAG = "SupabaseClient";
+    static final String PREFS_NAME = "WidgetPrefs";
+    static final String KEY_URL = "supabase_url";
+    static final String KEY_ANON_KEY = "supabase_key";
+    static final String KEY_TOKEN = "access_token";
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 20_000;
+    private static final int GZIP_MIN_BYTES = 1024;
+    private static final int MAX_RESPONSE_BYTES = 8 * 1024 * 1024;
+
+    // Pocos hilos; cola sin límite porque lo encolan los jobs desde el hilo principal, donde
+    // no puede correr red (y sólo hay un job de cada tipo a la vez)
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            r -> new Thread(r, "SupabaseIO"));
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static SupabaseClient instance;
+
+    /** Sesión guardada. Inmutable: se reemplaza entera. */
+    static final class Session {
+        final String url;
+        final String key;
+        final String token;
+
+        Session(String url, String key, String token) {
+            this.url = url;
+            this.key = key;
+            this.token = token;
+        }
+
+        /** Id del usuario (claim {@code sub} del access token); null si el token no se puede leer. */
+        String userId() {
+            String[] parts = token.split("\\.");
+            if (parts.length < 2) return null;
+            try {
+                byte[] payload = Base64.decode(parts[1], Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+                return new JSONObject(new String(payload, StandardCharsets.UTF_8)).optString("sub", null);
+            } catch (IllegalArgumentException | JSONException e) {
+                return null;
+            }
+        }
+    }
+
+    /** Respuesta ya leída. */
+    static final class Response {
+        final int code;
+        final byte[] body;
+        private final HttpURLConnection conn;
+
+        private Response(int code, byte[] body, HttpURLConnection conn) {
+            this.code = code;
+            this.body = body;
+            this.conn = conn;
+        }
+
+        boolean isSuccessful() { return code >= 200 && code < 300; }
+
+        String header(String name) { return conn.getHeaderField(name); }
+
+        String bodyString() { return new String(body, StandardCharsets.UTF_8); }
+    }
+
+    private final Context context;
+    private volatile Session session;
+    private boolean sessionLoaded;
+    private volatile boolean gzipRequests = true;
+    private final LatencyStats stats = new LatencyStats();
+
+    private SupabaseClient(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    static synchronized SupabaseClient get(Context context) {
+        if (instance == null) instance = new SupabaseClient(context);
+        return instance;
+    }
+
+    /** Para requests de red; el I/O local va a {@link LocalIo#executor()}. */
+    static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    // ─── Sesión ───────────────────────────────────────────────────────────────
+
+    /** La sesión actual, o null si la app nunca guardó una. */
+    Session session() {
+        Session s = session;
+        if (s != null) return s;
+        synchronized (this) {
+            if (!sessionLoaded) {
+                SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                String url = prefs.getString(KEY_URL, null);
+                String key = prefs.getString(KEY_ANON_KEY, null);
+                String token = prefs.getString(KEY_TOKEN, null);
+                if (url != null && key != null && token != null) session = new Session(url, key, token);
+                sessionLoaded = true;
+            }
+            return session;
+        }
+    }
+
+    boolean hasSession() {
+        return session() != null;
+    }
+
+    /** Guarda la sesión en WidgetPrefs y la deja en memoria. */
+    synchronized void setSession(String url, String key, String token) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_TOKEN, token)
+                .putString(KEY_URL, url)
+                .putString(KEY_ANON_KEY, key)
+                .apply();
+        session = new Session(url, key, token);
+        sessionLoaded = true;
+    }
+
+    // ─── Requests ─────────────────────────────────────────────────────────────
+
+    /**
+     * Request a {@code path} (p. ej. {@code /rest/v1/expenses?...}) con la sesión actual.
+     * {@code body} y {@code prefer} pueden ser null. Lanza IOException si no hay sesión o
+     * no hubo respuesta; un error HTTP vuelve como {@link Response} con su código.
+     */
+    Response request(String method, String path, byte[] body, String prefer) throws IOException {
+        Session s = session();
+        if (s == null) throw new IOException("Sin sesión guardada");
+        boolean gzip = body != null && body.length >= GZIP_MIN_BYTES && gzipRequests;
+        Response r = execute(s, method, path, body, prefer, gzip);
+        if (gzip && isUndecodableBody(r)) {
+            Response plain = execute(s, method, path, body, prefer, false);
+            if (!isUndecodableBody(plain)) {
+                // Sin comprimir sí lo leyó: el problema era el gzip
+                Log.w(TAG, "El servidor no acepta cuerpos gzip (HTTP " + r.code + "), se desactiva");
+                gzipRequests = false;
+            }
+            r = plain;
+        }
+        return r;
+    }
+
+    /** 415, o el 400 con que PostgREST contesta un cuerpo que no pudo leer como JSON. */
+    private static boolean isUndecodableBody(Response r) {
+        if (r.code == 415) return true;
+        if (r.code != 400) return false;
+        try {
+            return "PGRST102".equals(new JSONObject(r.bodyString()).optString("code"));
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    private Response execute(Session s, String method, String path, byte[] body, String prefer,
+                             boolean gzip) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        boolean ok = false;
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(s.url + path).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setRequestMethod(method);
+            conn.setRequestProperty("apikey", s.key);
+            conn.setRequestProperty("Authorization", "Bearer " + s.token);
+            if (prefer != null) conn.setRequestProperty("Prefer", prefer);
+            if (body != null) {
+                byte[] payload = gzip ? gzip(body) : body;
+                conn.setRequestProperty("Content-Type", "application/json");
+                if (gzip) conn.setRequestProperty("Content-Encoding", "gzip");
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(payload.length);
+                try (OutputStream os = conn.getOutputStream()) {
+                    os.write(payload);
+                }
+            }
+            int code = conn.getResponseCode();
+            InputStream in = (code >= 400) ? conn.getErrorStream() : conn.getInputStream();
+            Response r = new Response(code, readFully(in), conn);
+            ok = r.isSuccessful();
+            return r;
+        } finally {
+            long ms = SystemClock.elapsedRealtime() - start;
+            stats.record(ms, ok);
+            Log.d(TAG, method + " " + path.split("\\?", 2)[0] + " " + ms + " ms" + (ok ? "" : " (error)"));
+        }
+    }
+
+    /** Lee la respuesta hasta el final: requisito para que la conexión vuelva al pool. */
+    private static byte[] readFully(InputStream in) throws IOException {
+        if (in == null) return new byte[0];
+        try (InputStream is = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                if (out.size() + n > MAX_RESPONSE_BYTES) throw new IOException("Respuesta demasiado grande");
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    /** Latencias de todos los requests del proceso. */
+    LatencyStats stats() {
+        return stats;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mishabitos.app;
+
+/**
+ * Buffer de puntos GPS en columnas primitivas (lat, lng, timestamp, speed).
+ *
+ * Un único escritor (el callback GPS) agrega puntos; cualquier cantidad de lectores
+ * toma snapshots sin bloquear al escritor. Los datos se guardan en chunks de tamaño
+ * fijo que nunca se mueven ni se reescriben, así que un lector sólo necesita leer
+ * {@code size} (volatile) para saber hasta qué índice los puntos están completos.
+ */
+final class TrackBuffer {
+
+    private static final int CHUNK_SHIFT = 9;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // 512 puntos por chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Columnas de una sesión. {@link #clear()} reemplaza la instancia completa en lugar de
+     * reutilizarla, así un snapshot tomado antes sigue viendo datos consistentes.
+     */
+    private static final class Columns {
+        volatile double[][] lat = new double[4][];
+        volatile double[][] lng = new double[4][];
+        volatile long[][] ts = new long[4][];
+        volatile float[][] speed = new float[4][];
+        volatile int size;
+    }
+
+    private volatile Columns current = new Columns();
+
+    // ─── Escritor ─────────────────────────────────────────────────────────────
+
+    /** Agrega un punto. Sólo debe llamarse desde un único hilo escritor. */
+    void append(double lat, double lng, long timestamp, float speed) {
+        Columns c = current;
+        int n = c.size;
+        int chunk = n >>> CHUNK_SHIFT;
+        int offset = n & CHUNK_MASK;
+
+        if (offset == 0) ensureChunk(c, chunk);
+
+        c.lat[chunk][offset] = lat;
+        c.lng[chunk][offset] = lng;
+        c.ts[chunk][offset] = timestamp;
+        c.speed[chunk][offset] = speed;
+
+        // Publicación: todo lo escrito antes es visible para quien lea el nuevo size
+        c.size = n + 1;
+    }
+
+    /** Descarta todos los puntos. Los snapshots previos conservan sus datos. */
+    void clear() {
+        current = new Columns();
+    }
+
+    private static void ensureChunk(Columns c, int chunk) {
+        double[][] lat = c.lat;
+        double[][] lng = c.lng;
+        long[][] ts = c.ts;
+        float[][] speed = c.speed;
+
+        if (chunk >= lat.length) {
+            int newLen = lat.length * 2;
+            lat = copyOf(lat, newLen);
+            lng = copyOf(lng, newLen);
+            ts = copyOf(ts, newLen);
+            speed = copyOf(speed, newLen);
+        }
+        lat[chunk] = new double[CHUNK_SIZE];
+        lng[chunk] = new double[CHUNK_SIZE];
+        ts[chunk] = new long[CHUNK_SIZE];
+        speed[chunk] = new float[CHUNK_SIZE];
+
+        // Las referencias a chunks se publican antes que el size que las cubre
+        c.lat = lat;
+        c.lng = lng;
+        c.ts = ts;
+        c.speed = speed;
+    }
+
+    private static double[][] copyOf(double[][] src, int len) {
+        double[][] dst = new double[len][];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    private static long[][] copyOf(long[][] src, int len) {
+        long[][] dst = new long[len][];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    private static float[][] copyOf(float[][] src, int len) {
+        float[][] dst = new float[len][];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    // ─── Lectores ─────────────────────────────────────────────────────────────
+
+    int size() {
+        return current.size;
+    }
+
+    /** Vista inmutable de los puntos publicados al momento de la llamada. No bloquea. */
+    Snapshot snapshot() {
+        Columns c = current;
+        int n = c.size; // leer size primero: los chunks leídos después lo cubren
+        return new Snapshot(n, c.lat, c.lng, c.ts, c.speed);
+    }
+
+    static final class Snapshot {
+        private final int size;
+        private final double[][] lat;
+        private final double[][] lng;
+        private final long[][] ts;
+        private final float[][] speed;
+
+        private Snapshot(int size, double[][] lat, double[][] lng, long[][] ts, float[][] speed) {
+            this.size = size;
+            this.lat = lat;
+            this.lng = lng;
+            this.ts = ts;
+            this.speed = speed;
+        }
+
+        int size() { return size; }
+
+        double lat(int i) { checkIndex(i); return lat[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+
+        double lng(int i) { checkIndex(i); return lng[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+
+        long timestamp(int i) { checkIndex(i); return ts[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+
+        float speed(int i) { checkIndex(i); return speed[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+
+        private void checkIndex(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("index=" + i + ", size=" + size);
+            }
+        }
+    }
+}
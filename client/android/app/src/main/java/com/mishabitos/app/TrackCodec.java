@@ -0,0 +1,197 @@
+package com.mishabitos.app;
+
+import java.util.Arrays;
+
+/**
+ * Codificación compacta de tracks [lat, lng, timestamp, speed].
+ *
+ * Formato binario (v1), todo en varints:
+ * <pre>
+ *   version, count
+ *   primer punto:  zz(lat), zz(lng), zz(ts), zz(speed)       valores absolutos
+ *   siguientes:    zz(Δlat), zz(Δlng), zz(ΔΔts), zz(Δspeed)   deltas
+ * </pre>
+ * lat/lng se cuantizan a 1e-6 grados (~11 cm), speed a 0.01 m/s y los timestamps van
+ * como delta-of-delta: con GPS a intervalo fijo casi siempre valen 0 (1 byte).
+ * "zz" es zigzag para que los deltas negativos chicos también ocupen pocos bytes.
+ *
+ * También genera la forma texto compatible con encoded polyline (precisión 6, sólo lat/lng).
+ */
+final class TrackCodec {
+
+    static final int VERSION = 1;
+    static final double COORD_SCALE = 1e6;
+    static final double SPEED_SCALE = 100.0;
+
+    private TrackCodec() {}
+
+    // ─── Binario ──────────────────────────────────────────────────────────────
+
+    static byte[] encode(TrackBuffer.Snapshot path) {
+        int n = path.size();
+        ByteWriter out = new ByteWriter(8 + n * 6);
+        out.writeVarint(VERSION);
+        out.writeVarint(n);
+
+        long prevLat = 0, prevLng = 0, prevTs = 0, prevDelta = 0, prevSpeed = 0;
+        for (int i = 0; i < n; i++) {
+            long lat = Math.round(path.lat(i) * COORD_SCALE);
+            long lng = Math.round(path.lng(i) * COORD_SCALE);
+            long ts = path.timestamp(i);
+            long speed = Math.round(path.speed(i) * SPEED_SCALE);
+
+            if (i == 0) {
+                out.writeVarint(zigzag(lat));
+                out.writeVarint(zigzag(lng));
+                out.writeVarint(zigzag(ts));
+                out.writeVarint(zigzag(speed));
+            } else {
+                long delta = ts - prevTs;
+                out.writeVarint(zigzag(lat - prevLat));
+                out.writeVarint(zigzag(lng - prevLng));
+                out.writeVarint(zigzag(delta - prevDelta));
+                out.writeVarint(zigzag(speed - prevSpeed));
+                prevDelta = delta;
+            }
+            prevLat = lat;
+            prevLng = lng;
+            prevTs = ts;
+            prevSpeed = speed;
+        }
+        return out.toByteArray();
+    }
+
+    /** Decodifica {@code data} entregando cada punto al sink. Devuelve la cantidad de puntos. */
+    static int decode(byte[] data, PathSimplifier.Sink sink) {
+        ByteReader in = new ByteReader(data);
+        long version = in.readVarint();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported track version " + version);
+        long count = in.readVarint();
+        if (count < 0 || count > Integer.MAX_VALUE) throw new IllegalArgumentException("Invalid count " + count);
+
+        long lat = 0, lng = 0, ts = 0, delta = 0, speed = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                lat = unzigzag(in.readVarint());
+                lng = unzigzag(in.readVarint());
+                ts = unzigzag(in.readVarint());
+                speed = unzigzag(in.readVarint());
+            } else {
+                lat += unzigzag(in.readVarint());
+                lng += unzigzag(in.readVarint());
+                delta += unzigzag(in.readVarint());
+                ts += delta;
+                speed += unzigzag(in.readVarint());
+            }
+            sink.accept(lat / COORD_SCALE, lng / COORD_SCALE, ts, (float) (speed / SPEED_SCALE));
+        }
+        return (int) count;
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // ─── Encoded polyline (precisión 6) ───────────────────────────────────────
+
+    static String encodePolyline(TrackBuffer.Snapshot path) {
+        StringBuilder sb = new StringBuilder(path.size() * 8);
+        long prevLat = 0, prevLng = 0;
+        for (int i = 0; i < path.size(); i++) {
+            long lat = Math.round(path.lat(i) * COORD_SCALE);
+            long lng = Math.round(path.lng(i) * COORD_SCALE);
+            appendPolylineValue(sb, lat - prevLat);
+            appendPolylineValue(sb, lng - prevLng);
+            prevLat = lat;
+            prevLng = lng;
+        }
+        return sb.toString();
+    }
+
+    private static void appendPolylineValue(StringBuilder sb, long value) {
+        long v = zigzag(value);
+        while (v >= 0x20) {
+            sb.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>>= 5;
+        }
+        sb.append((char) (v + 63));
+    }
+
+    /** Decodifica una polyline de precisión 6; timestamp y speed se entregan en 0. */
+    static int decodePolyline(String encoded, PathSimplifier.Sink sink) {
+        int index = 0, count = 0;
+        long lat = 0, lng = 0;
+        long[] result = new long[1];
+        while (index < encoded.length()) {
+            index = readPolylineValue(encoded, index, result);
+            lat += result[0];
+            index = readPolylineValue(encoded, index, result);
+            lng += result[0];
+            sink.accept(lat / COORD_SCALE, lng / COORD_SCALE, 0, 0f);
+            count++;
+        }
+        return count;
+    }
+
+    private static int readPolylineValue(String s, int index, long[] out) {
+        long v = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (index >= s.length()) throw new IllegalArgumentException("Truncated polyline");
+            b = s.charAt(index++) - 63;
+            v |= (long) (b & 0x1f) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        out[0] = unzigzag(v);
+        return index;
+    }
+
+    // ─── Buffers ──────────────────────────────────────────────────────────────
+
+    private static final class ByteWriter {
+        private byte[] buf;
+        private int size;
+
+        ByteWriter(int initialCapacity) {
+            buf = new byte[Math.max(16, initialCapacity)];
+        }
+
+        void writeVarint(long v) {
+            if (size + 10 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    private static final class ByteReader {
+        private final byte[] buf;
+        private int pos;
+
+        ByteReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        long readVarint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= buf.length) throw new IllegalArgumentException("Truncated track data");
+                byte b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
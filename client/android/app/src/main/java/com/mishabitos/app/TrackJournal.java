@@ -0,0 +1,190 @@
+package com.mishabitos.app;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Journal append-only de la sesión de caminata en curso, mapeado en memoria.
+ *
+ * Cada punto guardado se escribe como un registro fijo de {@link #RECORD_SIZE} bytes
+ * directamente sobre un {@link MappedByteBuffer}: no hay syscall por punto y, si el
+ * proceso muere, el kernel conserva las páginas escritas. Al reabrir el archivo,
+ * {@link #hasActiveSession()} + {@link #replay} reconstruyen la sesión.
+ *
+ * Layout (little endian):
+ * <pre>
+ *   header (64 B): magic, version, state, count, sessionStartMs, distanceMeters,
+ *                  toleranceMeters (double), profile (int)
+ *   registros:     lat (double), lng (double), timestamp (long), speed (float), padding
+ * </pre>
+ *
+ * No es thread-safe: se usa desde el mismo hilo que escribe el path.
+ */
+final class TrackJournal implements Closeable {
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+
+    private static final int MAGIC = 0x4842544A; // "HBTJ"
+    private static final int VERSION = 2;
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_ACTIVE = 1;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_STATE = 8;
+    private static final int OFF_COUNT = 12;
+    private static final int OFF_START = 16;
+    private static final int OFF_DISTANCE = 24;
+    private static final int OFF_TOLERANCE = 32;
+    private static final int OFF_PROFILE = 40;
+
+    private static final int INITIAL_CAPACITY = 4096; // registros (~128 KB)
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int count;
+
+    private TrackJournal(RandomAccessFile file) {
+        this.file = file;
+        this.channel = file.getChannel();
+    }
+
+    /** Abre (o crea) el journal sin modificar una sesión que haya quedado activa. */
+    static TrackJournal open(File path) throws IOException {
+        TrackJournal j = new TrackJournal(new RandomAccessFile(path, "rw"));
+        try {
+            j.load();
+        } catch (IOException | RuntimeException e) {
+            j.close();
+            throw e;
+        }
+        return j;
+    }
+
+    private void load() throws IOException {
+        long length = channel.size();
+        int existing = (length > HEADER_SIZE) ? (int) ((length - HEADER_SIZE) / RECORD_SIZE) : 0;
+        remap(Math.max(INITIAL_CAPACITY, existing));
+
+        if (length < HEADER_SIZE || map.getInt(OFF_MAGIC) != MAGIC || map.getInt(OFF_VERSION) != VERSION) {
+            writeEmptyHeader();
+            return;
+        }
+        // Un count mayor a lo que entra en el archivo sólo puede venir de un header corrupto
+        count = Math.max(0, Math.min(map.getInt(OFF_COUNT), existing));
+    }
+
+    private void remap(int newCapacity) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * RECORD_SIZE);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = newCapacity;
+    }
+
+    private void writeEmptyHeader() {
+        map.putInt(OFF_MAGIC, MAGIC);
+        map.putInt(OFF_VERSION, VERSION);
+        map.putInt(OFF_STATE, STATE_IDLE);
+        map.putInt(OFF_COUNT, 0);
+        map.putLong(OFF_START, 0);
+        map.putDouble(OFF_DISTANCE, 0);
+        map.putDouble(OFF_TOLERANCE, 0);
+        map.putInt(OFF_PROFILE, 0);
+        count = 0;
+    }
+
+    // ─── Estado ───────────────────────────────────────────────────────────────
+
+    /** true si quedó una sesión sin finalizar (proceso terminado a mitad de caminata). */
+    boolean hasActiveSession() {
+        return map.getInt(OFF_STATE) == STATE_ACTIVE;
+    }
+
+    int count() { return count; }
+
+    long sessionStartMs() { return map.getLong(OFF_START); }
+
+    double distanceMeters() { return map.getDouble(OFF_DISTANCE); }
+
+    /** Tolerancia de simplificación con la que empezó la sesión. */
+    double toleranceMeters() { return map.getDouble(OFF_TOLERANCE); }
+
+    /** Perfil de muestreo con el que empezó la sesión (lo interpreta quien lo guardó). */
+    int profile() { return map.getInt(OFF_PROFILE); }
+
+    /** Timestamp del último registro, o -1 si la sesión está vacía. */
+    long lastTimestamp() {
+        return (count == 0) ? -1 : map.getLong(recordOffset(count - 1) + 16);
+    }
+
+    // ─── Escritura ────────────────────────────────────────────────────────────
+
+    /**
+     * Descarta lo anterior y marca una sesión nueva como activa. La tolerancia y el perfil
+     * quedan en el header para retomar la sesión con la misma configuración.
+     */
+    void begin(long sessionStartMs, double toleranceMeters, int profile) {
+        writeEmptyHeader();
+        map.putLong(OFF_START, sessionStartMs);
+        map.putDouble(OFF_TOLERANCE, toleranceMeters);
+        map.putInt(OFF_PROFILE, profile);
+        map.putInt(OFF_STATE, STATE_ACTIVE);
+    }
+
+    void append(double lat, double lng, long timestamp, float speed) throws IOException {
+        if (count == capacity) remap(Math.max(INITIAL_CAPACITY, capacity * 2));
+        int off = recordOffset(count);
+        map.putDouble(off, lat);
+        map.putDouble(off + 8, lng);
+        map.putLong(off + 16, timestamp);
+        map.putFloat(off + 24, speed);
+        // El count se escribe después del registro: un registro a medias nunca se cuenta
+        map.putInt(OFF_COUNT, ++count);
+    }
+
+    void setDistanceMeters(double distanceMeters) {
+        map.putDouble(OFF_DISTANCE, distanceMeters);
+    }
+
+    /**
+     * Cierra la sesión: la marca como finalizada, baja las páginas a disco y compacta el
+     * archivo al tamaño realmente usado (libera la capacidad reservada por el mapeo).
+     */
+    void finish() throws IOException {
+        map.putInt(OFF_STATE, STATE_IDLE);
+        map.force();
+        // Mapeo exacto al tamaño usado (no extiende el archivo); el próximo append lo agranda
+        remap(count);
+        channel.truncate(HEADER_SIZE + (long) count * RECORD_SIZE);
+    }
+
+    // ─── Lectura ──────────────────────────────────────────────────────────────
+
+    void replay(PathSimplifier.Sink sink) {
+        for (int i = 0; i < count; i++) {
+            int off = recordOffset(i);
+            sink.accept(map.getDouble(off), map.getDouble(off + 8), map.getLong(off + 16), map.getFloat(off + 24));
+        }
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    boolean isClosed() {
+        return map == null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        map = null;
+        file.close();
+    }
+}
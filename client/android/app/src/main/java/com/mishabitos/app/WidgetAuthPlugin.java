@@ -2,14 +2,32 @@ package com.mishabitos.app;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
 @CapacitorPlugin(name = "WidgetAuth")
 public class WidgetAuthPlugin extends Plugin {
 
+    private static final String SNAPSHOT_FILE = "picker_snapshot.bin";
+    // Último snapshot leído o escrito (inmutable); sólo updatePickerSnapshot escribe el archivo
+    private static PickerSnapshot cachedSnapshot;
+
     @PluginMethod
     public void saveAuthToken(PluginCall call) {
         String token = call.getString("token");
@@ -22,16 +40,72 @@ public class WidgetAuthPlugin extends Plugin {
         }
 
         Context context = getContext();
-        SharedPreferences sharedPref = context.getSharedPreferences("WidgetPrefs", Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPref.edit();
-        editor.putString("access_token", token);
-        editor.putString("supabase_url", url);
-        editor.putString("supabase_key", key);
-        editor.apply();
+        SupabaseClient.get(context).setSession(url, key, token);
+
+        PickerSyncJob.schedule(context);
+        // Token nuevo: los gastos que esperaban una sesión válida se pueden subir ya
+        try {
+            if (ExpenseOutboxJob.outbox(context).size() > 0) ExpenseOutboxJob.schedule(context);
+        } catch (IOException e) {
+            Log.e("WidgetAuth", "No se pudo leer el outbox de gastos: " + e.getMessage());
+        }
 
         call.resolve();
     }
 
+    // ─── Gastos rechazados por el servidor ───────────────────────────────────
+
+    /** Gastos rápidos que el servidor rechazó: {@code expenses: [{id, reason, expense}]}. */
+    @PluginMethod
+    public void getRejectedExpenses(PluginCall call) {
+        try {
+            JSArray list = new JSArray();
+            for (ExpenseOutbox.Entry e : ExpenseOutboxJob.outbox(getContext()).rejected()) {
+                JSObject item = new JSObject();
+                item.put("id", e.key);
+                item.put("reason", e.reason);
+                try {
+                    item.put("expense", new JSONObject(e.json));
+                } catch (JSONException ignored) {
+                    item.put("expense", e.json);
+                }
+                list.put(item);
+            }
+            JSObject ret = new JSObject();
+            ret.put("expenses", list);
+            call.resolve(ret);
+        } catch (IOException e) {
+            call.reject("No se pudo leer el outbox de gastos: " + e.getMessage());
+        }
+    }
+
+    /** Vuelve a encolar los rechazados y agenda la subida. */
+    @PluginMethod
+    public void retryRejectedExpenses(PluginCall call) {
+        Context context = getContext();
+        try {
+            int count = ExpenseOutboxJob.outbox(context).retryRejected();
+            if (count > 0) ExpenseOutboxJob.schedule(context);
+            JSObject ret = new JSObject();
+            ret.put("count", count);
+            call.resolve(ret);
+        } catch (IOException e) {
+            call.reject("No se pudo escribir el outbox de gastos: " + e.getMessage());
+        }
+    }
+
+    /** Borra los rechazados: el usuario decidió no subirlos. */
+    @PluginMethod
+    public void discardRejectedExpenses(PluginCall call) {
+        try {
+            JSObject ret = new JSObject();
+            ret.put("count", ExpenseOutboxJob.outbox(getContext()).discardRejected());
+            call.resolve(ret);
+        } catch (IOException e) {
+            call.reject("No se pudo escribir el outbox de gastos: " + e.getMessage());
+        }
+    }
+
     @PluginMethod
     public void saveCategories(PluginCall call) {
         String categoriesJson = call.getString("categories");
@@ -46,6 +120,7 @@ public class WidgetAuthPlugin extends Plugin {
         SharedPreferences.Editor editor = sharedPref.edit();
         editor.putString("categories_json", categoriesJson);
         editor.apply();
+        updatePickerSnapshot(context, parseCategories(categoriesJson), null);
 
         call.resolve();
     }
@@ -64,7 +139,79 @@ public class WidgetAuthPlugin extends Plugin {
         SharedPreferences.Editor editor = sharedPref.edit();
         editor.putString("planillas_json", planillasJson);
         editor.apply();
+        updatePickerSnapshot(context, null, parsePlanillas(planillasJson));
 
         call.resolve();
     }
+
+    // ─── Snapshot del selector de gasto rápido ───────────────────────────────
+
+    /**
+     * Categorías y planillas para QuickExpenseActivity. La primera vez en el proceso lee el
+     * snapshot binario; si no hay (primera vez tras actualizar la app) lo arma desde el JSON de
+     * WidgetPrefs y lo guarda. Después lo devuelve de memoria hasta el próximo
+     * {@link #updatePickerSnapshot}. Puede hacer I/O: no llamar desde el hilo principal.
+     */
+    static synchronized PickerSnapshot pickerSnapshot(Context context) {
+        if (cachedSnapshot != null) return cachedSnapshot;
+        File file = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        PickerSnapshot snapshot = PickerSnapshot.read(file);
+        if (snapshot == null) {
+            SharedPreferences prefs = context.getSharedPreferences("WidgetPrefs", Context.MODE_PRIVATE);
+            snapshot = new PickerSnapshot(
+                    parseCategories(prefs.getString("categories_json", "[]")),
+                    parsePlanillas(prefs.getString("planillas_json", "[]")));
+            writeSnapshot(snapshot, file);
+        }
+        cachedSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /** Reemplaza las categorías o las planillas (null: se conservan) del snapshot. */
+    static void updatePickerSnapshot(Context context, List<PickerSnapshot.Item> categories,
+                                     List<PickerSnapshot.Item> planillas) {
+        updatePickerSnapshot(context, snapshot -> {
+            if (categories != null) snapshot = snapshot.withCategories(categories);
+            if (planillas != null) snapshot = snapshot.withPlanillas(planillas);
+            return snapshot;
+        });
+    }
+
+    /** Lee, modifica y escribe el snapshot sin que otra escritura se meta en el medio. */
+    static synchronized void updatePickerSnapshot(Context context, UnaryOperator<PickerSnapshot> update) {
+        PickerSnapshot snapshot = update.apply(pickerSnapshot(context));
+        cachedSnapshot = snapshot;
+        writeSnapshot(snapshot, new File(context.getFilesDir(), SNAPSHOT_FILE));
+    }
+
+    private static void writeSnapshot(PickerSnapshot snapshot, File file) {
+        try {
+            snapshot.write(file);
+        } catch (IOException e) {
+            Log.e("WidgetAuth", "No se pudo guardar el snapshot del selector: " + e.getMessage());
+        }
+    }
+
+    static List<PickerSnapshot.Item> parseCategories(String json) {
+        return parseItems(json, "name", "Unknown");
+    }
+
+    static List<PickerSnapshot.Item> parsePlanillas(String json) {
+        return parseItems(json, "nombre", "Sin Nombre");
+    }
+
+    /** JSON mal formado: se quedan los ítems leídos hasta el error. */
+    private static List<PickerSnapshot.Item> parseItems(String json, String nameKey, String defaultName) {
+        List<PickerSnapshot.Item> items = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject obj = array.getJSONObject(i);
+                items.add(new PickerSnapshot.Item(obj.optString("id"), obj.optString(nameKey, defaultName)));
+            }
+        } catch (JSONException e) {
+            Log.e("WidgetAuth", "JSON del selector inválido: " + e.getMessage());
+        }
+        return items;
+    }
 }
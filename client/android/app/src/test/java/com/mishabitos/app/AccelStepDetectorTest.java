@@ -0,0 +1,135 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Precisión contra trazas sintéticas con una cantidad de pasos conocida: oscilación del paso
+ * con armónico, ruido gaussiano y el teléfono inclinado (la gravedad repartida en los 3 ejes).
+ * Semilla fija: las trazas son siempre las mismas.
+ */
+public class AccelStepDetectorTest {
+
+    private static final float RATE_HZ = 50f;
+    private static final long PERIOD_NS = (long) (1e9 / RATE_HZ);
+    private static final double G = 9.81;
+    // Orientación fija del teléfono (vector unitario)
+    private static final double OX = 0.30, OY = 0.55, OZ = Math.sqrt(1 - 0.30 * 0.30 - 0.55 * 0.55);
+
+    /** Traza en curso: tiempo y pasos reales generados. */
+    private static final class Trace {
+        final AccelStepDetector detector = new AccelStepDetector(RATE_HZ);
+        final Random random = new Random(42);
+        long t;
+        double phase;
+        int realSteps;
+
+        /** Camina {@code seconds} a {@code stepHz} pasos/s con amplitud {@code amp} m/s². */
+        Trace walk(double seconds, double stepHz, double amp, double noise) {
+            int samples = (int) (seconds * RATE_HZ);
+            for (int i = 0; i < samples; i++) {
+                double before = phase;
+                phase += stepHz / RATE_HZ;
+                realSteps += (int) Math.floor(phase) - (int) Math.floor(before);
+                double p = 2 * Math.PI * phase;
+                double m = G + amp * Math.sin(p) + 0.35 * amp * Math.sin(2 * p + 0.7)
+                    + noise * random.nextGaussian();
+                sample(m);
+            }
+            return this;
+        }
+
+        /** Sin caminar: sólo ruido (teléfono en la mesa o en el bolsillo quieto). */
+        Trace still(double seconds, double noise) {
+            int samples = (int) (seconds * RATE_HZ);
+            for (int i = 0; i < samples; i++) sample(G + noise * random.nextGaussian());
+            phase = Math.ceil(phase); // la próxima caminata arranca en un paso entero
+            return this;
+        }
+
+        /** Golpes sueltos (dejar el teléfono, un sacudón), separados {@code gapS}. */
+        Trace bumps(int count, double gapS, double amp) {
+            for (int b = 0; b < count; b++) {
+                for (int i = 0; i < 5; i++) sample(G + amp * Math.sin(Math.PI * i / 4));
+                still(gapS, 0.05);
+            }
+            return this;
+        }
+
+        private void sample(double magnitude) {
+            detector.onSample(t, (float) (magnitude * OX), (float) (magnitude * OY), (float) (magnitude * OZ));
+            t += PERIOD_NS;
+        }
+
+        long detected() { return detector.totalSteps(); }
+    }
+
+    private static void assertWithin(String what, int expected, long actual, double tolerance) {
+        assertTrue(what + ": esperado ~" + expected + ", detectado " + actual,
+            Math.abs(actual - expected) <= Math.max(1, expected * tolerance));
+    }
+
+    @Test
+    public void normalWalk() {
+        Trace tr = new Trace().still(2, 0.05).walk(120, 1.8, 2.5, 0.4);
+        assertWithin("caminata normal", tr.realSteps, tr.detected(), 0.03);
+    }
+
+    @Test
+    public void slowAndFastWalkAndRun() {
+        Trace slow = new Trace().walk(60, 1.3, 1.5, 0.3);
+        assertWithin("lenta", slow.realSteps, slow.detected(), 0.05);
+        Trace brisk = new Trace().walk(60, 2.1, 3.0, 0.5);
+        assertWithin("rápida", brisk.realSteps, brisk.detected(), 0.03);
+        Trace run = new Trace().walk(60, 2.8, 7.0, 1.0);
+        assertWithin("corriendo", run.realSteps, run.detected(), 0.03);
+    }
+
+    @Test
+    public void walkWithPausesCountsOnlySteps() {
+        Trace tr = new Trace()
+            .walk(30, 1.8, 2.5, 0.4).still(10, 0.05)
+            .walk(45, 1.9, 2.5, 0.4).still(20, 0.05)
+            .walk(20, 1.7, 2.2, 0.4);
+        assertWithin("con pausas", tr.realSteps, tr.detected(), 0.05);
+    }
+
+    @Test
+    public void stillPhoneAndIsolatedBumpsCountNothing() {
+        Trace table = new Trace().still(300, 0.08);
+        assertEquals(0, table.detected());
+
+        Trace bumps = new Trace().still(2, 0.05).bumps(10, 3.0, 6.0);
+        assertEquals(0, bumps.detected());
+    }
+
+    /**
+     * Una muestra por evento del sensor a 50 Hz: no puede asignar memoria. Sobre una oscilación
+     * pura de 1.8 Hz cuenta un paso por ciclo (la traza se repite cada 1024 muestras, de ahí el margen).
+     */
+    @Test
+    public void onSampleDoesNotAllocate() {
+        AccelStepDetector d = new AccelStepDetector(RATE_HZ);
+        float[] trace = new float[1024];
+        Random random = new Random(7);
+        for (int i = 0; i < trace.length; i++) {
+            trace[i] = (float) (G + 2.5 * Math.sin(2 * Math.PI * 1.8 * i / RATE_HZ) + 0.4 * random.nextGaussian());
+        }
+        for (int i = 0; i < 200_000; i++) d.onSample(i * PERIOD_NS, trace[i & 1023], 0.1f, 0.2f); // JIT
+        int n = 500_000;
+        double cycles = 1.8 * (200_000 + n) / RATE_HZ;
+
+        if (AllocationProbe.isSupported()) {
+            double perSample = AllocationProbe.bytesPerCall(() -> {
+                for (int i = 200_000; i < 200_000 + n; i++) d.onSample(i * PERIOD_NS, trace[i & 1023], 0.1f, 0.2f);
+            }, n);
+            assertTrue(perSample + " bytes por muestra", perSample < 1.0);
+        } else {
+            for (int i = 200_000; i < 200_000 + n; i++) d.onSample(i * PERIOD_NS, trace[i & 1023], 0.1f, 0.2f);
+        }
+        assertEquals(cycles, d.totalSteps(), cycles * 0.02);
+    }
+}
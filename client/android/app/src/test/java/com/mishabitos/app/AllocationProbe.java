@@ -0,0 +1,39 @@
+package com.mishabitos.app;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Mide la memoria que asigna el hilo actual, para los tests de "no asigna por evento".
+ * Usa el contador por hilo de HotSpot; en otras JVM {@link #isSupported()} es false y esos
+ * tests no afirman nada.
+ */
+final class AllocationProbe {
+
+    private AllocationProbe() {}
+
+    static boolean isSupported() {
+        return counter() != null;
+    }
+
+    /**
+     * Corre {@code loop} una vez y devuelve los bytes asignados divididos por {@code calls},
+     * las llamadas que hace {@code loop}. El JIT se calienta antes, por fuera de la medición.
+     */
+    static double bytesPerCall(Runnable loop, int calls) {
+        com.sun.management.ThreadMXBean mx = counter();
+        if (mx == null) throw new IllegalStateException("La JVM no cuenta asignaciones por hilo");
+        long tid = Thread.currentThread().getId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        loop.run();
+        return (mx.getThreadAllocatedBytes(tid) - before) / (double) calls;
+    }
+
+    private static com.sun.management.ThreadMXBean counter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+        if (!mx.isThreadAllocatedMemorySupported()) return null;
+        mx.setThreadAllocatedMemoryEnabled(true);
+        return mx;
+    }
+}
@@ -0,0 +1,93 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mishabitos.app.CadenceClassifier.Activity;
+
+public class CadenceClassifierTest {
+
+    private static final long T0 = 1_792_000_000_000L;
+
+    /** Un paso cada {@code intervalMs} durante {@code seconds}; devuelve el instante final. */
+    private static long walk(CadenceClassifier c, long from, long intervalMs, int seconds) {
+        long t = from;
+        for (long end = from + seconds * 1000L; t < end; t += intervalMs) c.onSteps(t, 1);
+        return t;
+    }
+
+    @Test
+    public void cadenceFromSteadySteps() {
+        CadenceClassifier c = new CadenceClassifier();
+        long t = walk(c, T0, 500, 60); // 2 pasos/s
+        assertEquals(120, c.cadence(t - 1, CadenceClassifier.SHORT_WINDOW_S));
+        assertEquals(120, c.cadence(t - 1, CadenceClassifier.LONG_WINDOW_S));
+        assertEquals(Activity.BRISK, c.activity());
+    }
+
+    @Test
+    public void classifiesLevelsAndDropsToIdle() {
+        CadenceClassifier c = new CadenceClassifier();
+        long t = walk(c, T0, 1000, 30); // 60 pasos/min
+        assertEquals(Activity.WALKING, c.activity());
+
+        t = walk(c, t, 350, 30); // ~171 pasos/min
+        assertEquals(Activity.RUNNING, c.activity());
+        long runningSince = c.activitySinceMs();
+        assertTrue(runningSince > T0);
+
+        // Sin pasos: evaluate lo baja sin eventos del sensor
+        assertTrue(c.evaluate(t + 30_000));
+        assertEquals(Activity.IDLE, c.activity());
+        assertEquals(0, c.cadence(t + 30_000, CadenceClassifier.SHORT_WINDOW_S));
+    }
+
+    @Test
+    public void hysteresisAvoidsFlapping() {
+        CadenceClassifier c = new CadenceClassifier();
+        long t = walk(c, T0, 570, 30); // ~105 pasos/min: BRISK
+        assertEquals(Activity.BRISK, c.activity());
+        // Apenas por debajo del umbral (95 pasos/min): sigue BRISK
+        t = walk(c, t, 632, 40);
+        assertEquals(Activity.BRISK, c.activity());
+        // Bien por debajo (~80): baja a WALKING
+        walk(c, t, 750, 40);
+        assertEquals(Activity.WALKING, c.activity());
+    }
+
+    @Test
+    public void lateBatchUsesEventTimestamps() {
+        CadenceClassifier c = new CadenceClassifier();
+        // Un lote de 60 s entregado de golpe: la cadencia sale de los timestamps de cada evento
+        for (int i = 0; i < 110; i++) c.onSteps(T0 + i * 545L, 1);
+        assertEquals(Activity.BRISK, c.activity());
+        // Eventos más viejos que el anillo se ignoran
+        assertFalse(c.onSteps(T0 - 120_000, 50));
+    }
+
+    @Test
+    public void ringWrapClearsOldSeconds() {
+        CadenceClassifier c = new CadenceClassifier();
+        c.onSteps(T0, 30);
+        long later = T0 + CadenceClassifier.SLOTS * 1000L; // mismo slot, una vuelta después
+        c.onSteps(later, 1);
+        assertEquals(6, c.cadence(later, CadenceClassifier.SHORT_WINDOW_S));
+    }
+
+    @Test
+    public void onStepsDoesNotAllocate() {
+        if (!AllocationProbe.isSupported()) return;
+
+        CadenceClassifier c = new CadenceClassifier();
+        long warm = T0;
+        for (int i = 0; i < 20_000; i++, warm += 400) c.onSteps(warm, 1); // calentar el JIT
+        long from = warm;
+        int n = 100_000;
+        double perEvent = AllocationProbe.bytesPerCall(() -> {
+            long t = from;
+            for (int i = 0; i < n; i++, t += (i % 50 == 0) ? 30_000 : 400) c.onSteps(t, 1);
+        }, n);
+        assertTrue(perEvent + " bytes por evento", perEvent < 1.0);
+    }
+}
@@ -0,0 +1,215 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mishabitos.app.EventBus.Policy;
+
+public class EventBusTest {
+
+    /** Dispatcher con reloj manual: las tareas corren al avanzar el tiempo. */
+    private static final class FakeDispatcher implements EventBus.Dispatcher {
+        long now;
+        final List<long[]> times = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override public long now() { return now; }
+
+        @Override public void postDelayed(Runnable task, long delayMs) {
+            times.add(new long[] { now + delayMs });
+            tasks.add(task);
+        }
+
+        @Override public void cancel(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    times.remove(i);
+                }
+            }
+        }
+
+        void advance(long ms) {
+            long target = now + ms;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (times.get(i)[0] <= target && (next < 0 || times.get(i)[0] < times.get(next)[0])) next = i;
+                }
+                if (next < 0) break;
+                now = Math.max(now, times.get(next)[0]);
+                Runnable r = tasks.remove(next);
+                times.remove(next);
+                r.run();
+            }
+            now = target;
+        }
+    }
+
+    private static final class Recorder implements EventBus.Receiver<Integer> {
+        final List<Integer> events = new ArrayList<>();
+        final List<List<Integer>> batches = new ArrayList<>();
+
+        @Override public void onEvent(Integer event) { events.add(event); }
+
+        @Override public void onBatch(List<Integer> batch) { batches.add(new ArrayList<>(batch)); }
+    }
+
+    @Test
+    public void everyDeliversAllInOrderAsynchronously() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder r = new Recorder();
+        bus.subscribe(r, Policy.every(16));
+
+        bus.publish(1);
+        bus.publish(2);
+        assertTrue(r.events.isEmpty()); // nunca dentro de publish
+        d.advance(0);
+        assertEquals(List.of(1, 2), r.events);
+    }
+
+    @Test
+    public void everyDropsOldestWhenFull() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder r = new Recorder();
+        EventBus<Integer>.Subscription s = bus.subscribe(r, Policy.every(3));
+
+        for (int i = 1; i <= 5; i++) bus.publish(i);
+        d.advance(0);
+        assertEquals(List.of(3, 4, 5), r.events);
+        assertEquals(2, s.droppedCount());
+        assertEquals(3, s.deliveredCount());
+    }
+
+    @Test
+    public void latestConflatesAndRespectsInterval() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder r = new Recorder();
+        EventBus<Integer>.Subscription s = bus.subscribe(r, Policy.latest(1000));
+
+        bus.publish(1);
+        d.advance(0);
+        assertEquals(List.of(1), r.events);
+
+        d.advance(200);
+        bus.publish(2);
+        bus.publish(3);
+        d.advance(500);
+        assertEquals(1, r.events.size()); // todavía dentro del intervalo
+        d.advance(300);
+        assertEquals(List.of(1, 3), r.events);
+        assertEquals(1, s.droppedCount());
+    }
+
+    @Test
+    public void intervalChangeKeepsPendingValue() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder r = new Recorder();
+        EventBus<Integer>.Subscription s = bus.subscribe(r, Policy.latest(10_000));
+
+        bus.publish(1);
+        d.advance(0);
+        bus.publish(2); // pendiente hasta los 10 s
+        d.advance(100);
+        s.setIntervalMs(500);
+        d.advance(399);
+        assertEquals(List.of(1), r.events);
+        d.advance(1);
+        assertEquals(List.of(1, 2), r.events);
+        assertEquals(0, s.droppedCount());
+    }
+
+    @Test
+    public void sendReachesOnlyThatSubscription() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder a = new Recorder();
+        Recorder b = new Recorder();
+        EventBus<Integer>.Subscription sa = bus.subscribe(a, Policy.latest(1000));
+        bus.subscribe(b, Policy.latest(1000));
+
+        sa.send(7);
+        d.advance(0);
+        assertEquals(List.of(7), a.events);
+        assertTrue(b.events.isEmpty());
+    }
+
+    @Test
+    public void batchFlushesOnSizeOrDelay() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder r = new Recorder();
+        bus.subscribe(r, Policy.batch(3, 5000, 10));
+
+        bus.publish(1);
+        bus.publish(2);
+        d.advance(1000);
+        assertTrue(r.batches.isEmpty());
+        bus.publish(3);
+        d.advance(0);
+        assertEquals(List.of(List.of(1, 2, 3)), r.batches);
+
+        bus.publish(4);
+        d.advance(4999);
+        assertEquals(1, r.batches.size());
+        d.advance(1);
+        assertEquals(List.of(4), r.batches.get(1));
+    }
+
+    @Test
+    public void pausedSubscriberAccumulatesAndResumes() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder latest = new Recorder();
+        Recorder every = new Recorder();
+        EventBus<Integer>.Subscription sl = bus.subscribe(latest, Policy.latest(0));
+        EventBus<Integer>.Subscription se = bus.subscribe(every, Policy.every(2));
+        sl.setPaused(true);
+        se.setPaused(true);
+
+        for (int i = 1; i <= 4; i++) bus.publish(i);
+        d.advance(10_000);
+        assertTrue(latest.events.isEmpty());
+        assertTrue(every.events.isEmpty());
+
+        sl.setPaused(false);
+        se.setPaused(false);
+        d.advance(0);
+        assertEquals(List.of(4), latest.events);
+        assertEquals(List.of(3, 4), every.events);
+        assertEquals(3, sl.droppedCount());
+        assertEquals(2, se.droppedCount());
+    }
+
+    @Test
+    public void unsubscribeStopsDeliveryAndKeepsOthers() {
+        FakeDispatcher d = new FakeDispatcher();
+        EventBus<Integer> bus = new EventBus<>(d);
+        Recorder a = new Recorder();
+        Recorder b = new Recorder();
+        EventBus<Integer>.Subscription sa = bus.subscribe(a, Policy.every(8));
+        bus.subscribe(b, Policy.every(8));
+
+        bus.publish(1);
+        sa.unsubscribe();
+        d.advance(0);
+        assertTrue(a.events.isEmpty());
+        assertEquals(List.of(1), b.events);
+        assertTrue(sa.isCancelled());
+        assertTrue(bus.hasSubscribers());
+
+        bus.clear();
+        assertFalse(bus.hasSubscribers());
+        bus.publish(2);
+        d.advance(0);
+        assertEquals(List.of(1), b.events);
+    }
+}
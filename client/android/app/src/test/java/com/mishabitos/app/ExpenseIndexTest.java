@@ -0,0 +1,204 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ExpenseIndexTest {
+
+    private static final long T0 = 1_792_000_000_000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("expense_index", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void recentUseOutranksOldFrequency() {
+        ExpenseIndex index = new ExpenseIndex();
+        for (int i = 0; i < 6; i++) index.record(null, "Comida", T0 + i * DAY);
+        // Tres meses después: tres usos nuevos pesan más que seis de hace tres vidas medias
+        long later = T0 + 95 * DAY;
+        for (int i = 0; i < 3; i++) index.record(null, "Transporte", later + i);
+        List<String> ranked = index.rankCategories(Arrays.asList("General", "Comida", "Transporte"));
+        assertEquals(Arrays.asList("Transporte", "Comida", "General"), ranked);
+    }
+
+    @Test
+    public void unusedCategoriesKeepTheirOrder() {
+        ExpenseIndex index = new ExpenseIndex();
+        index.record(null, "Ocio", T0);
+        assertEquals(Arrays.asList("Ocio", "A", "B", "C"),
+            index.rankCategories(Arrays.asList("A", "B", "Ocio", "C")));
+    }
+
+    @Test
+    public void suggestsByPrefixIgnoringCaseAndAccents() {
+        ExpenseIndex index = new ExpenseIndex();
+        index.record("Café con leche", "Comida", T0);
+        index.record("Cafe con leche", "Comida", T0 + 1);
+        index.record("Carnicería", "Supermercado", T0 + 2);
+        index.record("Colectivo", "Transporte", T0 + 3);
+
+        List<ExpenseIndex.Suggestion> s = index.suggest("CA", 5);
+        assertEquals(2, s.size());
+        assertEquals("Cafe con leche", s.get(0).description); // el texto más reciente
+        assertEquals("Comida", s.get(0).category);
+        assertEquals("Carnicería", s.get(1).description);
+        assertEquals("Supermercado", s.get(1).category);
+        assertTrue(index.suggest("x", 5).isEmpty());
+        assertTrue(index.suggest("  ", 5).isEmpty());
+        assertEquals("Transporte", index.categoryFor("  colectivo "));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void descriptionFollowsItsMostUsedCategory() {
+        ExpenseIndex index = new ExpenseIndex();
+        index.record("Farmacia", "Salud", T0);
+        index.record("Farmacia", "Hogar", T0 + DAY);
+        index.record("Farmacia", "Hogar", T0 + 2 * DAY);
+        assertEquals("Hogar", index.suggest("far", 1).get(0).category);
+    }
+
+    @Test
+    public void topListStaysOrderedAsWeightsGrow() {
+        ExpenseIndex index = new ExpenseIndex();
+        for (int i = 0; i < 8; i++) index.record("pan " + i, "Comida", T0);
+        for (int i = 0; i < 5; i++) index.record("pan 7", "Comida", T0 + i);
+        index.record("pan 3", "Comida", T0 + 10);
+        index.record("pan 3", "Comida", T0 + 11);
+        List<ExpenseIndex.Suggestion> s = index.suggest("pan", ExpenseIndex.TOP_K);
+        assertEquals(ExpenseIndex.TOP_K, s.size());
+        assertEquals("pan 7", s.get(0).description);
+        assertEquals("pan 3", s.get(1).description);
+    }
+
+    @Test
+    public void persistsAndRestores() throws Exception {
+        ExpenseIndex index = new ExpenseIndex();
+        index.record("Supermercado Día", "Supermercado", T0);
+        index.record("Subte", "Transporte", T0 + DAY);
+        index.record("Subte", "Transporte", T0 + 2 * DAY);
+        index.write(file);
+
+        ExpenseIndex read = ExpenseIndex.read(file);
+        assertEquals(2, read.size());
+        assertEquals("Subte", read.suggest("su", 2).get(0).description);
+        assertEquals(Arrays.asList("Transporte", "Supermercado"),
+            read.rankCategories(Arrays.asList("Supermercado", "Transporte")));
+        // Sigue sumando sobre lo restaurado
+        read.record("Supermercado Día", "Supermercado", T0 + 3 * DAY);
+        read.record("Supermercado Día", "Supermercado", T0 + 3 * DAY + 1);
+        assertEquals("Supermercado Día", read.suggest("su", 2).get(0).description);
+    }
+
+    @Test
+    public void corruptFileStartsEmpty() throws Exception {
+        ExpenseIndex index = new ExpenseIndex();
+        index.record("Algo", "General", T0);
+        byte[] data = index.encode();
+        data[20] ^= 1;
+        assertNull(ExpenseIndex.decode(data));
+        file.delete();
+        assertEquals(0, ExpenseIndex.read(file).size());
+    }
+
+    @Test
+    public void decadesOfUseRebaseWithoutOverflow() {
+        ExpenseIndex index = new ExpenseIndex();
+        long t = T0;
+        for (int i = 0; i < 400; i++, t += 60 * DAY) index.record("x", (i % 2 == 0) ? "A" : "B", t);
+        index.record("x", "B", t);
+        assertEquals("B", index.rankCategories(Arrays.asList("A", "B")).get(0));
+        assertEquals("B", index.categoryFor("x"));
+    }
+
+    @Test
+    public void evictsLightestBeyondCap() {
+        ExpenseIndex index = new ExpenseIndex();
+        index.record("Viejo", "A", T0);
+        for (int i = 0; i < ExpenseIndex.MAX_ENTRIES - 1; i++) index.record("item " + i, "B", T0 + DAY);
+        assertEquals(ExpenseIndex.MAX_ENTRIES, index.size());
+
+        index.record("Nuevo", "C", T0 + 2 * DAY);
+        assertEquals(ExpenseIndex.MAX_ENTRIES, index.size());
+        assertNull(index.categoryFor("viejo"));
+        assertTrue(index.suggest("vie", 5).isEmpty());
+        assertEquals("Nuevo", index.suggest("n", 5).get(0).description);
+        // La categoría sigue contando aunque la descripción se haya ido
+        assertEquals("A", index.rankCategories(Arrays.asList("Z", "A")).get(0));
+
+        for (int i = 0; i < 3; i++) index.record("item 0", "B", T0 + 3 * DAY);
+        for (int i = 0; i < 20; i++) index.record("otro " + i, "D", T0 + 4 * DAY);
+        assertEquals(ExpenseIndex.MAX_ENTRIES, index.size());
+        assertEquals("B", index.categoryFor("item 0"));
+        assertEquals("item 0", index.suggest("item", 5).get(0).description);
+        assertEquals(5, index.suggest("item", 5).size());
+        assertEquals(5, index.suggest("otro", 5).size());
+    }
+
+    @Test
+    public void longDescriptionIsTruncated() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) sb.append((char) ('a' + i % 26));
+        String longText = sb.toString();
+        ExpenseIndex index = new ExpenseIndex();
+        index.record(longText, "General", T0);
+        index.record(longText.substring(0, ExpenseIndex.MAX_DESCRIPTION_LENGTH - 1) + "\uD83D\uDE00", "General", T0 + 1);
+
+        List<ExpenseIndex.Suggestion> s = index.suggest("abc", 5);
+        assertEquals(2, s.size());
+        for (ExpenseIndex.Suggestion suggestion : s) {
+            assertTrue(suggestion.description.length() <= ExpenseIndex.MAX_DESCRIPTION_LENGTH);
+            assertFalse(Character.isHighSurrogate(
+                suggestion.description.charAt(suggestion.description.length() - 1)));
+        }
+        index.write(file);
+        ExpenseIndex read = ExpenseIndex.read(file);
+        assertEquals(2, read.size());
+        assertEquals("General", read.categoryFor(longText));
+    }
+
+    @Test
+    public void largeIndexStaysCappedAndRoundTrips() {
+        ExpenseIndex index = new ExpenseIndex();
+        Random random = new Random(3);
+        String[] words = {"super", "subte", "cafe", "carne", "colectivo", "farmacia", "kiosco", "verduleria"};
+        for (int i = 0; i < 5000; i++) {
+            index.record(words[random.nextInt(words.length)] + " " + random.nextInt(500), "C" + random.nextInt(12),
+                T0 + i * 60_000L);
+        }
+        assertEquals(ExpenseIndex.MAX_ENTRIES, index.size());
+
+        ExpenseIndex read = ExpenseIndex.decode(index.encode());
+        assertNotNull(read);
+        assertEquals(ExpenseIndex.MAX_ENTRIES, read.size());
+        String[] prefixes = {"s", "su", "caf", "colectivo 1", "k", "verd"};
+        for (String prefix : prefixes) {
+            List<ExpenseIndex.Suggestion> expected = index.suggest(prefix, 5);
+            List<ExpenseIndex.Suggestion> actual = read.suggest(prefix, 5);
+            assertFalse(prefix, expected.isEmpty());
+            assertEquals(prefix, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertTrue(expected.get(i).description.startsWith(prefix));
+                assertEquals(expected.get(i).description, actual.get(i).description);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+public class ExpenseOutboxTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("expense_outbox", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private static String json(int i) {
+        return "{\"id\":\"k" + i + "\",\"amount\":" + i + ",\"description\":\"Café ñ\"}";
+    }
+
+    @Test
+    public void pendingSurviveReopenInOrder() throws Exception {
+        ExpenseOutbox outbox = ExpenseOutbox.open(file);
+        for (int i = 0; i < 5; i++) outbox.add("k" + i, json(i));
+        outbox.remove(outbox.peek(2));
+        outbox.close();
+
+        ExpenseOutbox reopened = ExpenseOutbox.open(file);
+        List<ExpenseOutbox.Entry> pending = reopened.peek(10);
+        assertEquals(3, pending.size());
+        assertEquals("k2", pending.get(0).key);
+        assertEquals(json(2), pending.get(0).json);
+        assertEquals("k4", pending.get(2).key);
+        reopened.close();
+    }
+
+    @Test
+    public void repeatedKeyIsQueuedOnce() throws Exception {
+        ExpenseOutbox outbox = ExpenseOutbox.open(file);
+        outbox.add("k1", json(1));
+        outbox.add("k1", json(1));
+        assertEquals(1, outbox.size());
+        outbox.close();
+    }
+
+    @Test
+    public void tornTailIsDiscarded() throws Exception {
+        ExpenseOutbox outbox = ExpenseOutbox.open(file);
+        outbox.add("k1", json(1));
+        outbox.add("k2", json(2));
+        outbox.close();
+        // El proceso murió escribiendo el segundo registro
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        ExpenseOutbox reopened = ExpenseOutbox.open(file);
+        assertEquals(1, reopened.size());
+        reopened.add("k3", json(3));
+        reopened.close();
+
+        ExpenseOutbox again = ExpenseOutbox.open(file);
+        List<ExpenseOutbox.Entry> pending = again.peek(10);
+        assertEquals(2, pending.size());
+        assertEquals("k3", pending.get(1).key);
+        again.close();
+    }
+
+    @Test
+    public void drainedLogIsTruncatedAndLargeLogCompacted() throws Exception {
+        ExpenseOutbox outbox = ExpenseOutbox.open(file);
+        outbox.add("k1", json(1));
+        outbox.remove(outbox.peek(1));
+        assertEquals(ExpenseOutbox.HEADER_SIZE, file.length());
+
+        outbox.add("keep", json(-1));
+        for (int i = 0; i < 2000; i++) {
+            outbox.add("k" + i, json(i));
+            outbox.remove(outbox.peek(2).subList(1, 2));
+        }
+        assertEquals(1, outbox.size());
+        assertTrue("no compactó: " + file.length(), file.length() < 64 * 1024);
+        outbox.close();
+
+        ExpenseOutbox reopened = ExpenseOutbox.open(file);
+        assertEquals("keep", reopened.peek(1).get(0).key);
+        reopened.close();
+    }
+
+    @Test
+    public void rejectedAreKeptUntilRetriedOrDiscarded() throws Exception {
+        ExpenseOutbox outbox = ExpenseOutbox.open(file);
+        for (int i = 0; i < 3; i++) outbox.add("k" + i, json(i));
+        outbox.reject(outbox.peek(2).get(1), "HTTP 400 23502");
+        outbox.remove(outbox.peek(10));
+        assertEquals(0, outbox.size());
+        assertTrue(file.length() > ExpenseOutbox.HEADER_SIZE);
+        // Un ADD repetido no lo saca de los rechazados
+        outbox.add("k1", json(1));
+        assertEquals(0, outbox.size());
+        outbox.close();
+
+        ExpenseOutbox reopened = ExpenseOutbox.open(file);
+        List<ExpenseOutbox.Entry> rejected = reopened.rejected();
+        assertEquals(1, rejected.size());
+        assertEquals("k1", rejected.get(0).key);
+        assertEquals(json(1), rejected.get(0).json);
+        assertEquals("HTTP 400 23502", rejected.get(0).reason);
+
+        reopened.add("k3", json(3));
+        assertEquals(1, reopened.retryRejected());
+        assertTrue(reopened.rejected().isEmpty());
+        List<ExpenseOutbox.Entry> pending = reopened.peek(10);
+        assertEquals(2, pending.size());
+        assertEquals("k1", pending.get(1).key);
+        assertNull(pending.get(1).reason);
+
+        reopened.reject(pending.get(1), "HTTP 400");
+        reopened.remove(reopened.peek(10));
+        assertEquals(1, reopened.discardRejected());
+        assertEquals(ExpenseOutbox.HEADER_SIZE, file.length());
+        reopened.close();
+    }
+
+    @Test
+    public void compactionKeepsRejected() throws Exception {
+        ExpenseOutbox outbox = ExpenseOutbox.open(file);
+        outbox.add("bad", json(-1));
+        outbox.reject(outbox.peek(1).get(0), "HTTP 400");
+        for (int i = 0; i < 2000; i++) {
+            outbox.add("k" + i, json(i));
+            outbox.remove(outbox.peek(1));
+        }
+        assertTrue("no compactó: " + file.length(), file.length() < 64 * 1024);
+        outbox.close();
+
+        ExpenseOutbox reopened = ExpenseOutbox.open(file);
+        assertEquals(0, reopened.size());
+        assertEquals("bad", reopened.rejected().get(0).key);
+        assertEquals("HTTP 400", reopened.rejected().get(0).reason);
+        reopened.close();
+    }
+
+    @Test
+    public void failedCompactionKeepsOutboxWritable() throws Exception {
+        ExpenseOutbox outbox = ExpenseOutbox.open(file);
+        outbox.add("keep", json(-1));
+        // El log sigue abierto pero su ruta pasa a ser un directorio: el rename de la compactación falla
+        assertTrue(file.delete());
+        assertTrue(file.mkdir());
+        File blocker = new File(file, "blocker");
+        assertTrue(blocker.createNewFile());
+        try {
+            boolean failed = false;
+            for (int i = 0; i < 2000 && !failed; i++) {
+                outbox.add("k" + i, json(i));
+                try {
+                    outbox.remove(outbox.peek(2).subList(1, 2));
+                } catch (java.io.IOException expected) {
+                    failed = true;
+                }
+            }
+            assertTrue("la compactación no falló", failed);
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+
+            outbox.add("after", json(1));
+            List<ExpenseOutbox.Entry> pending = outbox.peek(10);
+            assertEquals("keep", pending.get(0).key);
+            assertEquals("after", pending.get(pending.size() - 1).key);
+            outbox.close();
+        } finally {
+            blocker.delete();
+            file.delete();
+        }
+    }
+
+    /** Disco que falla una vez: la escritura a la mitad (disco lleno) o el fsync. */
+    private static final class FailingDisk implements ExpenseOutbox.Disk {
+        boolean failWrite;
+        boolean failSync;
+
+        @Override
+        public void write(RandomAccessFile file, byte[] data) throws java.io.IOException {
+            if (failWrite) {
+                failWrite = false;
+                file.write(data, 0, data.length / 2);
+                throw new java.io.IOException("ENOSPC");
+            }
+            file.write(data);
+        }
+
+        @Override
+        public void sync(RandomAccessFile file) throws java.io.IOException {
+            if (failSync) {
+                failSync = false;
+                throw new java.io.IOException("EIO");
+            }
+            file.getFD().sync();
+        }
+    }
+
+    @Test
+    public void tornWriteIsCutSoLaterAddsSurviveReopen() throws Exception {
+        FailingDisk disk = new FailingDisk();
+        ExpenseOutbox outbox = ExpenseOutbox.open(file, disk);
+        outbox.add("k1", json(1));
+        long before = file.length();
+        disk.failWrite = true;
+        try {
+            outbox.add("k2", json(2));
+            fail("la escritura tenía que fallar");
+        } catch (java.io.IOException expected) {
+            // el diálogo avisa que no se guardó
+        }
+        assertEquals(before, file.length());
+        assertEquals(1, outbox.size());
+        outbox.add("k3", json(3));
+        outbox.close();
+
+        ExpenseOutbox reopened = ExpenseOutbox.open(file);
+        List<ExpenseOutbox.Entry> pending = reopened.peek(10);
+        assertEquals(2, pending.size());
+        assertEquals("k1", pending.get(0).key);
+        assertEquals("k3", pending.get(1).key);
+        reopened.close();
+    }
+
+    @Test
+    public void failedSyncLeavesNoRecordBehind() throws Exception {
+        FailingDisk disk = new FailingDisk();
+        ExpenseOutbox outbox = ExpenseOutbox.open(file, disk);
+        outbox.add("k1", json(1));
+        disk.failSync = true;
+        try {
+            outbox.add("k2", json(2));
+            fail("el fsync tenía que fallar");
+        } catch (java.io.IOException expected) {
+            // el usuario lo vuelve a guardar: es otro gasto con otra clave
+        }
+        outbox.add("k2b", json(2));
+        outbox.close();
+
+        ExpenseOutbox reopened = ExpenseOutbox.open(file);
+        List<ExpenseOutbox.Entry> pending = reopened.peek(10);
+        assertEquals(2, pending.size());
+        assertEquals("k1", pending.get(0).key);
+        assertEquals("k2b", pending.get(1).key);
+        reopened.close();
+    }
+
+    @Test
+    public void bulkBodyIsJsonArray() {
+        assertEquals("[]", ExpenseOutbox.bulkBody(java.util.Collections.emptyList()));
+        List<ExpenseOutbox.Entry> two = java.util.Arrays.asList(
+            new ExpenseOutbox.Entry("a", "{\"a\":1}"), new ExpenseOutbox.Entry("b", "{\"b\":2}"));
+        assertEquals("[{\"a\":1},{\"b\":2}]", ExpenseOutbox.bulkBody(two));
+    }
+}
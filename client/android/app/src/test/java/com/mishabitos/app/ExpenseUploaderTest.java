@@ -0,0 +1,104 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExpenseUploaderTest {
+
+    private File file;
+    private ExpenseOutbox outbox;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("expense_uploader", ".log");
+        outbox = ExpenseOutbox.open(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        outbox.close();
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    /** Servidor falso: contesta {@code status} a todo lote que incluya {@code badKey}. */
+    private static final class FakeServer implements ExpenseUploader.Sender {
+        final String badKey;
+        final int status;
+        final List<String> sent = new ArrayList<>();
+        int requests;
+
+        FakeServer(String badKey, int status) {
+            this.badKey = badKey;
+            this.status = status;
+        }
+
+        @Override
+        public int send(List<ExpenseOutbox.Entry> batch) {
+            requests++;
+            for (ExpenseOutbox.Entry e : batch) {
+                if (e.key.equals(badKey)) return ExpenseUploader.classifyStatus(status);
+            }
+            for (ExpenseOutbox.Entry e : batch) sent.add(e.key);
+            return ExpenseUploader.SENT;
+        }
+
+        @Override
+        public String rejectionReason() {
+            return "HTTP " + status;
+        }
+    }
+
+    @Test
+    public void forbiddenRowDoesNotBlockTheRowsBehindIt() throws Exception {
+        for (int i = 0; i < 120; i++) outbox.add("k" + i, "{\"id\":\"k" + i + "\"}");
+        // RLS (42501) no deja escribir la planilla de k70
+        FakeServer server = new FakeServer("k70", 403);
+        ExpenseUploader uploader = new ExpenseUploader(outbox, server);
+
+        assertEquals(ExpenseUploader.SENT, uploader.drain(() -> false));
+        assertEquals(0, outbox.size());
+        assertEquals(119, server.sent.size());
+        assertEquals(1, uploader.rejectedCount());
+        assertEquals("k70", outbox.rejected().get(0).key);
+        assertEquals("HTTP 403", outbox.rejected().get(0).reason);
+    }
+
+    @Test
+    public void goodRowsAheadOfTheBadOneCostOneRequestEach() throws Exception {
+        for (int i = 0; i < 100; i++) outbox.add("k" + i, "{}");
+        FakeServer server = new FakeServer("k80", 400);
+        new ExpenseUploader(outbox, server).drain(() -> false);
+        // k0-49 en un lote, k50-99 falla, k50-80 de a uno (31), k81-99 en un lote
+        assertEquals(1 + 1 + 31 + 1, server.requests);
+    }
+
+    @Test
+    public void expiredSessionStopsAndKeepsTheQueue() throws Exception {
+        for (int i = 0; i < 3; i++) outbox.add("k" + i, "{}");
+        FakeServer server = new FakeServer("k0", 401);
+        ExpenseUploader uploader = new ExpenseUploader(outbox, server);
+
+        assertEquals(ExpenseUploader.RETRY, uploader.drain(() -> false));
+        assertEquals(3, outbox.size());
+        assertTrue(outbox.rejected().isEmpty());
+        assertEquals(1, server.requests);
+    }
+
+    @Test
+    public void statusClassification() {
+        assertEquals(ExpenseUploader.SENT, ExpenseUploader.classifyStatus(201));
+        assertEquals(ExpenseUploader.RETRY, ExpenseUploader.classifyStatus(401));
+        assertEquals(ExpenseUploader.RETRY, ExpenseUploader.classifyStatus(429));
+        assertEquals(ExpenseUploader.RETRY, ExpenseUploader.classifyStatus(503));
+        assertEquals(ExpenseUploader.REJECTED, ExpenseUploader.classifyStatus(403));
+        assertEquals(ExpenseUploader.REJECTED, ExpenseUploader.classifyStatus(409));
+    }
+}
@@ -0,0 +1,85 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mishabitos.app.GpsSamplingPolicy.Profile;
+import com.mishabitos.app.GpsSamplingPolicy.State;
+
+public class GpsSamplingPolicyTest {
+
+    @Test
+    public void balanced_slowsThenSuspendsWhenStill() {
+        GpsSamplingPolicy p = new GpsSamplingPolicy(Profile.BALANCED, true, 0);
+        p.onStepCount(0, 100);
+        assertEquals(State.MOVING, p.state());
+        assertEquals(3_000, p.intervalMs());
+
+        assertFalse(p.evaluate(19_999));
+        assertTrue(p.evaluate(20_000));
+        assertEquals(State.SLOWING, p.state());
+        assertEquals(10_000, p.intervalMs());
+
+        assertEquals(40_000, p.nextEvaluationDelayMs(20_000));
+        assertTrue(p.evaluate(60_000));
+        assertEquals(State.SUSPENDED, p.state());
+        assertEquals(0, p.intervalMs());
+        assertEquals(-1, p.nextEvaluationDelayMs(60_000));
+    }
+
+    @Test
+    public void stepsResumeFromSuspended() {
+        GpsSamplingPolicy p = new GpsSamplingPolicy(Profile.BALANCED, true, 0);
+        p.onStepCount(0, 100);
+        p.evaluate(20_000);
+        p.evaluate(60_000);
+        assertEquals(State.SUSPENDED, p.state());
+
+        assertFalse(p.onStepCount(70_000, 100)); // misma lectura: no es movimiento
+        assertTrue(p.onStepCount(71_000, 104));
+        assertEquals(State.MOVING, p.state());
+        assertEquals(3_000, p.intervalMs());
+    }
+
+    @Test
+    public void speedKeepsMovingAndResumesFromSlowing() {
+        GpsSamplingPolicy p = new GpsSamplingPolicy(Profile.BALANCED, true, 0);
+        p.onFix(15_000, 1.4f);
+        assertFalse(p.evaluate(30_000)); // último movimiento a los 15 s
+        assertTrue(p.evaluate(35_000));
+        assertEquals(State.SLOWING, p.state());
+
+        assertFalse(p.onFix(36_000, 0.1f)); // casi quieto no cuenta
+        assertTrue(p.onFix(37_000, 1.2f));
+        assertEquals(State.MOVING, p.state());
+    }
+
+    @Test
+    public void withoutStepSensor_neverSuspends() {
+        GpsSamplingPolicy p = new GpsSamplingPolicy(Profile.BATTERY, false, 0);
+        p.evaluate(15_000);
+        assertEquals(State.SLOWING, p.state());
+        assertFalse(p.evaluate(10 * 60_000));
+        assertEquals(State.SLOWING, p.state());
+        assertEquals(-1, p.nextEvaluationDelayMs(10 * 60_000));
+    }
+
+    @Test
+    public void precision_neverSuspends() {
+        GpsSamplingPolicy p = new GpsSamplingPolicy(Profile.PRECISION, true, 0);
+        p.evaluate(20_000);
+        assertEquals(State.SLOWING, p.state());
+        p.evaluate(10 * 60_000);
+        assertEquals(State.SLOWING, p.state());
+        assertEquals(3_000, p.intervalMs());
+    }
+
+    @Test
+    public void profileFromName() {
+        assertEquals(Profile.PRECISION, Profile.fromName("precision"));
+        assertEquals(Profile.BATTERY, Profile.fromName("BATTERY"));
+        assertEquals(Profile.BALANCED, Profile.fromName(null));
+        assertEquals(Profile.BALANCED, Profile.fromName("turbo"));
+    }
+}
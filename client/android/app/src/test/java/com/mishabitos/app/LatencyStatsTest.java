@@ -0,0 +1,37 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyStatsTest {
+
+    @Test
+    public void emptyHasNoPercentiles() {
+        LatencyStats s = new LatencyStats();
+        assertEquals(-1, s.percentileMs(50));
+        assertEquals(0, s.meanMs());
+    }
+
+    @Test
+    public void percentilesFallInBuckets() {
+        LatencyStats s = new LatencyStats();
+        for (int i = 0; i < 90; i++) s.record(80, true);   // bucket ≤100
+        for (int i = 0; i < 9; i++) s.record(700, true);   // bucket ≤800
+        s.record(30_000, false);                           // bucket abierto
+        assertEquals(100, s.percentileMs(50));
+        assertEquals(800, s.percentileMs(95));
+        assertEquals(Long.MAX_VALUE, s.percentileMs(100));
+        assertEquals(100, s.count());
+        assertEquals(1, s.errors());
+        assertEquals(30_000, s.maxMs());
+    }
+
+    @Test
+    public void boundsAreInclusive() {
+        LatencyStats s = new LatencyStats();
+        s.record(25, true);
+        s.record(0, true);
+        assertEquals(25, s.percentileMs(100));
+    }
+}
@@ -0,0 +1,165 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LocationFilterEngineTest {
+
+    private static final double ORIGIN_LAT = -34.6037;
+    private static final double ORIGIN_LNG = -58.3816;
+
+    /** Trace reproducible: [lat, lng, ts, accuracy, speed] por fix y la distancia real recorrida. */
+    private static final class Trace {
+        double[][] fixes;
+        double trueDistance;
+    }
+
+    @Test
+    public void kernels_agreeWithEachOther() {
+        double h = GeoMath.haversineMeters(ORIGIN_LAT, ORIGIN_LNG, ORIGIN_LAT + 0.001, ORIGIN_LNG + 0.001);
+        double e = GeoMath.equirectangularMeters(ORIGIN_LAT, ORIGIN_LNG, ORIGIN_LAT + 0.001, ORIGIN_LNG + 0.001);
+        assertEquals(h, e, h * 1e-3);
+        // 1 grado de latitud ≈ 111.195 km
+        assertEquals(111_195, GeoMath.haversineMeters(0, 0, 1, 0), 1);
+    }
+
+    @Test
+    public void accuracyGate_rejectsImpreciseFixes() {
+        LocationFilterEngine engine = new LocationFilterEngine(new LocationFilterEngine.AccuracyGate(20f));
+        assertTrue(engine.process(ORIGIN_LAT, ORIGIN_LNG, 0, 10f, 0));
+        assertFalse(engine.process(ORIGIN_LAT, ORIGIN_LNG, 1000, 50f, 0));
+        assertTrue(engine.process(ORIGIN_LAT, ORIGIN_LNG, 2000, LocationFilterEngine.UNKNOWN_ACCURACY, 0));
+        assertEquals(1, engine.rejectedCount());
+    }
+
+    @Test
+    public void speedGate_rejectsTeleports() {
+        LocationFilterEngine engine = new LocationFilterEngine(new LocationFilterEngine.SpeedGate(8f));
+        assertTrue(engine.process(ORIGIN_LAT, ORIGIN_LNG, 0, 5f, 0));
+        // ~200 m en 3 s
+        assertFalse(engine.process(ORIGIN_LAT + 0.0018, ORIGIN_LNG, 3000, 5f, 0));
+        // ~5 m en 3 s
+        assertTrue(engine.process(ORIGIN_LAT + 0.000045, ORIGIN_LNG, 3000, 5f, 0));
+    }
+
+    @Test
+    public void restore_continuesDistance() {
+        LocationFilterEngine engine = LocationFilterEngine.createDefault();
+        engine.restore(ORIGIN_LAT, ORIGIN_LNG, 0, 1000);
+        assertTrue(engine.process(ORIGIN_LAT + 0.0001, ORIGIN_LNG, 60_000, 5f, 1f));
+        assertEquals(1000 + 11.1, engine.totalDistanceMeters(), 0.5);
+    }
+
+    @Test
+    public void noisyWalkWithOutliers_distanceCloseToTruth() {
+        Trace trace = walkWithNoise(42);
+        LocationFilterEngine engine = LocationFilterEngine.createDefault();
+        for (double[] f : trace.fixes) engine.process(f[0], f[1], (long) f[2], (float) f[3], (float) f[4]);
+
+        double naive = naiveDistance(trace);
+        double filtered = engine.totalDistanceMeters();
+        double naiveError = Math.abs(naive - trace.trueDistance) / trace.trueDistance;
+        double filteredError = Math.abs(filtered - trace.trueDistance) / trace.trueDistance;
+        assertTrue("filteredError=" + filteredError, filteredError < 0.15);
+        assertTrue("naiveError=" + naiveError + " filteredError=" + filteredError, filteredError < naiveError / 4);
+    }
+
+    @Test
+    public void standingStill_addsAlmostNoDistance() {
+        Random rnd = new Random(5);
+        LocationFilterEngine engine = LocationFilterEngine.createDefault();
+        for (int i = 0; i < 200; i++) {
+            engine.process(ORIGIN_LAT + rnd.nextGaussian() * 4 / 111_195.0,
+                ORIGIN_LNG + rnd.nextGaussian() * 4 / 91_600.0, i * 3000L, 8f, 0f);
+        }
+        assertTrue("dist=" + engine.totalDistanceMeters(), engine.totalDistanceMeters() < 30);
+    }
+
+    /**
+     * Harness de replay: corre el trace grabado (semilla fija) varias veces sobre el mismo
+     * engine. Verifica la salida (cada fix se acepta o se rechaza, la distancia no cambia entre
+     * vueltas: reset() no deja estado) y el costo por fix que no depende del reloj: las
+     * asignaciones de memoria, que en régimen tienen que ser nulas.
+     */
+    @Test
+    public void replayHarness_sameOutputAndNoAllocationPerFix() {
+        Trace trace = walkWithNoise(7);
+        LocationFilterEngine engine = LocationFilterEngine.createDefault();
+        int accepted = replay(engine, trace);
+        double distance = engine.totalDistanceMeters();
+        int rejected = engine.rejectedCount();
+        assertTrue(distance > 0);
+        assertTrue("rejected=" + rejected, rejected > 0);
+        assertEquals(trace.fixes.length, accepted + rejected);
+
+        for (int r = 0; r < 20; r++) {
+            assertEquals(accepted, replay(engine, trace));
+            assertEquals(distance, engine.totalDistanceMeters(), 0);
+            assertEquals(rejected, engine.rejectedCount());
+        }
+
+        if (!AllocationProbe.isSupported()) return;
+        for (int r = 0; r < 200; r++) replay(engine, trace); // calentar el JIT
+        int rounds = 100;
+        double perFix = AllocationProbe.bytesPerCall(() -> {
+            for (int r = 0; r < rounds; r++) replay(engine, trace);
+        }, rounds * trace.fixes.length);
+        assertTrue(perFix + " bytes por fix", perFix < 1.0);
+    }
+
+    /** Reinicia el engine y le pasa el trace entero. Devuelve los fixes aceptados. */
+    private static int replay(LocationFilterEngine engine, Trace trace) {
+        engine.reset();
+        int accepted = 0;
+        for (double[] f : trace.fixes) {
+            if (engine.process(f[0], f[1], (long) f[2], (float) f[3], (float) f[4])) accepted++;
+        }
+        return accepted;
+    }
+
+    /** Caminata de 30 min a 1.4 m/s (fix cada 3 s), 3 min parado, ruido de 4 m y 3% de outliers. */
+    private static Trace walkWithNoise(long seed) {
+        Random rnd = new Random(seed);
+        int walking = 600, standing = 60;
+        Trace t = new Trace();
+        t.fixes = new double[walking + standing][];
+        double x = 0, y = 0, heading = 0.7;
+        for (int i = 0; i < t.fixes.length; i++) {
+            boolean moving = i < walking / 2 || i >= walking / 2 + standing;
+            if (moving) {
+                heading += rnd.nextGaussian() * 0.05;
+                double step = 1.4 * 3;
+                x += Math.sin(heading) * step;
+                y += Math.cos(heading) * step;
+                t.trueDistance += step;
+            }
+            double nx = x + rnd.nextGaussian() * 4, ny = y + rnd.nextGaussian() * 4;
+            float accuracy = (float) (5 + rnd.nextDouble() * 5);
+            if (rnd.nextDouble() < 0.03) { // salto por multipath
+                nx += (rnd.nextBoolean() ? 1 : -1) * (60 + rnd.nextDouble() * 150);
+                accuracy = rnd.nextBoolean() ? 8f : 45f;
+            }
+            double lat = ORIGIN_LAT + ny / GeoMath.METERS_PER_DEG_LAT;
+            double lng = ORIGIN_LNG + nx / GeoMath.metersPerDegLng(ORIGIN_LAT);
+            t.fixes[i] = new double[]{lat, lng, i * 3000.0, accuracy, moving ? 1.4 : 0};
+        }
+        return t;
+    }
+
+    /** Lo que hacía el servicio antes: sumar todo salto de 5 m o más. */
+    private static double naiveDistance(Trace t) {
+        double total = 0;
+        double[] last = null;
+        for (double[] f : t.fixes) {
+            if (last == null) { last = f; continue; }
+            double d = GeoMath.haversineMeters(last[0], last[1], f[0], f[1]);
+            if (d < 5) continue;
+            total += d;
+            last = f;
+        }
+        return total;
+    }
+}
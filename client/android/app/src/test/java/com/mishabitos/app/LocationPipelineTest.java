@@ -0,0 +1,85 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mishabitos.app.GpsSamplingPolicy.Profile;
+
+public class LocationPipelineTest {
+
+    private static final long TIMEOUT_MS = 5 * 60_000L;
+    private static final double LAT0 = -34.6037;
+    private static final double LNG0 = -58.3816;
+    private static final double DEG_PER_METER = 1.0 / GeoMath.METERS_PER_DEG_LAT;
+
+    private int stored;
+    private LocationPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        stored = 0;
+        PathSimplifier simplifier = new PathSimplifier((lat, lng, ts, speed) -> stored++);
+        pipeline = new LocationPipeline(LocationFilterEngine.createDefault(), simplifier, TIMEOUT_MS);
+        pipeline.start(new GpsSamplingPolicy(Profile.BALANCED, true, 0), 0);
+    }
+
+    @Test
+    public void acceptedFixExtendsInactivityDeadline() {
+        assertEquals(TIMEOUT_MS, pipeline.inactivityDeadlineMs());
+
+        int r = pipeline.onFix(10_000, LAT0, LNG0, 10_000, 5f, 1.4f);
+        assertTrue((r & LocationPipeline.ACCEPTED) != 0);
+        assertEquals(10_000 + TIMEOUT_MS, pipeline.inactivityDeadlineMs());
+
+        // Mismo punto: lo descarta el filtro y el deadline no se mueve
+        r = pipeline.onFix(13_000, LAT0, LNG0, 13_000, 5f, 0f);
+        assertEquals(0, r & LocationPipeline.ACCEPTED);
+        assertEquals(10_000 + TIMEOUT_MS, pipeline.inactivityDeadlineMs());
+    }
+
+    @Test
+    public void speedResumesSamplingFromSlowing() {
+        pipeline.policy().evaluate(20_000);
+        assertEquals(GpsSamplingPolicy.State.SLOWING, pipeline.policy().state());
+
+        int r = pipeline.onFix(21_000, LAT0, LNG0, 21_000, 5f, 1.4f);
+        assertTrue((r & LocationPipeline.SAMPLING_CHANGED) != 0);
+        assertEquals(GpsSamplingPolicy.State.MOVING, pipeline.policy().state());
+    }
+
+    @Test
+    public void rejectedFixDoesNotResumeSampling() {
+        pipeline.onFix(1_000, LAT0, LNG0, 1_000, 5f, 1.4f);
+        pipeline.policy().evaluate(30_000);
+        assertEquals(GpsSamplingPolicy.State.SLOWING, pipeline.policy().state());
+
+        // Rebote por multipath: precisión mala y velocidad alta, lo descarta el filtro
+        int r = pipeline.onFix(31_000, LAT0 + 200 * DEG_PER_METER, LNG0, 31_000, 80f, 6f);
+        assertEquals(0, r);
+        assertEquals(GpsSamplingPolicy.State.SLOWING, pipeline.policy().state());
+    }
+
+    @Test
+    public void steadyStateFixesDoNotAllocate() {
+        if (!AllocationProbe.isSupported()) return;
+
+        walk(0, 20_000); // calentar el JIT
+        int n = 100_000;
+        double perFix = AllocationProbe.bytesPerCall(() -> walk(20_000, n), n);
+
+        assertTrue("el simplificador debería haber guardado puntos", stored > 0);
+        assertTrue(perFix + " bytes por fix", perFix < 1.0);
+    }
+
+    /** Caminata en zigzag a 1.4 m/s, un fix por segundo. */
+    private void walk(int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            long t = i * 1000L;
+            double east = i * 1.4;
+            double north = ((i / 20) % 2 == 0) ? (i % 20) * 1.4 : (20 - i % 20) * 1.4;
+            pipeline.onFix(t, LAT0 + north * DEG_PER_METER, LNG0 + east * DEG_PER_METER, t, 5f, 1.4f);
+        }
+    }
+}
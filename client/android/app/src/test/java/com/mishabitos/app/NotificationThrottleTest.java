@@ -0,0 +1,75 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class NotificationThrottleTest {
+
+    @Test
+    public void firstValuePostsAndRepeatsAreSkipped() {
+        NotificationThrottle t = new NotificationThrottle(2000);
+        assertEquals(NotificationThrottle.POST, t.offer(10, 0));
+        assertEquals(NotificationThrottle.SKIP, t.offer(10, 5000));
+        assertEquals(1, t.avoidedCount());
+    }
+
+    @Test
+    public void burstIsCoalescedAndLastValueFlushed() {
+        NotificationThrottle t = new NotificationThrottle(2000);
+        assertEquals(NotificationThrottle.POST, t.offer(1, 0));
+        assertEquals(NotificationThrottle.SCHEDULE, t.offer(2, 100));
+        assertEquals(1900, t.flushDelayMs(100));
+        assertEquals(NotificationThrottle.SKIP, t.offer(3, 200));
+        assertEquals(NotificationThrottle.SKIP, t.offer(4, 300));
+
+        assertTrue(t.flush(2000));
+        assertEquals(4, t.lastValue());
+        assertFalse(t.hasPending());
+        assertFalse(t.flush(2100));
+        assertEquals(2, t.avoidedCount()); // 2 y 3 nunca se publicaron
+    }
+
+    @Test
+    public void valueAfterIntervalPostsImmediately() {
+        NotificationThrottle t = new NotificationThrottle(2000);
+        t.offer(1, 0);
+        assertEquals(NotificationThrottle.POST, t.offer(2, 2000));
+        assertEquals(0, t.avoidedCount());
+    }
+
+    @Test
+    public void returningToPostedValueWhilePendingStillFlushes() {
+        NotificationThrottle t = new NotificationThrottle(2000);
+        t.offer(1, 0);
+        assertEquals(NotificationThrottle.SCHEDULE, t.offer(2, 100));
+        assertEquals(NotificationThrottle.SKIP, t.offer(1, 200));
+        assertTrue(t.flush(2000));
+        assertEquals(1, t.lastValue());
+    }
+
+    @Test
+    public void overdueValueReplacesPending() {
+        NotificationThrottle t = new NotificationThrottle(2000);
+        t.offer(1, 0);
+        t.offer(2, 100);
+        // El flush agendado se demoró: el siguiente evento publica directamente
+        assertEquals(NotificationThrottle.POST, t.offer(3, 2500));
+        assertFalse(t.hasPending());
+        assertFalse(t.flush(2600));
+        assertEquals(1, t.avoidedCount());
+    }
+
+    @Test
+    public void longerIntervalAppliesFromNextOffer() {
+        NotificationThrottle t = new NotificationThrottle(2000);
+        t.offer(1, 0);
+        t.setMinIntervalMs(60_000);
+        assertEquals(NotificationThrottle.SCHEDULE, t.offer(2, 5000));
+        assertEquals(55_000, t.flushDelayMs(5000));
+        // De vuelta al intervalo corto (pantalla encendida): ya venció
+        t.setMinIntervalMs(2000);
+        assertEquals(0, t.flushDelayMs(5000));
+        assertTrue(t.flush(5000));
+    }
+}
@@ -0,0 +1,184 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PathSimplifierTest {
+
+    private static final double TOLERANCE_M = 4.0;
+    private static final double ORIGIN_LAT = -34.6037;
+    private static final double ORIGIN_LNG = -58.3816;
+    private static final double M_PER_DEG = GeoMath.METERS_PER_DEG_LAT;
+    // Error de GPS de un teléfono en la calle: ~5 m, correlacionado entre fixes seguidos
+    // (multipath y satélites cambian despacio), más un poco de ruido blanco
+    private static final double GPS_SIGMA_M = 5.0;
+    private static final double GPS_CORRELATION = 0.9;
+    private static final double GPS_WHITE_M = 1.5;
+    private static final float GPS_ACCURACY_M = 8f;
+
+    /**
+     * Trace sintético (no grabado): [lat, lng, ts, speed] por punto, en orden. Con
+     * {@link #gpsNoise} cada punto lleva el error del receptor descrito arriba.
+     */
+    private static final class Trace {
+        final List<double[]> points = new ArrayList<>();
+        private final Random rnd;
+        private double ex, ey;
+
+        Trace() {
+            this(null);
+        }
+
+        private Trace(Random rnd) {
+            this.rnd = rnd;
+        }
+
+        static Trace gpsNoise(long seed) {
+            return new Trace(new Random(seed));
+        }
+
+        void add(double xMeters, double yMeters, long ts) {
+            if (rnd != null) {
+                double innovation = GPS_SIGMA_M * Math.sqrt(1 - GPS_CORRELATION * GPS_CORRELATION);
+                ex = GPS_CORRELATION * ex + innovation * rnd.nextGaussian();
+                ey = GPS_CORRELATION * ey + innovation * rnd.nextGaussian();
+                xMeters += ex + GPS_WHITE_M * rnd.nextGaussian();
+                yMeters += ey + GPS_WHITE_M * rnd.nextGaussian();
+            }
+            double lat = ORIGIN_LAT + yMeters / M_PER_DEG;
+            double lng = ORIGIN_LNG + xMeters / GeoMath.metersPerDegLng(ORIGIN_LAT);
+            points.add(new double[]{lat, lng, ts, 1.5});
+        }
+    }
+
+    private static final class Result {
+        final List<double[]> input = new ArrayList<>(); // lo que recibió el simplificador
+        final List<double[]> kept = new ArrayList<>();
+        double ratio; // fixes crudos por punto guardado
+        double maxDeviation;
+    }
+
+    // Los trazos con ruido de GPS pasan por el filtro por defecto antes del simplificador,
+    // como en LocationTrackingService: el ratio es de fixes crudos a puntos guardados. Con
+    // este ruido y 4 m de tolerancia queda entre 6x y 9x según la semilla (no 10x: eso sólo
+    // se veía con ruido de menos de un metro)
+    private static final double MIN_RATIO_UNDER_GPS_NOISE = 6;
+
+    @Test
+    public void straightWalk_compressesDespiteGpsNoise() {
+        Trace t = Trace.gpsNoise(1);
+        for (int i = 0; i < 1200; i++) {
+            double along = i * 5.4;
+            t.add(along * 0.8, along * 0.6, i * 3000L);
+        }
+        Result r = filterAndSimplify(t);
+        assertTrue("ratio=" + r.ratio, r.ratio >= MIN_RATIO_UNDER_GPS_NOISE);
+        assertTrue("maxDeviation=" + r.maxDeviation, r.maxDeviation <= TOLERANCE_M + 1e-6);
+    }
+
+    @Test
+    public void cityBlocks_compressesDespiteGpsNoise() {
+        Trace t = Trace.gpsNoise(2);
+        double x = 0, y = 0;
+        int[][] dirs = {{1, 0}, {0, 1}, {1, 0}, {0, -1}};
+        long ts = 0;
+        for (int block = 0; block < 40; block++) {
+            int[] d = dirs[block % dirs.length];
+            for (int i = 0; i < 25; i++) { // cuadras de ~130 m
+                x += d[0] * 5.2;
+                y += d[1] * 5.2;
+                ts += 3000;
+                t.add(x, y, ts);
+            }
+        }
+        Result r = filterAndSimplify(t);
+        assertTrue("ratio=" + r.ratio, r.ratio >= MIN_RATIO_UNDER_GPS_NOISE);
+        assertTrue("maxDeviation=" + r.maxDeviation, r.maxDeviation <= TOLERANCE_M + 1e-6);
+    }
+
+    @Test
+    public void curvedLoop_staysWithinTolerance() {
+        Trace t = Trace.gpsNoise(3);
+        double radius = 150;
+        for (int i = 0; i < 600; i++) {
+            double a = i * 5.3 / radius;
+            t.add(radius * Math.cos(a), radius * Math.sin(a), i * 3000L);
+        }
+        Result r = filterAndSimplify(t);
+        assertTrue("ratio=" + r.ratio, r.ratio > 2);
+        assertTrue("maxDeviation=" + r.maxDeviation, r.maxDeviation <= TOLERANCE_M + 1e-6);
+    }
+
+    @Test
+    public void keepsFirstAndLastPoint() {
+        Trace t = new Trace();
+        for (int i = 0; i < 100; i++) t.add(i * 5, 0, i);
+        Result r = simplify(t);
+        assertEquals(t.points.get(0)[2], r.kept.get(0)[2], 0);
+        assertEquals(t.points.get(99)[2], r.kept.get(r.kept.size() - 1)[2], 0);
+    }
+
+    @Test
+    public void zeroTolerance_keepsEveryTurn() {
+        Trace t = new Trace();
+        for (int i = 0; i < 10; i++) t.add(i * 5, (i % 2) * 5, i);
+        Result r = simplify(t, 0);
+        assertEquals(10, r.kept.size());
+    }
+
+    private static Result simplify(Trace t) {
+        return simplify(t, TOLERANCE_M);
+    }
+
+    private static Result simplify(Trace t, double tolerance) {
+        Result r = new Result();
+        PathSimplifier s = simplifier(r, tolerance);
+        for (double[] p : t.points) {
+            r.input.add(p);
+            s.add(p[0], p[1], (long) p[2], (float) p[3]);
+        }
+        return finish(s, r, t.points.size());
+    }
+
+    private static Result filterAndSimplify(Trace t) {
+        Result r = new Result();
+        PathSimplifier s = simplifier(r, TOLERANCE_M);
+        LocationFilterEngine filter = LocationFilterEngine.createDefault();
+        for (double[] p : t.points) {
+            if (!filter.process(p[0], p[1], (long) p[2], GPS_ACCURACY_M, (float) p[3])) continue;
+            double[] f = {filter.lat(), filter.lng(), filter.timestamp(), p[3]};
+            r.input.add(f);
+            s.add(f[0], f[1], (long) f[2], (float) f[3]);
+        }
+        return finish(s, r, t.points.size());
+    }
+
+    private static PathSimplifier simplifier(Result r, double tolerance) {
+        return new PathSimplifier(tolerance, PathSimplifier.DEFAULT_MAX_WINDOW,
+            (lat, lng, ts, speed) -> r.kept.add(new double[]{lat, lng, ts, speed}));
+    }
+
+    private static Result finish(PathSimplifier s, Result r, int rawFixes) {
+        s.flush();
+        r.ratio = (double) rawFixes / r.kept.size();
+
+        // Desviación de cada punto que recibió el simplificador respecto del segmento que lo cubre
+        int seg = 0;
+        for (double[] p : r.input) {
+            while (seg < r.kept.size() - 2 && p[2] > r.kept.get(seg + 1)[2]) seg++;
+            double[] a = r.kept.get(seg);
+            double[] b = r.kept.get(Math.min(seg + 1, r.kept.size() - 1));
+            double mLng = GeoMath.metersPerDegLng(a[0]);
+            double ex = (b[1] - a[1]) * mLng, ey = (b[0] - a[0]) * M_PER_DEG;
+            double px = (p[1] - a[1]) * mLng, py = (p[0] - a[0]) * M_PER_DEG;
+            double d = Math.sqrt(PathSimplifier.distanceToSegmentSq(px, py, ex, ey, ex * ex + ey * ey));
+            r.maxDeviation = Math.max(r.maxDeviation, d);
+        }
+        return r;
+    }
+}
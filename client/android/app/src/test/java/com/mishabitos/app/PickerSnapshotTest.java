@@ -0,0 +1,137 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PickerSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("picker", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static PickerSnapshot sample(int n) {
+        List<PickerSnapshot.Item> categories = new ArrayList<>();
+        List<PickerSnapshot.Item> planillas = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            categories.add(new PickerSnapshot.Item("c" + i, "Categoría " + i));
+            planillas.add(new PickerSnapshot.Item("p" + i, "Planilla año " + i));
+        }
+        return new PickerSnapshot(categories, planillas);
+    }
+
+    @Test
+    public void roundTripThroughFile() throws Exception {
+        PickerSnapshot s = sample(3).withPlanillas(Arrays.asList(new PickerSnapshot.Item(null, "Sin id")));
+        s.write(file);
+        PickerSnapshot read = PickerSnapshot.read(file);
+        assertNotNull(read);
+        assertEquals(3, read.categories.size());
+        assertEquals("c2", read.categories.get(2).id);
+        assertEquals("Categoría 2", read.categories.get(2).name);
+        assertEquals(1, read.planillas.size());
+        assertEquals("", read.planillas.get(0).id);
+        assertEquals("Sin id", read.planillas.get(0).toString());
+    }
+
+    @Test
+    public void corruptOrMissingIsNull() throws Exception {
+        byte[] data = sample(5).encode();
+        data[30] ^= 1;
+        assertNull(PickerSnapshot.decode(data));
+        assertNull(PickerSnapshot.decode(Arrays.copyOf(sample(5).encode(), 20)));
+        file.delete();
+        assertNull(PickerSnapshot.read(file));
+    }
+
+    @Test
+    public void emptyRoundTrip() {
+        PickerSnapshot read = PickerSnapshot.decode(PickerSnapshot.EMPTY.encode());
+        assertNotNull(read);
+        assertTrue(read.categories.isEmpty());
+        assertTrue(read.planillas.isEmpty());
+    }
+
+    @Test
+    public void cursorsRoundTrip() {
+        PickerSnapshot s = sample(2).withCategories(sample(2).categories, "2026-01-02T10:00:00.5+00:00");
+        PickerSnapshot read = PickerSnapshot.decode(s.encode());
+        assertEquals("2026-01-02T10:00:00.5+00:00", read.categoriesCursor);
+        assertNull(read.planillasCursor);
+    }
+
+    private static List<PickerSnapshot.Item> items(String... idsAndNames) {
+        List<PickerSnapshot.Item> out = new ArrayList<>();
+        for (int i = 0; i < idsAndNames.length; i += 2) {
+            out.add(new PickerSnapshot.Item(idsAndNames[i], idsAndNames[i + 1]));
+        }
+        return out;
+    }
+
+    private static String names(List<PickerSnapshot.Item> items) {
+        StringBuilder sb = new StringBuilder();
+        for (PickerSnapshot.Item item : items) sb.append(item.name).append(',');
+        return sb.toString();
+    }
+
+    @Test
+    public void mergeUpdatesInPlaceAppendsNewAndDropsDeleted() {
+        List<PickerSnapshot.Item> current = items("1", "Comida", "2", "Transporte", "3", "Ocio");
+        List<PickerSnapshot.Item> changed = items("2", "Colectivo", "4", "Salud");
+        assertEquals("Comida,Colectivo,Ocio,Salud,", names(PickerSnapshot.merge(current, changed, null)));
+
+        java.util.Set<String> live = new java.util.HashSet<>(Arrays.asList("1", "2", "4"));
+        assertEquals("Comida,Colectivo,Salud,", names(PickerSnapshot.merge(current, changed, live)));
+        // Repetir el mismo delta no cambia nada
+        List<PickerSnapshot.Item> once = PickerSnapshot.merge(current, changed, live);
+        assertEquals(names(once), names(PickerSnapshot.merge(once, changed, live)));
+    }
+
+    @Test
+    public void maxCursorKeepsNewest() {
+        assertEquals("b", PickerSnapshot.maxCursor(null, "b"));
+        assertEquals("2026-02", PickerSnapshot.maxCursor("2026-02", "2026-01"));
+        assertEquals("2026-02", PickerSnapshot.maxCursor("2026-02", null));
+    }
+
+    /**
+     * Lo que lee QuickExpenseActivity al arrancar: un snapshot grande vuelve entero y ocupa
+     * sólo el texto más un largo de 2 bytes por string (sin JSON ni nombres de campo).
+     */
+    @Test
+    public void largeSnapshotIsCompactAndRoundTrips() {
+        PickerSnapshot s = sample(200);
+        byte[] data = s.encode();
+        int text = 0;
+        for (PickerSnapshot.Item item : s.categories) text += utf8Length(item.id) + utf8Length(item.name);
+        for (PickerSnapshot.Item item : s.planillas) text += utf8Length(item.id) + utf8Length(item.name);
+        assertTrue("snapshot de " + data.length + " bytes", data.length <= text + 4 * 400 + 32);
+
+        PickerSnapshot read = PickerSnapshot.decode(data);
+        assertNotNull(read);
+        assertEquals(200, read.categories.size());
+        assertEquals(200, read.planillas.size());
+        assertEquals("Categoría 199", read.categories.get(199).name);
+        assertEquals("p199", read.planillas.get(199).id);
+        assertEquals("Planilla año 199", read.planillas.get(199).name);
+    }
+
+    private static int utf8Length(String s) {
+        return s.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,91 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SessionStatsTest {
+
+    private static final double LAT0 = -34.6037;
+    private static final double LNG0 = -58.3816;
+
+    /** Camina hacia el norte {@code seconds} segundos a {@code mps}, un fix por segundo. */
+    private static double walk(SessionStats s, long fromMs, int seconds, double mps, double startNorth) {
+        double north = startNorth;
+        for (int i = 1; i <= seconds; i++) {
+            north += mps;
+            s.onFix(fromMs + i * 1000L, LAT0 + north / GeoMath.METERS_PER_DEG_LAT, LNG0, mps);
+        }
+        return north;
+    }
+
+    @Test
+    public void movingAndPausedTime() {
+        SessionStats s = new SessionStats();
+        s.start(0);
+        s.onFix(0, LAT0, LNG0, 0);
+        double north = walk(s, 0, 60, 1.5, 0);          // 60 s caminando
+        // 2 min parado: el filtro no acepta fixes, el siguiente llega tarde
+        north += 1.5;
+        s.onFix(180_000, LAT0 + north / GeoMath.METERS_PER_DEG_LAT, LNG0, 1.5);
+        walk(s, 180_000, 60, 1.5, north);               // otros 60 s
+
+        assertEquals(120_000, s.movingMs());
+        assertEquals(240_000, s.elapsedMs(240_000));
+        assertEquals(120_000, s.pausedMs(240_000));
+        assertEquals(181.5, s.distanceMeters(), 1e-9);
+
+        // Mientras corre, lo transcurrido sigue al reloj; al terminar queda fijo
+        assertEquals(300_000, s.elapsedMs(300_000));
+        s.finish(250_000);
+        assertEquals(250_000, s.elapsedMs(900_000));
+    }
+
+    @Test
+    public void kilometerSplitsAreInterpolated() {
+        SessionStats s = new SessionStats();
+        s.start(0);
+        s.onFix(0, LAT0, LNG0, 0);
+        double north = walk(s, 0, 500, 1.25, 0);        // 625 m en 500 s → 800 s/km
+        walk(s, 500_000, 750, 2.5, north);              // 1875 m en 750 s → 400 s/km
+
+        assertEquals(2500, s.distanceMeters(), 1e-6);
+        assertEquals(2, s.splitCount());
+        assertEquals(500_000 + 150_000, s.splitMs(0));  // 625 m lentos + 375 m rápidos
+        assertEquals(400_000, s.splitMs(1));
+        assertEquals(1_250_000 / 2500.0, s.averagePaceSecPerKm(), 1e-9);
+    }
+
+    @Test
+    public void rollingPaceTracksRecentWindow() {
+        SessionStats s = new SessionStats(500);
+        s.start(0);
+        s.onFix(0, LAT0, LNG0, 0);
+        double north = walk(s, 0, 600, 1.0, 0);         // 1000 s/km
+        assertEquals(1000, s.rollingPaceSecPerKm(), 1e-9);
+
+        walk(s, 600_000, 300, 2.0, north);              // 600 m a 500 s/km
+        assertEquals(500, s.rollingPaceSecPerKm(), 1e-9);
+        assertTrue(s.averagePaceSecPerKm() > 500);
+    }
+
+    @Test
+    public void boundingBox() {
+        SessionStats s = new SessionStats();
+        assertFalse(s.hasBounds());
+        s.start(0);
+        s.onFix(0, 1.0, 2.0, 0);
+        s.onFix(1000, 1.5, 1.0, 1);
+        s.onFix(2000, 0.5, 3.0, 1);
+        assertTrue(s.hasBounds());
+        assertEquals(0.5, s.minLat(), 0);
+        assertEquals(1.5, s.maxLat(), 0);
+        assertEquals(1.0, s.minLng(), 0);
+        assertEquals(3.0, s.maxLng(), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void splitOutOfRange() {
+        new SessionStats().splitMs(0);
+    }
+}
@@ -0,0 +1,137 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class StepCounterCoreTest {
+
+    private static final TimeZone BUENOS_AIRES = TimeZone.getTimeZone("America/Argentina/Buenos_Aires");
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    private static long at(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar c = new GregorianCalendar(zone);
+        c.clear();
+        c.set(year, month - 1, day, hour, minute);
+        return c.getTimeInMillis();
+    }
+
+    @Test
+    public void countsFromBaselineAndHandlesReboot() {
+        StepCounterCore core = new StepCounterCore(new DayClock(BUENOS_AIRES));
+        long t = at(BUENOS_AIRES, 2026, 10, 16, 9, 0);
+
+        int r = core.onSensorValue(5000, t);
+        assertTrue((r & StepCounterCore.DAY_ROLLED) != 0);
+        assertEquals(20261016, core.day());
+        assertEquals(0, core.steps());
+
+        assertEquals(StepCounterCore.STEPS_CHANGED, core.onSensorValue(5120, t + 60_000));
+        assertEquals(120, core.steps());
+        assertEquals(StepCounterCore.UNCHANGED, core.onSensorValue(5120, t + 61_000));
+
+        // Reinicio del teléfono: el contador del sensor vuelve a cero
+        r = core.onSensorValue(10, t + 120_000);
+        assertTrue((r & StepCounterCore.BASELINE_CHANGED) != 0);
+        assertEquals(10, core.baseline());
+        assertEquals(0, core.steps());
+    }
+
+    @Test
+    public void rollsOverByEventTimeNotDeliveryTime() {
+        StepCounterCore core = new StepCounterCore(new DayClock(BUENOS_AIRES));
+        core.restore(20261016, 300, 1000);
+        // Lote entregado después de medianoche con un paso de las 23:59
+        assertEquals(StepCounterCore.STEPS_CHANGED, core.onSensorValue(1400, at(BUENOS_AIRES, 2026, 10, 16, 23, 59)));
+        assertEquals(400, core.steps());
+
+        int r = core.onSensorValue(1410, at(BUENOS_AIRES, 2026, 10, 17, 0, 1));
+        assertTrue((r & StepCounterCore.DAY_ROLLED) != 0);
+        assertEquals(20261017, core.day());
+        assertEquals(0, core.steps());
+        assertEquals(1410, core.baseline());
+    }
+
+    @Test
+    public void midnightCheckRollsWithoutSensorEvent() {
+        StepCounterCore core = new StepCounterCore(new DayClock(BUENOS_AIRES));
+        long morning = at(BUENOS_AIRES, 2026, 10, 16, 9, 0);
+        core.onSensorValue(5000, morning);
+        core.onSensorValue(5200, morning + 1000);
+        assertEquals(at(BUENOS_AIRES, 2026, 10, 17, 0, 0), core.nextMidnightMs());
+
+        assertEquals(StepCounterCore.UNCHANGED, core.checkDay(morning + 3_600_000));
+        int r = core.checkDay(core.nextMidnightMs());
+        assertTrue((r & StepCounterCore.DAY_ROLLED) != 0);
+        assertEquals(0, core.steps());
+        assertEquals(5200, core.baseline());
+        assertEquals(StepCounterCore.STEPS_CHANGED, core.onSensorValue(5230, core.nextMidnightMs() - 3_600_000));
+        assertEquals(30, core.steps());
+    }
+
+    @Test
+    public void restoredStaleDayWithoutReadingsWaitsForBaseline() {
+        StepCounterCore core = new StepCounterCore(new DayClock(BUENOS_AIRES));
+        core.restore(20261015, 8000, 1000);
+        core.checkDay(at(BUENOS_AIRES, 2026, 10, 16, 7, 0));
+        assertEquals(20261016, core.day());
+        assertEquals(-1, core.baseline());
+        core.onSensorValue(9500, at(BUENOS_AIRES, 2026, 10, 16, 7, 1));
+        assertEquals(0, core.steps());
+    }
+
+    @Test
+    public void dstDayBoundariesComeFromCalendar() {
+        DayClock clock = new DayClock(NEW_YORK);
+        // 8 de marzo de 2026: el día dura 23 horas
+        clock.dayKey(at(NEW_YORK, 2026, 3, 8, 12, 0));
+        assertEquals(at(NEW_YORK, 2026, 3, 9, 0, 0), clock.nextMidnightMs());
+        assertEquals(at(NEW_YORK, 2026, 3, 8, 0, 0) + 23 * 3_600_000L, clock.nextMidnightMs());
+    }
+
+    @Test
+    public void timeZoneChangeMovesBoundary() {
+        DayClock clock = new DayClock(BUENOS_AIRES);
+        long t = at(BUENOS_AIRES, 2026, 10, 16, 22, 0); // 01:00 del 17 en UTC
+        assertEquals(20261016, clock.dayKey(t));
+        clock.setTimeZone(TimeZone.getTimeZone("UTC"));
+        assertEquals(20261017, clock.dayKey(t));
+    }
+
+    @Test
+    public void steadyStateEventsDoNotAllocate() throws Exception {
+        if (!AllocationProbe.isSupported()) return;
+
+        File file = File.createTempFile("steps", ".bin");
+        try {
+            StepStore store = new StepStore(file);
+            NotificationThrottle throttle = new NotificationThrottle(2000);
+            StepCounterCore core = new StepCounterCore(new DayClock(BUENOS_AIRES));
+            long start = at(BUENOS_AIRES, 2026, 10, 16, 6, 0);
+
+            feed(core, store, throttle, start, 0, 20_000); // calentar el JIT
+            int n = 100_000;
+            double perEvent = AllocationProbe.bytesPerCall(() -> feed(core, store, throttle, start, 20_000, n), n);
+
+            assertEquals(20261016, core.day()); // 60k s desde las 6:00: sigue siendo el mismo día
+            assertTrue(perEvent + " bytes por evento", perEvent < 1.0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Lo mismo que hace el servicio por evento, sin la parte de Android. Un paso cada 500 ms. */
+    private static void feed(StepCounterCore core, StepStore store, NotificationThrottle throttle,
+                             long start, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            core.onSensorValue(100_001 + i, start + i * 500L);
+            store.update(core.day(), core.steps(), core.baseline(), start + i * 500L);
+            throttle.offer(core.steps(), i * 500L);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.mishabitos.app.StepHistory.Resolution;
+
+public class StepHistoryTest {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Argentina/Buenos_Aires");
+    private static final long MINUTE = 60_000L;
+
+    private File file;
+    private StepHistory history;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("step_history", ".bin");
+        history = StepHistory.open(file, ZONE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        history.close();
+        file.delete();
+    }
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        Calendar c = new GregorianCalendar(ZONE);
+        c.clear();
+        c.set(year, month - 1, day, hour, minute);
+        return c.getTimeInMillis();
+    }
+
+    private List<long[]> query(Resolution r, long from, long to) {
+        return query(r, from, to, to);
+    }
+
+    private List<long[]> query(Resolution r, long from, long to, long now) {
+        List<long[]> out = new ArrayList<>();
+        history.query(r, from, to, now, (start, steps) -> out.add(new long[] { start, steps }));
+        return out;
+    }
+
+    @Test
+    public void rollupsMatchMinuteBuckets() {
+        long t = at(2026, 10, 16, 9, 0);
+        for (int m = 0; m < 120; m++) history.add(t + m * MINUTE + 5_000, 10 + m % 3);
+
+        List<long[]> minutes = query(Resolution.MINUTE, t, t + 119 * MINUTE);
+        assertEquals(120, minutes.size());
+        assertEquals(t, minutes.get(0)[0]);
+        assertEquals(10, minutes.get(0)[1]);
+        assertEquals(11, minutes.get(1)[1]);
+
+        List<long[]> hours = query(Resolution.HOUR, t, t + 119 * MINUTE);
+        assertEquals(2, hours.size());
+        assertEquals(t + 60 * MINUTE, hours.get(1)[0]);
+        long sum = 0;
+        for (long[] m : minutes) sum += m[1];
+        assertEquals(sum, hours.get(0)[1] + hours.get(1)[1]);
+
+        List<long[]> days = query(Resolution.DAY, t, t);
+        assertEquals(1, days.size());
+        assertEquals(at(2026, 10, 16, 0, 0), days.get(0)[0]);
+        assertEquals(sum, days.get(0)[1]);
+    }
+
+    @Test
+    public void daysAreLocalAndWeeksStartOnMonday() {
+        history.add(at(2026, 10, 11, 23, 59), 100); // domingo
+        history.add(at(2026, 10, 12, 0, 1), 50);    // lunes
+        history.add(at(2026, 10, 18, 23, 0), 25);   // domingo siguiente
+
+        List<long[]> days = query(Resolution.DAY, at(2026, 10, 11, 12, 0), at(2026, 10, 12, 12, 0));
+        assertEquals(2, days.size());
+        assertEquals(100, days.get(0)[1]);
+        assertEquals(50, days.get(1)[1]);
+
+        List<long[]> weeks = query(Resolution.WEEK, at(2026, 10, 11, 0, 0), at(2026, 10, 18, 0, 0));
+        assertEquals(2, weeks.size());
+        assertEquals(at(2026, 10, 5, 0, 0), weeks.get(0)[0]);
+        assertEquals(100, weeks.get(0)[1]);
+        assertEquals(at(2026, 10, 12, 0, 0), weeks.get(1)[0]);
+        assertEquals(75, weeks.get(1)[1]);
+    }
+
+    @Test
+    public void oldMinutesFallOutOfRingButDaysRemain() {
+        long start = at(2026, 1, 1, 12, 0);
+        history.add(start, 500);
+        long later = start + 100L * 24 * 60 * MINUTE; // 100 días: más que el anillo de minutos
+        history.add(later, 7);
+
+        assertTrue(query(Resolution.MINUTE, start, start).isEmpty());
+        assertEquals(1, query(Resolution.MINUTE, later, later).size());
+        List<long[]> days = query(Resolution.DAY, start, start);
+        assertEquals(1, days.size());
+        assertEquals(500, days.get(0)[1]);
+        // Los días intermedios existen con 0 pasos
+        assertEquals(101, history.countBuckets(Resolution.DAY, start, later, later));
+    }
+
+    @Test
+    public void reusedSlotsAreCleared() {
+        long t = at(2026, 3, 1, 8, 0);
+        history.add(t, 40);
+        long lap = t + StepHistory.HOUR_SLOTS * 60 * MINUTE; // misma posición del anillo de horas
+        history.add(lap, 3);
+        List<long[]> hours = query(Resolution.HOUR, lap, lap);
+        assertEquals(3, hours.get(0)[1]);
+    }
+
+    @Test
+    public void survivesReopen() throws Exception {
+        long t = at(2026, 10, 16, 9, 30);
+        history.add(t, 42);
+        history.close();
+
+        history = StepHistory.open(file, ZONE);
+        assertEquals(StepHistory.FILE_SIZE, file.length());
+        List<long[]> minutes = query(Resolution.MINUTE, t, t);
+        assertEquals(1, minutes.size());
+        assertEquals(42, minutes.get(0)[1]);
+        history.add(t, 8);
+        assertEquals(50, query(Resolution.DAY, t, t).get(0)[1]);
+    }
+
+    @Test
+    public void bucketsAfterLastStepAreZeroUpToNow() {
+        long t = at(2026, 10, 16, 9, 0);
+        // Sin ningún paso todavía la serie también sale completa
+        List<long[]> empty = query(Resolution.HOUR, t, t + 120 * MINUTE);
+        assertEquals(3, empty.size());
+        assertEquals(0, empty.get(2)[1]);
+
+        history.add(t, 1);
+        long now = t + 185 * MINUTE; // 12:05
+        List<long[]> hours = query(Resolution.HOUR, t, t + 24 * 60 * MINUTE, now);
+        assertEquals(4, hours.size()); // 9, 10, 11 y 12 h; nada después de ahora
+        assertEquals(1, hours.get(0)[1]);
+        assertEquals(t + 180 * MINUTE, hours.get(3)[0]);
+        assertEquals(0, hours.get(3)[1]);
+        assertEquals(4, history.countBuckets(Resolution.HOUR, t, t + 24 * 60 * MINUTE, now));
+    }
+
+    @Test
+    public void futureAndInvertedRangesReturnNothing() {
+        long t = at(2026, 10, 16, 9, 0);
+        history.add(t, 1);
+        assertTrue(query(Resolution.MINUTE, t + 10 * MINUTE, t + 20 * MINUTE, t).isEmpty());
+        assertTrue(query(Resolution.MINUTE, t, t - 1).isEmpty());
+        assertEquals(0, history.countBuckets(Resolution.MINUTE, t, t - 1, t));
+    }
+
+    @Test
+    public void resolutionFromName() {
+        assertEquals(Resolution.WEEK, Resolution.fromName("week"));
+        assertEquals(Resolution.MINUTE, Resolution.fromName("MINUTE"));
+        assertNull(Resolution.fromName("year"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+public class StepStoreTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("steps", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void flushedValuesSurviveReload() throws Exception {
+        StepStore store = new StepStore(file);
+        assertFalse(store.load());
+        assertEquals(-1, store.baseline());
+
+        store.update(20261016, 4321, 98_765L, 1000L);
+        store.flush();
+        assertFalse(store.isDirty());
+        assertEquals(StepStore.FILE_SIZE, file.length());
+
+        StepStore reloaded = new StepStore(file);
+        assertTrue(reloaded.load());
+        assertEquals(20261016, reloaded.day());
+        assertEquals(4321, reloaded.steps());
+        assertEquals(98_765L, reloaded.baseline());
+        assertEquals(1000L, reloaded.updatedAtMs());
+    }
+
+    @Test
+    public void onlyDayOrBaselineChangesAreCritical() {
+        StepStore store = new StepStore(file);
+        assertTrue(store.update(20261016, 0, 500, 0));
+        assertFalse(store.update(20261016, 10, 500, 1));
+        assertTrue(store.isDirty());
+        assertFalse(store.update(20261016, 10, 500, 2)); // sin cambios
+        assertTrue(store.update(20261016, 0, 3, 3));     // reinicio del teléfono
+        assertTrue(store.update(20261017, 0, 3, 4));     // día nuevo
+    }
+
+    @Test
+    public void unflushedChangesAreNotOnDisk() throws Exception {
+        StepStore store = new StepStore(file);
+        store.update(20261016, 100, 500, 0);
+        store.flush();
+        store.update(20261016, 150, 500, 1);
+
+        StepStore reloaded = new StepStore(file);
+        assertTrue(reloaded.load());
+        assertEquals(100, reloaded.steps());
+    }
+
+    @Test
+    public void corruptFileIsRejected() throws Exception {
+        StepStore store = new StepStore(file);
+        store.update(20261016, 100, 500, 0);
+        store.flush();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(12);
+            raf.write(0x7F); // pasos alterados sin recalcular el CRC
+        }
+        assertFalse(new StepStore(file).load());
+    }
+
+    @Test
+    public void leftoverTempFileDoesNotAffectLoad() throws Exception {
+        StepStore store = new StepStore(file);
+        store.update(20261016, 100, 500, 0);
+        store.flush();
+        // Escritura interrumpida antes del rename
+        try (FileOutputStream out = new FileOutputStream(file.getPath() + ".tmp")) {
+            out.write(new byte[7]);
+        }
+        StepStore reloaded = new StepStore(file);
+        assertTrue(reloaded.load());
+        assertEquals(100, reloaded.steps());
+
+        reloaded.update(20261016, 120, 500, 1);
+        reloaded.flush();
+        assertTrue(new StepStore(file).load());
+    }
+
+    @Test
+    public void dayKeyFormatting() {
+        assertEquals(20260305, StepStore.dayKey(2026, 3, 5));
+        assertEquals("2026-03-05", StepStore.formatDay(20260305));
+        assertEquals("2026-12-31", StepStore.formatDay(20261231));
+        assertEquals("", StepStore.formatDay(0));
+        assertEquals(20261231, StepStore.parseDay("2026-12-31"));
+        assertEquals(0, StepStore.parseDay("ayer"));
+        assertEquals(0, StepStore.parseDay(null));
+    }
+}
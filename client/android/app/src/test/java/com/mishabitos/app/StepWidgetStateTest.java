@@ -0,0 +1,44 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class StepWidgetStateTest {
+
+    @Test
+    public void firstUpdateChangesEverything() {
+        StepWidgetState s = new StepWidgetState();
+        assertEquals(StepWidgetState.STEPS_CHANGED | StepWidgetState.GOAL_CHANGED | StepWidgetState.PROGRESS_CHANGED,
+            s.update(0, 8000));
+    }
+
+    @Test
+    public void progressOnlyChangesPerBucket() {
+        StepWidgetState s = new StepWidgetState();
+        s.update(0, 8000);
+        // 80 pasos por bucket con meta 8000
+        assertEquals(StepWidgetState.STEPS_CHANGED, s.update(79, 8000));
+        assertEquals(StepWidgetState.STEPS_CHANGED | StepWidgetState.PROGRESS_CHANGED, s.update(80, 8000));
+        assertEquals(StepWidgetState.UNCHANGED, s.update(80, 8000));
+    }
+
+    @Test
+    public void goalChangeMovesProgress() {
+        StepWidgetState s = new StepWidgetState();
+        s.update(4000, 8000);
+        assertEquals(StepWidgetState.GOAL_CHANGED | StepWidgetState.PROGRESS_CHANGED, s.update(4000, 10000));
+    }
+
+    @Test
+    public void bucketIsClampedAndResetForcesRedraw() {
+        assertEquals(StepWidgetState.PROGRESS_BUCKETS, StepWidgetState.bucket(20000, 8000));
+        assertEquals(0, StepWidgetState.bucket(-5, 8000));
+        assertEquals(StepWidgetState.PROGRESS_BUCKETS, StepWidgetState.bucket(10, 0));
+
+        StepWidgetState s = new StepWidgetState();
+        s.update(100, 8000);
+        s.reset();
+        assertNotEquals(StepWidgetState.UNCHANGED, s.update(100, 8000));
+    }
+}
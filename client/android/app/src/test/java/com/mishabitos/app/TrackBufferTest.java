@@ -0,0 +1,101 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TrackBufferTest {
+
+    @Test
+    public void appendAndRead_acrossChunks() {
+        TrackBuffer buffer = new TrackBuffer();
+        int n = TrackBuffer.CHUNK_SIZE * 10 + 7;
+        for (int i = 0; i < n; i++) {
+            buffer.append(i, -i, i * 1000L, i % 100);
+        }
+        TrackBuffer.Snapshot s = buffer.snapshot();
+        assertEquals(n, s.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, s.lat(i), 0);
+            assertEquals(-i, s.lng(i), 0);
+            assertEquals(i * 1000L, s.timestamp(i));
+            assertEquals(i % 100, s.speed(i), 0);
+        }
+    }
+
+    @Test
+    public void clear_keepsPreviousSnapshotIntact() {
+        TrackBuffer buffer = new TrackBuffer();
+        buffer.append(1, 2, 3, 4);
+        TrackBuffer.Snapshot before = buffer.snapshot();
+        buffer.clear();
+        buffer.append(9, 9, 9, 9);
+
+        assertEquals(1, before.size());
+        assertEquals(1, before.lat(0), 0);
+        assertEquals(1, buffer.size());
+        assertEquals(9, buffer.snapshot().lat(0), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void snapshot_rejectsIndexBeyondSize() {
+        TrackBuffer buffer = new TrackBuffer();
+        buffer.append(1, 2, 3, 4);
+        buffer.snapshot().lat(1);
+    }
+
+    @Test
+    public void concurrentSnapshots_neverSeeTornPoints() throws Exception {
+        final TrackBuffer buffer = new TrackBuffer();
+        final int total = 200_000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread writer = new Thread(() -> {
+            try { start.await(); } catch (InterruptedException ignored) { }
+            for (int i = 0; i < total; i++) {
+                buffer.append(i, -i, i * 1000L, i % 100);
+                if (i % 50_000 == 49_999) buffer.clear();
+            }
+            done.set(true);
+        });
+
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try { start.await(); } catch (InterruptedException ignored) { }
+                while (!done.get() && failure.get() == null) {
+                    TrackBuffer.Snapshot s = buffer.snapshot();
+                    int n = s.size();
+                    for (int i = 0; i < n; i++) {
+                        double lat = s.lat(i);
+                        if (s.lng(i) != -lat
+                                || s.timestamp(i) != (long) lat * 1000L
+                                || s.speed(i) != (float) ((long) lat % 100)) {
+                            failure.compareAndSet(null, "Punto roto en índice " + i + " lat=" + lat);
+                            return;
+                        }
+                        if (i > 0 && lat != s.lat(i - 1) + 1) {
+                            failure.compareAndSet(null, "Orden inválido en índice " + i);
+                            return;
+                        }
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread t : readers) t.start();
+        start.countDown();
+        writer.join();
+        for (Thread t : readers) t.join();
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(total % 50_000, buffer.size());
+    }
+}
@@ -0,0 +1,121 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TrackCodecTest {
+
+    @Test
+    public void zigzag_roundTrip() {
+        long[] values = {0, 1, -1, 63, -64, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long v : values) {
+            assertEquals(v, TrackCodec.unzigzag(TrackCodec.zigzag(v)));
+        }
+        assertEquals(1, TrackCodec.zigzag(-1));
+        assertEquals(2, TrackCodec.zigzag(1));
+    }
+
+    @Test
+    public void binary_roundTripWithinQuantization() {
+        TrackBuffer buffer = walk(2000, 7);
+        TrackBuffer.Snapshot original = buffer.snapshot();
+
+        List<double[]> decoded = new ArrayList<>();
+        int n = TrackCodec.decode(TrackCodec.encode(original),
+            (lat, lng, ts, speed) -> decoded.add(new double[]{lat, lng, ts, speed}));
+
+        assertEquals(original.size(), n);
+        for (int i = 0; i < n; i++) {
+            double[] p = decoded.get(i);
+            assertEquals(original.lat(i), p[0], 0.5e-6);
+            assertEquals(original.lng(i), p[1], 0.5e-6);
+            assertEquals(original.timestamp(i), (long) p[2]);
+            assertEquals(original.speed(i), p[3], 0.005 + 1e-6);
+        }
+    }
+
+    @Test
+    public void binary_emptyTrack() {
+        byte[] data = TrackCodec.encode(new TrackBuffer().snapshot());
+        assertEquals(0, TrackCodec.decode(data, (lat, lng, ts, speed) -> fail("no points expected")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void binary_rejectsTruncatedData() {
+        byte[] data = TrackCodec.encode(walk(10, 1).snapshot());
+        byte[] truncated = new byte[data.length - 3];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        TrackCodec.decode(truncated, (lat, lng, ts, speed) -> { });
+    }
+
+    @Test
+    public void polyline_matchesReferenceEncoding() {
+        // Ejemplo de la documentación de encoded polyline, re-escalado a precisión 6
+        TrackBuffer buffer = new TrackBuffer();
+        buffer.append(38.5, -120.2, 0, 0);
+        buffer.append(40.7, -120.95, 0, 0);
+        buffer.append(43.252, -126.453, 0, 0);
+        String encoded = TrackCodec.encodePolyline(buffer.snapshot());
+        assertEquals("_izlhA~rlgdF_{geC~ywl@_kwzCn`{nI", encoded);
+
+        List<double[]> decoded = new ArrayList<>();
+        TrackCodec.decodePolyline(encoded, (lat, lng, ts, speed) -> decoded.add(new double[]{lat, lng}));
+        assertEquals(3, decoded.size());
+        assertEquals(43.252, decoded.get(2)[0], 1e-9);
+        assertEquals(-126.453, decoded.get(2)[1], 1e-9);
+    }
+
+    /** Tamaño: bytes por punto acotados y muy por debajo del JSON que hoy cruza el bridge. */
+    @Test
+    public void bytesPerPoint_farBelowJson() {
+        TrackBuffer.Snapshot path = walk(5000, 11).snapshot();
+        int n = path.size();
+
+        int binary = TrackCodec.encode(path).length;
+        int polyline = TrackCodec.encodePolyline(path).length();
+        int json = jsonSize(path);
+
+        double binaryPerPoint = (double) binary / n;
+        double polylinePerPoint = (double) polyline / n;
+        double jsonPerPoint = (double) json / n;
+
+        assertTrue("binario=" + binaryPerPoint, binaryPerPoint < 8);
+        assertTrue("polyline6=" + polylinePerPoint, polylinePerPoint < 6);
+        assertTrue("json/binario=" + jsonPerPoint / binaryPerPoint, jsonPerPoint / binaryPerPoint > 10);
+    }
+
+    /** Caminata a ~1.5 m/s con un fix cada 3 s, ruido GPS y velocidad variable. */
+    private static TrackBuffer walk(int points, long seed) {
+        Random rnd = new Random(seed);
+        TrackBuffer buffer = new TrackBuffer();
+        double lat = -34.6037, lng = -58.3816, heading = 0.3;
+        long ts = 1_760_000_000_000L;
+        for (int i = 0; i < points; i++) {
+            heading += rnd.nextGaussian() * 0.1;
+            lat += Math.cos(heading) * 4.5 / 111_195.0;
+            lng += Math.sin(heading) * 4.5 / 91_000.0;
+            ts += 3000 + (rnd.nextInt(10) == 0 ? rnd.nextInt(400) - 200 : 0);
+            buffer.append(lat + rnd.nextGaussian() * 1e-5, lng + rnd.nextGaussian() * 1e-5, ts,
+                (float) Math.max(0, 1.5 + rnd.nextGaussian() * 0.3));
+        }
+        return buffer;
+    }
+
+    private static int jsonSize(TrackBuffer.Snapshot path) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < path.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"lat\":").append(path.lat(i))
+                .append(",\"lng\":").append(path.lng(i))
+                .append(",\"timestamp\":").append(path.timestamp(i))
+                .append(",\"speed\":").append(path.speed(i)).append('}');
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,101 @@
+package com.mishabitos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrackJournalTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("walk_session", ".journal");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void unfinishedSession_isRecoveredAfterReopen() throws Exception {
+        TrackJournal journal = TrackJournal.open(file);
+        journal.begin(1000L, 7.5, 2);
+        for (int i = 0; i < 10_000; i++) { // supera la capacidad inicial del mapeo
+            journal.append(i, -i, 1000L + i, i % 7);
+        }
+        journal.setDistanceMeters(1234.5);
+        journal.close(); // simula la muerte del proceso: sin finish()
+
+        TrackJournal recovered = TrackJournal.open(file);
+        assertTrue(recovered.hasActiveSession());
+        assertEquals(10_000, recovered.count());
+        assertEquals(1000L, recovered.sessionStartMs());
+        assertEquals(1234.5, recovered.distanceMeters(), 0);
+        assertEquals(1000L + 9_999, recovered.lastTimestamp());
+        assertEquals(7.5, recovered.toleranceMeters(), 0);
+        assertEquals(2, recovered.profile());
+
+        List<double[]> points = new ArrayList<>();
+        recovered.replay((lat, lng, ts, speed) -> points.add(new double[]{lat, lng, ts, speed}));
+        assertEquals(10_000, points.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(i, points.get(i)[0], 0);
+            assertEquals(-i, points.get(i)[1], 0);
+            assertEquals(1000L + i, (long) points.get(i)[2]);
+            assertEquals(i % 7, points.get(i)[3], 0);
+        }
+        recovered.close();
+    }
+
+    @Test
+    public void finish_compactsAndMarksSessionIdle() throws Exception {
+        TrackJournal journal = TrackJournal.open(file);
+        journal.begin(1L, 3, 0);
+        for (int i = 0; i < 5; i++) journal.append(i, i, i, 0);
+        journal.finish();
+        journal.close();
+
+        assertEquals(TrackJournal.HEADER_SIZE + 5 * TrackJournal.RECORD_SIZE, file.length());
+
+        TrackJournal reopened = TrackJournal.open(file);
+        assertFalse(reopened.hasActiveSession());
+        assertEquals(5, reopened.count());
+        reopened.close();
+    }
+
+    @Test
+    public void appendAfterFinish_startsNewSession() throws Exception {
+        TrackJournal journal = TrackJournal.open(file);
+        journal.begin(1L, 3, 0);
+        journal.append(1, 1, 1, 0);
+        journal.finish();
+
+        journal.begin(2L, 3, 0);
+        journal.append(2, 2, 2, 0);
+        journal.append(3, 3, 3, 0);
+        journal.close();
+
+        TrackJournal reopened = TrackJournal.open(file);
+        assertTrue(reopened.hasActiveSession());
+        assertEquals(2, reopened.count());
+        assertEquals(3L, reopened.lastTimestamp());
+        reopened.close();
+    }
+
+    @Test
+    public void garbageFile_isReset() throws Exception {
+        java.nio.file.Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        TrackJournal journal = TrackJournal.open(file);
+        assertFalse(journal.hasActiveSession());
+        assertEquals(0, journal.count());
+        journal.close();
+    }
+}
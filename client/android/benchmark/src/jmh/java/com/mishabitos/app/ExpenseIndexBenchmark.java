@@ -0,0 +1,67 @@
+package com.mishabitos.app;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Costo de {@link ExpenseIndex#suggest} con el índice lleno ({@link ExpenseIndex#MAX_ENTRIES}
+ * descripciones), para prefijos de 1 a 4 letras como los que se escriben en el diálogo. El
+ * objetivo es muy por debajo de un milisegundo por consulta (cada tecla hace una).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExpenseIndexBenchmark {
+
+    private static final long T0 = 1_792_000_000_000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final String[] WORDS = {
+        "café", "carnicería", "colectivo", "super", "farmacia", "nafta", "almuerzo", "kiosco",
+        "verdulería", "panadería", "taxi", "cine", "regalo", "luz", "gas", "internet",
+    };
+    private static final String[] CATEGORIES = { "Comida", "Transporte", "Supermercado", "Servicios", "Ocio" };
+    private static final int PREFIXES = 256;
+
+    private final String[] prefixes = new String[PREFIXES];
+    private ExpenseIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        index = new ExpenseIndex();
+        long t = T0;
+        // Más gastos que el límite: el índice queda lleno y con desalojos ya hechos
+        for (int i = 0; i < ExpenseIndex.MAX_ENTRIES * 2; i++) {
+            String description = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                + " " + random.nextInt(100);
+            index.record(description, CATEGORIES[random.nextInt(CATEGORIES.length)], t);
+            t += HOUR;
+        }
+        for (int i = 0; i < PREFIXES; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            prefixes[i] = word.substring(0, 1 + random.nextInt(Math.min(4, word.length())));
+        }
+    }
+
+    /** Una consulta por prefijo; el resultado es ns por consulta. */
+    @Benchmark
+    @OperationsPerInvocation(PREFIXES)
+    public int suggest() {
+        int found = 0;
+        for (int i = 0; i < PREFIXES; i++) {
+            List<ExpenseIndex.Suggestion> s = index.suggest(prefixes[i], ExpenseIndex.TOP_K);
+            found += s.size();
+        }
+        return found; // JMH lo consume: el loop no se puede eliminar
+    }
+}
@@ -66,7 +66,29 @@ export const ExpensesProvider = ({ children }) => {
         }
     }, [planillas]);
 
-
+    // Gastos rápidos del widget que el servidor rechazó: quedan guardados en el teléfono
+    useEffect(() => {
+        if (!Capacitor.isNativePlatform() || !session?.user?.id) return;
+        WidgetAuth.getRejectedExpenses().then(({ expenses: rejected }) => {
+            if (!rejected || rejected.length === 0) return;
+            const msg = rejected.length === 1
+                ? 'Un gasto rápido no se pudo subir'
+                : `${rejected.length} gastos rápidos no se pudieron subir`;
+            toast.error(msg, {
+                duration: Infinity,
+                action: {
+                    label: 'Reintentar',
+                    onClick: () => WidgetAuth.retryRejectedExpenses()
+                        .catch(e => console.error("Error retrying rejected expenses:", e))
+                },
+                cancel: {
+                    label: 'Descartar',
+                    onClick: () => WidgetAuth.discardRejectedExpenses()
+                        .catch(e => console.error("Error discarding rejected expenses:", e))
+                }
+            });
+        }).catch(e => console.error("Error reading rejected expenses:", e));
+    }, [session?.user?.id]); // una vez por usuario, no en cada refresh del token
 
     const fetchCategories = useCallback(async () => {
         if (!session) return;
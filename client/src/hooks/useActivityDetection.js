@@ -35,6 +35,9 @@ export const useActivityDetection = (session, API_URL) => {
     const [currentPath, setCurrentPath] = useState([]);
     const [lastPosition, setLastPosition] = useState(null);
     const [elapsedSeconds, setElapsedSeconds] = useState(0);
+    const [sessionStats, setSessionStats] = useState(null); // nativo: ritmo, parciales, tiempo en movimiento
+    // Actividad según la cadencia del contador de pasos (nativo): idle | walking | brisk | running
+    const [motion, setMotion] = useState({ activity: 'idle', cadence: 0 });
 
     // Refs compartidos
     const startStepsRef = useRef(0);
@@ -45,6 +48,7 @@ export const useActivityDetection = (session, API_URL) => {
     // Refs para listeners nativos
     const locationListenerRef = useRef(null);
     const stoppedListenerRef = useRef(null);
+    const syncingRef = useRef(null); // promesa de getPath() en curso
 
     // Refs para fallback web
     const watchId = useRef(null);
@@ -61,6 +65,7 @@ export const useActivityDetection = (session, API_URL) => {
         pathRef.current = [];
         setCurrentPath([]);
         setElapsedSeconds(0);
+        setSessionStats(null);
         startTimeRef.current = Date.now();
 
         // Iniciar timer
@@ -89,16 +94,20 @@ export const useActivityDetection = (session, API_URL) => {
         if (lt) {
             locationListenerRef.current = await lt.addListener('locationUpdate', (data) => {
                 const point = { lat: data.lat, lng: data.lng, timestamp: data.timestamp, speed: data.speed };
-                pathRef.current = [...pathRef.current, point];
-                setCurrentPath([...pathRef.current]);
+                // El servicio guarda el path simplificado: pedir sólo los puntos nuevos
+                if (data.pathSize > pathRef.current.length) syncNativePath();
                 setLastPosition(point);
+                // Las estadísticas en vivo vienen en el evento; getSessionStats() sólo al terminar
+                if (data.stats) setSessionStats(data.stats);
             });
 
             // Listener de auto-stop por inactividad (5 min sin movimiento)
-            stoppedListenerRef.current = await lt.addListener('trackingStopped', async (data) => {
+            stoppedListenerRef.current = await lt.addListener('trackingStopped', async () => {
                 toast.info('Caminata guardada automáticamente (5 min sin movimiento)');
                 await removeNativeListeners();
-                await handleSessionEnd(data.path || []);
+                await syncNativePath();
+                const stats = await refreshNativeStats();
+                await handleSessionEnd(pathRef.current, null, stats);
             });
 
             try {
@@ -118,9 +127,11 @@ export const useActivityDetection = (session, API_URL) => {
     const stopTrackingNative = async (manualDurationMinutes = null) => {
         try {
             const lt = getLocationTracking();
-            const result = lt ? await lt.stopTracking() : null;
+            if (lt) await lt.stopTracking();
             await removeNativeListeners();
-            await handleSessionEnd(result?.path || [], manualDurationMinutes);
+            await syncNativePath();
+            const stats = await refreshNativeStats();
+            await handleSessionEnd(pathRef.current, manualDurationMinutes, stats);
         } catch (e) {
             console.error('Error stopping native tracking:', e);
             await removeNativeListeners();
@@ -129,7 +140,7 @@ export const useActivityDetection = (session, API_URL) => {
         }
     };
 
-    const handleSessionEnd = async (path, manualDurationMinutes = null) => {
+    const handleSessionEnd = async (path, manualDurationMinutes = null, stats = null) => {
         // Guard: evitar que inactivity + stopTracking manual ejecuten esto dos veces
         if (sessionEndedRef.current) return;
         sessionEndedRef.current = true;
@@ -148,7 +159,47 @@ export const useActivityDetection = (session, API_URL) => {
         pathRef.current = [];
 
         if (path && path.length > 5) {
-            await saveWalkSession(path, manualDurationMinutes);
+            await saveWalkSession(path, manualDurationMinutes, stats);
+        }
+    };
+
+    // Trae desde el servicio sólo los puntos que el JS todavía no tiene, paginando con getPath().
+    // Las llamadas se encadenan para que dos sincronizaciones no pidan el mismo rango.
+    const syncNativePath = async () => {
+        const lt = getLocationTracking();
+        if (!lt) return;
+        const previous = syncingRef.current;
+        const run = (async () => {
+            if (previous) await previous;
+            try {
+                let hasMore = true;
+                while (hasMore) {
+                    const page = await lt.getPath({ sinceIndex: pathRef.current.length });
+                    const points = page?.points || [];
+                    if (points.length > 0) pathRef.current = [...pathRef.current, ...points];
+                    hasMore = !!page?.hasMore && points.length > 0;
+                }
+                setCurrentPath(pathRef.current);
+            } catch (e) {
+                console.error('Error fetching native path:', e);
+            }
+        })();
+        syncingRef.current = run;
+        await run;
+        if (syncingRef.current === run) syncingRef.current = null;
+    };
+
+    // Estadísticas finales calculadas por el servicio (O(1), no dependen del largo del path)
+    const refreshNativeStats = async () => {
+        const lt = getLocationTracking();
+        if (!lt) return null;
+        try {
+            const stats = await lt.getSessionStats();
+            setSessionStats(stats);
+            return stats;
+        } catch (e) {
+            console.error('Error fetching session stats:', e);
+            return null;
         }
     };
 
@@ -270,9 +321,34 @@ export const useActivityDetection = (session, API_URL) => {
         };
     }, []);
 
+    // Cambios de actividad empujados por StepCounterService (sin polling)
+    useEffect(() => {
+        if (!Capacitor.isNativePlatform()) return;
+        const ss = getStepService();
+        if (!ss) return;
+        let cancelled = false;
+        let handle = null;
+        (async () => {
+            try {
+                handle = await ss.addListener('activityChange', ({ activity, cadence }) => {
+                    setMotion({ activity, cadence });
+                });
+                if (cancelled) { handle.remove(); return; }
+                const current = await ss.getActivity();
+                if (!cancelled) setMotion({ activity: current.activity, cadence: current.cadence });
+            } catch (e) {
+                console.error('Error suscribiendo a activityChange:', e);
+            }
+        })();
+        return () => {
+            cancelled = true;
+            if (handle) handle.remove();
+        };
+    }, []);
+
     // ─── Guardar sesión ───────────────────────────────────────────────────────
 
-    const saveWalkSession = async (path, manualDurationMinutes = null) => {
+    const saveWalkSession = async (path, manualDurationMinutes = null, stats = null) => {
         if (!session?.access_token || !API_URL) return;
 
         let startTime = new Date(path[0].timestamp).toISOString();
@@ -284,7 +360,8 @@ export const useActivityDetection = (session, API_URL) => {
             endTime = new Date(startDate.getTime() + manualDurationMinutes * 60000).toISOString();
         }
 
-        const distance = calculateTotalDistance(path);
+        // La distancia nativa sale de los fixes filtrados, no del path simplificado
+        const distance = stats?.distance ?? calculateTotalDistance(path);
 
         let steps = 0;
         if (Capacitor.isNativePlatform()) {
@@ -345,5 +422,5 @@ export const useActivityDetection = (session, API_URL) => {
         return total;
     };
 
-    return { isTracking, currentPath, lastPosition, elapsedSeconds, startTracking, stopTracking };
+    return { isTracking, currentPath, lastPosition, elapsedSeconds, sessionStats, motion, startTracking, stopTracking };
 };
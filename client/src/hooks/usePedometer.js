@@ -14,14 +14,19 @@ const getStepService = () => {
     return StepService
 }
 
+// Frecuencia máxima de stepUpdate y de escrituras a la API
+const STEP_UPDATE_INTERVAL_MS = 1000
+const PERSIST_INTERVAL_MS = 10000
+
 const withTimeout = (promise, ms) =>
   Promise.race([promise, new Promise((_, reject) => setTimeout(() => reject(new Error('timeout')), ms))])
 
 /**
  * Hook que integra el pedómetro nativo con la lista de hábitos.
  * En Android usa StepCounterService (foreground service) para contar pasos
- * incluso con la app en segundo plano. Los pasos se guardan en SharedPreferences
- * y se leen mediante polling cada 30 segundos.
+ * incluso con la app en segundo plano. El servicio empuja los cambios con el evento
+ * 'stepUpdate' (conflacionado en nativo, como mucho uno por segundo); la API se
+ * actualiza como mucho cada PERSIST_INTERVAL_MS.
  *
  * Detección: un hábito se considera "de pasos" si type === 'counter'
  * y su unit contiene la palabra "pasos" (case-insensitive).
@@ -38,7 +43,8 @@ export function usePedometer(habits, setHabits, getLocalDateString, session, API
     .map(h => h.id)
     .join(',')
 
-  const pollRef = useRef(null)
+  const listenerRef = useRef(null)
+  const persistTimerRef = useRef(null)
   const lastSavedRef = useRef(null)
 
   useEffect(() => {
@@ -65,11 +71,23 @@ export function usePedometer(habits, setHabits, getLocalDateString, session, API
       }
     }
 
-    const updateHabits = (totalSteps) => {
+    // Guarda el último valor como mucho cada PERSIST_INTERVAL_MS
+    let pendingSteps = null
+    const schedulePersist = (totalSteps) => {
+      pendingSteps = totalSteps
+      if (persistTimerRef.current) return
+      persistTimerRef.current = setTimeout(() => {
+        persistTimerRef.current = null
+        persistSteps(stepHabit.id, pendingSteps, stepHabit.goal)
+      }, PERSIST_INTERVAL_MS)
+    }
+
+    const updateHabits = (totalSteps, immediate = false) => {
       if (!stepHabit) return
 
       // Evitamos el bug del context calling persistSteps antes del setHabits
-      persistSteps(stepHabit.id, totalSteps, stepHabit.goal)
+      if (immediate) persistSteps(stepHabit.id, totalSteps, stepHabit.goal)
+      else schedulePersist(totalSteps)
 
       setHabits(prev => prev.map(h => {
         if (h.type === 'counter' && h.unit?.toLowerCase().includes('paso')) {
@@ -84,6 +102,8 @@ export function usePedometer(habits, setHabits, getLocalDateString, session, API
       }))
     }
 
+    let cancelled = false
+
     const setup = async () => {
       try {
         // 1. Solicitar permisos nativamente (ACTIVITY_RECOGNITION + POST_NOTIFICATIONS)
@@ -114,33 +134,34 @@ export function usePedometer(habits, setHabits, getLocalDateString, session, API
           const ss = getStepService()
           if (ss) await withTimeout(ss.startService(), 8000)
         } catch (e) {
-          console.warn('[PEDOMETER] startService timeout o error, continuando con polling:', e)
+          console.warn('[PEDOMETER] startService timeout o error:', e)
+        }
+
+        // 4. Suscripción a stepUpdate antes de la lectura inicial, para no perder cambios
+        try {
+          const ss = getStepService()
+          if (!ss) throw new Error('StepService unavailable')
+          await withTimeout(ss.setStepUpdateRate({ minIntervalMs: STEP_UPDATE_INTERVAL_MS }), 5000)
+          const handle = await ss.addListener('stepUpdate', ({ steps, date }) => {
+            if (date === getLocalDateString()) updateHabits(steps)
+          })
+          if (cancelled) handle.remove()
+          else listenerRef.current = handle
+        } catch (e) {
+          console.error('[PEDOMETER] Error suscribiendo a stepUpdate:', e)
         }
 
-        // 4. Lectura inicial
+        // 5. Lectura inicial
         try {
           const ss = getStepService()
           if (!ss) throw new Error('StepService unavailable')
           const { steps, date } = await withTimeout(ss.getStepCount(), 5000)
-          if (date === getLocalDateString() && steps > 0) {
-            updateHabits(steps)
+          if (!cancelled && date === getLocalDateString() && steps > 0) {
+            updateHabits(steps, true)
           }
         } catch (e) {
           console.error('[PEDOMETER] Error en lectura inicial:', e)
         }
-
-        // 5. Polling cada 10s (mejorado para evitar fugas)
-        if (pollRef.current) clearInterval(pollRef.current)
-        pollRef.current = setInterval(async () => {
-          try {
-            const ss = getStepService()
-            if (!ss) return
-            const { steps: s, date: d } = await withTimeout(ss.getStepCount(), 5000)
-            if (d === getLocalDateString()) {
-              updateHabits(s)
-            }
-          } catch (e) { /* ignore */ }
-        }, 10000)
       } catch (e) {
         console.error('[PEDOMETER] StepService no disponible:', e)
       }
@@ -149,9 +170,15 @@ export function usePedometer(habits, setHabits, getLocalDateString, session, API
     setup()
 
     return () => {
-      if (pollRef.current) {
-        clearInterval(pollRef.current)
-        pollRef.current = null
+      cancelled = true
+      if (listenerRef.current) {
+        listenerRef.current.remove()
+        listenerRef.current = null
+      }
+      if (persistTimerRef.current) {
+        clearTimeout(persistTimerRef.current)
+        persistTimerRef.current = null
+        if (pendingSteps != null) persistSteps(stepHabit.id, pendingSteps, stepHabit.goal)
       }
     }
   }, [stepHabitKey]) // eslint-disable-line react-hooks/exhaustive-deps